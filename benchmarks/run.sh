@@ -0,0 +1,33 @@
+#!/bin/sh
+
+# Runs the standalone benchmarks on a desktop JVM.
+# Only the classes referenced by a benchmark are compiled; the few Android
+# classes the model code touches are replaced by the stand-ins in shims/.
+#
+# usage: benchmarks/run.sh [<benchmark class name>...]
+#   e.g. benchmarks/run.sh CharStorageBenchmark SearchUtilBenchmark
+# Without arguments, all the benchmarks are run.
+
+cd `dirname $0`
+rm -rf bin
+mkdir -p bin
+# plain Java libraries the model code links against
+LIBS=../libs/pdfparse.jar
+
+if [ $# -eq 0 ]; then
+	set -- `find src -name "*Benchmark.java" | xargs -n 1 basename | sed "s/\.java$//" | sort`
+fi
+
+for name in "$@"; do
+	source=`find src -name $name.java`
+	if [ -z "$source" ]; then
+		echo "$name: no such benchmark"
+		exit 1
+	fi
+	javac -nowarn -encoding utf-8 -d bin -cp $LIBS -sourcepath src:shims:../src $source || exit 1
+done
+for name in "$@"; do
+	echo "== $name"
+	class=`find src -name $name.java | sed "s/^src\///;s/\.java$//;s/\//./g"`
+	java -XX:+UseSerialGC -Dfile.encoding=UTF-8 -Dsun.stdout.encoding=UTF-8 -cp bin:$LIBS $class || exit 1
+done
@@ -0,0 +1,6 @@
+package android.annotation;
+
+// desktop stand-in for the benchmarks; never shipped
+public @interface TargetApi {
+	int value();
+}
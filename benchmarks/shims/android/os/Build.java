@@ -0,0 +1,21 @@
+package android.os;
+
+// desktop stand-in for the benchmarks; never shipped
+public class Build {
+	public static final String BRAND = "desktop";
+	public static final String MODEL = System.getProperty("os.arch");
+	public static final String MANUFACTURER = "desktop";
+	public static final String DISPLAY = "desktop";
+	public static final String DEVICE = System.getProperty("os.name");
+
+	public static class VERSION {
+		public static final int SDK_INT = VERSION_CODES.GINGERBREAD;
+		public static final String INCREMENTAL = System.getProperty("java.version");
+		public static final String RELEASE = System.getProperty("java.version");
+	}
+
+	public static class VERSION_CODES {
+		public static final int GINGERBREAD = 9;
+		public static final int HONEYCOMB = 11;
+	}
+}
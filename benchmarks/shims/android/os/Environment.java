@@ -0,0 +1,16 @@
+package android.os;
+
+import java.io.File;
+
+// desktop stand-in for the benchmarks; never shipped
+public class Environment {
+	public static final String MEDIA_MOUNTED = "mounted";
+
+	public static String getExternalStorageState() {
+		return MEDIA_MOUNTED;
+	}
+
+	public static File getExternalStorageDirectory() {
+		return new File(System.getProperty("java.io.tmpdir"));
+	}
+}
@@ -0,0 +1,40 @@
+package android.util;
+
+import java.io.*;
+
+import javax.xml.parsers.*;
+
+import org.xml.sax.*;
+
+// desktop stand-in for the benchmarks; never shipped
+public class Xml {
+	public enum Encoding {
+		UTF_8
+	}
+
+	public static void parse(InputStream stream, Encoding encoding, ContentHandler handler) throws IOException, SAXException {
+		final InputSource source = new InputSource(stream);
+		source.setEncoding("UTF-8");
+		parse(source, handler);
+	}
+
+	public static void parse(String xml, ContentHandler handler) throws SAXException {
+		try {
+			parse(new InputSource(new StringReader(xml)), handler);
+		} catch (IOException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	private static void parse(InputSource source, ContentHandler handler) throws IOException, SAXException {
+		try {
+			final SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			final XMLReader reader = factory.newSAXParser().getXMLReader();
+			reader.setContentHandler(handler);
+			reader.parse(source);
+		} catch (ParserConfigurationException e) {
+			throw new SAXException(e);
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package android.view;
+
+// desktop stand-in for the benchmarks; never shipped
+public class KeyEvent {
+	public static final int KEYCODE_BACK = 4;
+	public static final int KEYCODE_VOLUME_UP = 24;
+	public static final int KEYCODE_VOLUME_DOWN = 25;
+	public static final int KEYCODE_CAMERA = 27;
+	public static final int KEYCODE_MENU = 82;
+	public static final int KEYCODE_SEARCH = 84;
+
+	public static String keyCodeToString(int keyCode) {
+		return String.valueOf(keyCode);
+	}
+}
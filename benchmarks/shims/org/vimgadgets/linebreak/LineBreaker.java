@@ -0,0 +1,34 @@
+package org.vimgadgets.linebreak;
+
+// desktop stand-in for the benchmarks; never shipped.
+// Instead of the native liblinebreak rules it allows breaks after
+// whitespace and after a hyphen followed by a letter only
+public final class LineBreaker {
+	public static final char MUSTBREAK = 0;
+	public static final char ALLOWBREAK = 1;
+	public static final char NOBREAK = 2;
+	public static final char INSIDEACHAR = 3;
+
+	public LineBreaker(String lang) {
+	}
+
+	public void setLineBreaks(char[] data, int offset, int length, byte[] breaks) {
+		for (int i = 0; i < length; ++i) {
+			final char ch = data[offset + i];
+			if (i == length - 1) {
+				breaks[i] = MUSTBREAK;
+			} else if (Character.isHighSurrogate(ch)) {
+				breaks[i] = INSIDEACHAR;
+			} else if (Character.isWhitespace(ch) ||
+					   (ch == '-' && Character.isLetter(data[offset + i + 1]))) {
+				breaks[i] = ALLOWBREAK;
+			} else {
+				breaks[i] = NOBREAK;
+			}
+		}
+	}
+
+	public void setLineBreaks(String data, byte[] breaks) {
+		setLineBreaks(data.toCharArray(), 0, data.length(), breaks);
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.benchmark;
+
+import java.io.File;
+
+public abstract class Benchmarks {
+	public static final int WARMUP_ROUNDS = 3;
+
+	public static File createTempDirectory(String name) {
+		final File dir = new File(System.getProperty("java.io.tmpdir"), "fbreader-benchmark-" + name);
+		delete(dir);
+		dir.mkdirs();
+		return dir;
+	}
+
+	public static void delete(File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (File c : children) {
+				delete(c);
+			}
+		}
+		file.delete();
+	}
+
+	// one collection does not always free everything, so the minimum of several readings is taken
+	public static long usedMemory() {
+		final Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; ++i) {
+			System.gc();
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+	public static void report(String name, long nanos, int operations) {
+		System.out.println(String.format(
+			"%-48s %10.3f ms %12.1f ns/op",
+			name, nanos / 1e6, operations > 0 ? (double)nanos / operations : 0.0
+		));
+	}
+
+	public static void reportMemory(String name, long bytes) {
+		System.out.println(String.format("%-48s %10d KB", name, bytes / 1024));
+	}
+
+	public static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
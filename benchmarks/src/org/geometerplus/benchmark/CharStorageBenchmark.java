@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import org.geometerplus.zlibrary.text.model.*;
+
+/**
+ * Random block access latency and retained heap of the char storages.
+ * Garbage collection is forced every GC_PERIOD accesses to clear the weak
+ * references, as it happens on a device under memory pressure.
+ */
+public class CharStorageBenchmark extends Benchmarks {
+	private static final int BLOCK_SIZE = 65536;
+	private static final int BLOCKS_NUMBER = 64;
+	private static final int ACCESSES = 20000;
+	private static final int GC_PERIOD = 1000;
+
+	private static final String[] WORDS = {
+		"the", "reader", "opens", "a", "book", "and", "turns", "page", "after", "of",
+		"chapter", "long", "night", "river", "through", "silent", "town", "was", "in", "light"
+	};
+
+	public static void main(String[] args) {
+		final File dir = createTempDirectory("storage");
+		try {
+			final String cachedDir = new File(dir, "cached").getPath();
+			final String mappedDir = new File(dir, "mapped").getPath();
+			final String compressedDir = new File(dir, "compressed").getPath();
+
+			fill(new CachedCharStorage(BLOCK_SIZE, cachedDir, "ncache"));
+			for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+				final boolean print = round == WARMUP_ROUNDS;
+				run("CachedCharStorageRO (current)", new StorageFactory() {
+					CharStorage create() {
+						return new CachedCharStorageRO(cachedDir, "ncache", BLOCKS_NUMBER);
+					}
+				}, print);
+				run("MappedCharStorageRO", new StorageFactory() {
+					CharStorage create() {
+						return new MappedCharStorageRO(cachedDir, "ncache", BLOCKS_NUMBER, 4);
+					}
+				}, print);
+				run("MappedCharStorage", new StorageFactory() {
+					CharStorage create() {
+						return createMapped(mappedDir, false);
+					}
+				}, print);
+				run("MappedCharStorage, compressed", new StorageFactory() {
+					CharStorage create() {
+						return createMapped(compressedDir, true);
+					}
+				}, print);
+			}
+
+			System.out.println(String.format(
+				"on disk: %d KB raw, %d KB compressed",
+				new File(mappedDir, "blocks.ncache").length() / 1024,
+				new File(compressedDir, "blocks.ncache").length() / 1024
+			));
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static MappedCharStorage createMapped(String directoryName, boolean compress) {
+		final MappedCharStorage storage =
+			new MappedCharStorage(BLOCK_SIZE, directoryName, "ncache", compress, 4);
+		fill(storage);
+		storage.close();
+		return storage;
+	}
+
+	private static void fill(CharStorage storage) {
+		final Random random = new Random(1);
+		for (int index = 0; index < BLOCKS_NUMBER; ++index) {
+			final char[] block = storage.createNewBlock(BLOCK_SIZE);
+			block[0] = (char)index;
+			int offset = 1;
+			while (offset < block.length) {
+				final String word = WORDS[random.nextInt(WORDS.length)];
+				for (int i = 0; i < word.length() && offset < block.length; ++i) {
+					block[offset++] = word.charAt(i);
+				}
+				if (offset < block.length) {
+					block[offset++] = ' ';
+				}
+			}
+			storage.freezeLastBlock();
+		}
+	}
+
+	private static abstract class StorageFactory {
+		abstract CharStorage create();
+	}
+
+	private static void run(String name, StorageFactory factory, boolean print) {
+		final Random random = new Random(2);
+		final long memoryBefore = usedMemory();
+		final CharStorage storage = factory.create();
+		long nanos = 0;
+		for (int i = 0; i < ACCESSES; i += GC_PERIOD) {
+			System.gc();
+			final long start = System.nanoTime();
+			for (int j = 0; j < GC_PERIOD; ++j) {
+				final int index = random.nextInt(BLOCKS_NUMBER);
+				check(storage.block(index)[0] == index, name + ": wrong block " + index);
+			}
+			nanos += System.nanoTime() - start;
+		}
+		final long retained = usedMemory() - memoryBefore;
+		// keeps the storage reachable until the memory is measured
+		check(storage.size() == BLOCKS_NUMBER, name + ": wrong size");
+		if (print) {
+			report(name + ", random block", nanos, ACCESSES);
+			reportMemory(name + ", retained heap", Math.max(retained, 0));
+		}
+	}
+}
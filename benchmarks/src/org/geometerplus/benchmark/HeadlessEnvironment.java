@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.benchmark;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.application.*;
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.filesystem.ZLResourceFile;
+import org.geometerplus.zlibrary.core.library.ZLibrary;
+import org.geometerplus.zlibrary.core.options.Config;
+import org.geometerplus.zlibrary.core.view.ZLView;
+import org.geometerplus.zlibrary.core.view.ZLViewWidget;
+
+/**
+ * Desktop replacements for the library, config and application singletons
+ * the Android code installs, so that views can be driven on a plain JVM.
+ * Resources are read from the assets directory; options live in memory.
+ */
+public final class HeadlessEnvironment {
+	public static final int DPI = 160;
+
+	private static HeadlessApplication ourApplication;
+
+	public static synchronized ZLApplication install() {
+		if (ourApplication == null) {
+			new HeadlessLibrary(new File(System.getProperty("fbreader.assets", "../assets")));
+			new MemoryConfig();
+			ourApplication = new HeadlessApplication();
+		}
+		return ourApplication;
+	}
+
+	public static void setView(ZLView view) {
+		install();
+		ourApplication.show(view);
+	}
+
+	private HeadlessEnvironment() {
+	}
+
+	private static final class HeadlessApplication extends ZLApplication {
+		HeadlessApplication() {
+			setWindow(new HeadlessWindow());
+		}
+
+		@Override
+		public ZLKeyBindings keyBindings() {
+			return null;
+		}
+
+		void show(ZLView view) {
+			setView(view);
+		}
+	}
+
+	private static final class HeadlessWindow implements ZLApplicationWindow, ZLViewWidget {
+		public void setWindowTitle(String title) {
+		}
+
+		public void showErrorMessage(String resourceKey) {
+			throw new RuntimeException(resourceKey);
+		}
+
+		public void showErrorMessage(String resourceKey, String parameter) {
+			throw new RuntimeException(resourceKey + ": " + parameter);
+		}
+
+		public ZLApplication.SynchronousExecutor createExecutor(String key) {
+			return new ZLApplication.SynchronousExecutor() {
+				public void execute(Runnable action, Runnable uiPostAction) {
+					action.run();
+					if (uiPostAction != null) {
+						uiPostAction.run();
+					}
+				}
+
+				public void executeAux(String key, Runnable action) {
+					action.run();
+				}
+			};
+		}
+
+		public void processException(Exception e) {
+			throw new RuntimeException(e);
+		}
+
+		public void refresh() {
+		}
+
+		public ZLViewWidget getViewWidget() {
+			return this;
+		}
+
+		public void close() {
+		}
+
+		public int getBatteryLevel() {
+			return 100;
+		}
+
+		public void reset() {
+		}
+
+		public void repaint() {
+		}
+
+		public void startManualScrolling(int x, int y, ZLView.Direction direction) {
+		}
+
+		public void scrollManuallyTo(int x, int y) {
+		}
+
+		public void startAnimatedScrolling(ZLView.PageIndex pageIndex, int x, int y, ZLView.Direction direction, int speed) {
+		}
+
+		public void startAnimatedScrolling(ZLView.PageIndex pageIndex, ZLView.Direction direction, int speed) {
+		}
+
+		public void startAnimatedScrolling(int x, int y, int speed) {
+		}
+	}
+
+	private static final class HeadlessLibrary extends ZLibrary {
+		private final File myAssets;
+
+		HeadlessLibrary(File assets) {
+			myAssets = assets;
+		}
+
+		@Override
+		public ZLResourceFile createResourceFile(String path) {
+			return new AssetFile(myAssets, path);
+		}
+
+		@Override
+		public ZLResourceFile createResourceFile(ZLResourceFile parent, String name) {
+			return new AssetFile(myAssets, parent.getPath() + "/" + name);
+		}
+
+		@Override
+		public String getVersionName() {
+			return "benchmark";
+		}
+
+		@Override
+		public String getFullVersionName() {
+			return "benchmark";
+		}
+
+		@Override
+		public String getCurrentTimeString() {
+			return "00:00";
+		}
+
+		@Override
+		public void setScreenBrightness(int percent) {
+		}
+
+		@Override
+		public int getScreenBrightness() {
+			return 100;
+		}
+
+		@Override
+		public int getDisplayDPI() {
+			return DPI;
+		}
+
+		@Override
+		public int getWidthInPixels() {
+			return 600;
+		}
+
+		@Override
+		public int getHeightInPixels() {
+			return 800;
+		}
+
+		@Override
+		public List<String> defaultLanguageCodes() {
+			return Collections.singletonList("en");
+		}
+
+		@Override
+		public boolean supportsAllOrientations() {
+			return false;
+		}
+	}
+
+	private static final class AssetFile extends ZLResourceFile {
+		private final File myAssets;
+		private final File myFile;
+
+		AssetFile(File assets, String path) {
+			super(path);
+			myAssets = assets;
+			myFile = new File(assets, path);
+		}
+
+		@Override
+		public boolean exists() {
+			return myFile.exists();
+		}
+
+		@Override
+		public boolean isDirectory() {
+			return myFile.isDirectory();
+		}
+
+		@Override
+		public long size() {
+			return myFile.length();
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return new FileInputStream(myFile);
+		}
+
+		@Override
+		protected List<ZLFile> directoryEntries() {
+			final String[] names = myFile.list();
+			if (names == null) {
+				return Collections.emptyList();
+			}
+			final List<ZLFile> entries = new ArrayList<ZLFile>(names.length);
+			for (String name : names) {
+				entries.add(new AssetFile(myAssets, getPath() + "/" + name));
+			}
+			return entries;
+		}
+
+		@Override
+		public ZLFile getParent() {
+			final String path = getPath();
+			final int index = path.lastIndexOf('/');
+			return index > 0 ? new AssetFile(myAssets, path.substring(0, index)) : null;
+		}
+	}
+
+	private static final class MemoryConfig extends Config {
+		private final Map<String,Map<String,String>> myGroups = new HashMap<String,Map<String,String>>();
+
+		private synchronized Map<String,String> group(String name) {
+			Map<String,String> group = myGroups.get(name);
+			if (group == null) {
+				group = new HashMap<String,String>();
+				myGroups.put(name, group);
+			}
+			return group;
+		}
+
+		@Override
+		public boolean isInitialized() {
+			return true;
+		}
+
+		@Override
+		public void runOnConnect(Runnable runnable) {
+			runnable.run();
+		}
+
+		@Override
+		public synchronized List<String> listGroups() {
+			return new ArrayList<String>(myGroups.keySet());
+		}
+
+		@Override
+		public synchronized List<String> listNames(String group) {
+			return new ArrayList<String>(group(group).keySet());
+		}
+
+		@Override
+		public synchronized void removeGroup(String name) {
+			myGroups.remove(name);
+		}
+
+		@Override
+		public boolean getSpecialBooleanValue(String name, boolean defaultValue) {
+			return defaultValue;
+		}
+
+		@Override
+		public void setSpecialBooleanValue(String name, boolean value) {
+		}
+
+		@Override
+		public String getSpecialStringValue(String name, String defaultValue) {
+			return defaultValue;
+		}
+
+		@Override
+		public void setSpecialStringValue(String name, String value) {
+		}
+
+		@Override
+		protected synchronized String getValueInternal(String group, String name) {
+			return group(group).get(name);
+		}
+
+		@Override
+		protected synchronized void setValueInternal(String group, String name, String value) {
+			group(group).put(name, value);
+		}
+
+		@Override
+		protected synchronized void unsetValueInternal(String group, String name) {
+			group(group).remove(name);
+		}
+
+		@Override
+		protected synchronized Map<String,String> requestAllValuesForGroupInternal(String group) {
+			return new HashMap<String,String>(group(group));
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.benchmark;
+
+import java.util.Random;
+
+import org.geometerplus.zlibrary.core.util.ZLSearchPattern;
+import org.geometerplus.zlibrary.core.util.ZLSearchUtil;
+
+/**
+ * ZLSearchUtil against the previous first-character scan,
+ * kept here as the reference implementation.  Both must report
+ * the same occurrences.
+ */
+public class SearchUtilBenchmark extends Benchmarks {
+	private static final int TEXT_LENGTH = 4 * 1024 * 1024;
+	private static final int PARAGRAPH_LENGTH = 2000;
+
+	private static final String[] WORDS = {
+		"the", "reader", "opens", "a", "book", "and", "turns", "pages", "after", "midnight",
+		"Chapter", "River", "through", "silent", "town", "текст",
+		"книга", "Река", "reading", "readers"
+	};
+	private static final String[] PATTERNS = {
+		"the", "reader", "midnight river", "through silent town", "missing pattern",
+		// out of Latin-1, searched by the plain scan
+		"книга", "река текст"
+	};
+
+	public static void main(String[] args) {
+		final char[] text = createText();
+		for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+			final boolean print = round == WARMUP_ROUNDS;
+			for (String p : PATTERNS) {
+				run(text, p, false, print);
+				run(text, p, true, print);
+			}
+		}
+	}
+
+	private static char[] createText() {
+		final Random random = new Random(1);
+		final StringBuilder builder = new StringBuilder(TEXT_LENGTH + 32);
+		while (builder.length() < TEXT_LENGTH) {
+			builder.append(WORDS[random.nextInt(WORDS.length)]);
+			builder.append(random.nextInt(50) == 0 ? ". " : " ");
+		}
+		return builder.toString().toCharArray();
+	}
+
+	private static final class Counter implements ZLSearchUtil.Listener {
+		int Count;
+
+		public boolean onMatch(int start, int length) {
+			++Count;
+			return true;
+		}
+	}
+
+	private static void run(char[] text, String patternText, boolean ignoreCase, boolean print) {
+		final ZLSearchPattern pattern = new ZLSearchPattern(patternText, ignoreCase);
+		final String lower = ignoreCase ? patternText.toLowerCase() : patternText;
+		final String upper = ignoreCase ? patternText.toUpperCase() : patternText;
+
+		long start = System.nanoTime();
+		final Counter counter = new Counter();
+		for (int offset = 0; offset < text.length; offset += PARAGRAPH_LENGTH) {
+			ZLSearchUtil.findAll(text, offset, Math.min(PARAGRAPH_LENGTH, text.length - offset), pattern, counter);
+		}
+		final long horspool = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		int referenceCount = 0;
+		for (int offset = 0; offset < text.length; offset += PARAGRAPH_LENGTH) {
+			referenceCount += findAllReference(
+				text, offset, Math.min(PARAGRAPH_LENGTH, text.length - offset), lower, upper
+			);
+		}
+		final long reference = System.nanoTime() - start;
+
+		check(counter.Count == referenceCount,
+			"'" + patternText + "': " + counter.Count + " != " + referenceCount);
+		if (print) {
+			final String name = "'" + patternText + "'" + (ignoreCase ? ", ignore case" : "");
+			report(name + ", ZLSearchUtil", horspool, text.length);
+			report(name + ", reference", reference, text.length);
+		}
+	}
+
+	// the first-character scan used by ZLSearchUtil before (no zero-width spaces here)
+	private static int findAllReference(char[] text, int offset, int length, String lower, String upper) {
+		final int patternLength = lower.length();
+		final int lastStart = offset + length - patternLength;
+		final char firstLower = lower.charAt(0);
+		final char firstUpper = upper.charAt(0);
+		int count = 0;
+		for (int i = offset; i <= lastStart; ++i) {
+			final char current = text[i];
+			if (current == firstLower || current == firstUpper) {
+				int j = 1;
+				for (; j < patternLength; ++j) {
+					final char symbol = text[i + j];
+					if (lower.charAt(j) != symbol && upper.charAt(j) != symbol) {
+						break;
+					}
+				}
+				if (j == patternLength) {
+					++count;
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.fbreader.book;
+
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.util.RationalNumber;
+
+import org.geometerplus.benchmark.Benchmarks;
+
+/**
+ * Round trip of a book list through the binary format used by the library
+ * service against the per-book XML documents it replaced.  Both must
+ * restore the same books; a copy of a book must not share its state.
+ */
+public class BinarySerializerBenchmark extends Benchmarks {
+	private static final int BOOKS_NUMBER = 1000;
+
+	public static void main(String[] args) {
+		final List<Book> books = createBooks();
+		for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+			run(books, round == WARMUP_ROUNDS);
+		}
+		checkCopy(books.get(0));
+	}
+
+	private static List<Book> createBooks() {
+		final Random random = new Random(1);
+		final List<Book> books = new ArrayList<Book>(BOOKS_NUMBER);
+		for (int i = 0; i < BOOKS_NUMBER; ++i) {
+			final Book book = new Book(
+				i + 1, ZLFile.createFileByPath("/books/library/" + i + ".epub"),
+				"Книга номер " + i, "utf-8", i % 2 == 0 ? "ru" : "en"
+			);
+			book.addAuthorWithNoCheck(new Author("Author " + random.nextInt(500), "author " + i));
+			book.addTagWithNoCheck(Tag.getTag(Tag.getTag(null, "Fiction"), "Tag " + random.nextInt(50)));
+			book.addLabelWithNoCheck("favorite");
+			book.addUidWithNoCheck(new UID("SHA-256", Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong())));
+			if (i % 3 == 0) {
+				book.setSeriesInfoWithNoCheck("Series " + random.nextInt(100), String.valueOf(i % 10));
+			}
+			book.setProgressWithNoCheck(RationalNumber.create(random.nextInt(100), 100));
+			book.HasBookmark = i % 7 == 0;
+			books.add(book);
+		}
+		return books;
+	}
+
+	private static void run(List<Book> books, boolean print) {
+		long start = System.nanoTime();
+		final byte[] binary = SerializerUtil.serializeBookListBinary(books);
+		final List<Book> fromBinary = SerializerUtil.deserializeBookListBinary(binary);
+		final long binaryTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		final List<String> xml = SerializerUtil.serializeBookList(books);
+		final List<Book> fromXml = SerializerUtil.deserializeBookList(xml);
+		final long xmlTime = System.nanoTime() - start;
+
+		check(fromBinary.size() == books.size(), "binary: " + fromBinary.size() + " books restored");
+		check(fromXml.size() == books.size(), "xml: " + fromXml.size() + " books restored");
+		for (int i = 0; i < books.size(); ++i) {
+			final String expected = SerializerUtil.serialize(books.get(i));
+			check(expected.equals(SerializerUtil.serialize(fromBinary.get(i))), "binary: book " + i + " differs");
+			check(expected.equals(SerializerUtil.serialize(fromXml.get(i))), "xml: book " + i + " differs");
+		}
+
+		if (print) {
+			int xmlChars = 0;
+			for (String s : xml) {
+				xmlChars += s.length();
+			}
+			report(BOOKS_NUMBER + " books round trip, binary", binaryTime, BOOKS_NUMBER);
+			report(BOOKS_NUMBER + " books round trip, xml", xmlTime, BOOKS_NUMBER);
+			reportMemory("binary list size", binary.length);
+			reportMemory("xml list size (UTF-16)", 2L * xmlChars);
+		}
+	}
+
+	private static void checkCopy(Book book) {
+		final String original = SerializerUtil.serialize(book);
+		final Book copy = book.copy();
+		check(original.equals(SerializerUtil.serialize(copy)), "copy differs from the original");
+		copy.setTitle("Changed title");
+		copy.addAuthor(new Author("Another Author", "another author"));
+		copy.addLabel("changed");
+		copy.HasBookmark = !copy.HasBookmark;
+		check(original.equals(SerializerUtil.serialize(book)), "changing the copy changed the original");
+	}
+}
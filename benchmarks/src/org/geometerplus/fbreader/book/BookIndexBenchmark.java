@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.fbreader.book;
+
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+
+import org.geometerplus.benchmark.Benchmarks;
+
+/**
+ * Filter resolution through BookIndex against the full scan
+ * BookCollection did before, over a synthetic 100k books library.
+ * Both must select the same books in the same order.
+ */
+public class BookIndexBenchmark extends Benchmarks {
+	private static final int BOOKS_NUMBER = 100000;
+	private static final int AUTHORS_NUMBER = 20000;
+	private static final int SERIES_NUMBER = 5000;
+	private static final int TAGS_NUMBER = 200;
+	private static final int QUERIES_NUMBER = 1000;
+
+	public static void main(String[] args) {
+		final List<Book> books = createBooks();
+
+		long start = System.nanoTime();
+		final BookIndex index = new BookIndex();
+		for (Book b : books) {
+			index.add(b);
+		}
+		report("index " + BOOKS_NUMBER + " books", System.nanoTime() - start, BOOKS_NUMBER);
+
+		final Random random = new Random(2);
+		final List<Filter> filters = new ArrayList<Filter>(QUERIES_NUMBER);
+		for (int i = 0; i < QUERIES_NUMBER; ++i) {
+			switch (i % 4) {
+				case 0:
+					filters.add(new Filter.ByAuthor(author(random.nextInt(AUTHORS_NUMBER))));
+					break;
+				case 1:
+					filters.add(new Filter.BySeries(series(random.nextInt(SERIES_NUMBER))));
+					break;
+				case 2:
+					filters.add(new Filter.And(
+						new Filter.ByTag(tag(random.nextInt(TAGS_NUMBER))),
+						new Filter.ByTitlePrefix(String.valueOf((char)('A' + random.nextInt(26))))
+					));
+					break;
+				default:
+					filters.add(new Filter.HasBookmark());
+					break;
+			}
+		}
+
+		for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+			final boolean print = round == WARMUP_ROUNDS;
+			run(index, books, filters, print);
+			runLists(index, books, print);
+		}
+	}
+
+	private static Author author(int i) {
+		return new Author("Author " + i, "author " + i);
+	}
+
+	private static Series series(int i) {
+		return new Series("Series " + i);
+	}
+
+	private static Tag tag(int i) {
+		return Tag.getTag(Tag.getTag(null, "Genre " + (i % 10)), "Tag " + i);
+	}
+
+	private static List<Book> createBooks() {
+		final Random random = new Random(1);
+		final List<Book> books = new ArrayList<Book>(BOOKS_NUMBER);
+		for (int i = 0; i < BOOKS_NUMBER; ++i) {
+			final String title = (char)('A' + random.nextInt(26)) + " book " + i;
+			final Book book = new Book(
+				i, ZLFile.createFileByPath("/books/" + i + ".epub"), title, "utf-8", "en"
+			);
+			book.addAuthorWithNoCheck(author(random.nextInt(AUTHORS_NUMBER)));
+			if (random.nextInt(10) == 0) {
+				book.addAuthorWithNoCheck(author(random.nextInt(AUTHORS_NUMBER)));
+			}
+			book.addTagWithNoCheck(tag(random.nextInt(TAGS_NUMBER)));
+			if (random.nextInt(3) == 0) {
+				book.setSeriesInfoWithNoCheck("Series " + random.nextInt(SERIES_NUMBER), String.valueOf(i % 10));
+			}
+			book.HasBookmark = random.nextInt(100) == 0;
+			books.add(book);
+		}
+		return books;
+	}
+
+	private static void run(BookIndex index, List<Book> books, List<Filter> filters, boolean print) {
+		final List<List<Book>> indexed = new ArrayList<List<Book>>(filters.size());
+		long start = System.nanoTime();
+		for (Filter f : filters) {
+			indexed.add(filter(index.candidates(f), f));
+		}
+		final long indexTime = System.nanoTime() - start;
+
+		final List<List<Book>> scanned = new ArrayList<List<Book>>(filters.size());
+		start = System.nanoTime();
+		for (Filter f : filters) {
+			scanned.add(filter(books, f));
+		}
+		final long scanTime = System.nanoTime() - start;
+
+		check(indexed.equals(scanned), "indexed and scanned results differ");
+		if (print) {
+			report("filter, BookIndex", indexTime, filters.size());
+			report("filter, full scan", scanTime, filters.size());
+		}
+	}
+
+	// the matching loop of BookCollection.books(BookQuery)
+	private static List<Book> filter(List<Book> candidates, Filter filter) {
+		final List<Book> result = new ArrayList<Book>();
+		for (Book b : candidates) {
+			if (filter.matches(b)) {
+				result.add(b);
+			}
+		}
+		return result;
+	}
+
+	private static void runLists(BookIndex index, List<Book> books, boolean print) {
+		long start = System.nanoTime();
+		final List<Author> indexedAuthors = index.authors();
+		final List<String> indexedSeries = index.series();
+		final long indexTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		final Set<Author> authors = new TreeSet<Author>();
+		final Set<String> series = new TreeSet<String>();
+		for (Book b : books) {
+			authors.addAll(b.authors());
+			final SeriesInfo info = b.getSeriesInfo();
+			if (info != null) {
+				series.add(info.Series.getTitle());
+			}
+		}
+		final long scanTime = System.nanoTime() - start;
+
+		check(indexedAuthors.equals(new ArrayList<Author>(authors)), "author lists differ");
+		check(indexedSeries.equals(new ArrayList<String>(series)), "series lists differ");
+		if (print) {
+			report("authors & series lists, BookIndex", indexTime, 1);
+			report("authors & series lists, full scan", scanTime, 1);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.view;
+
+import java.util.List;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.fonts.FontEntry;
+import org.geometerplus.zlibrary.core.image.ZLImageData;
+import org.geometerplus.zlibrary.core.util.ZLColor;
+
+/**
+ * Paint context that draws nothing and measures text with a fixed metrics
+ * table, so layout and pagination results do not depend on a device and can
+ * be reproduced on a plain JVM. Character widths are fractions of the font
+ * size (in 1/100 units) chosen by a character class; bold text is 10% wider.
+ * Images are measured as a half of the available area.
+ */
+public final class HeadlessPaintContext extends ZLPaintContext {
+	private final int myWidth;
+	private final int myHeight;
+	private final ZLColor myBackgroundColor;
+
+	private int myFontSize;
+	private boolean myFontIsBold;
+
+	private long myMeasuredCharsCount;
+	private long myDrawnCharsCount;
+	// hash of the drawn strings and their positions
+	private long myDrawingChecksum;
+
+	public HeadlessPaintContext(int width, int height) {
+		myWidth = width;
+		myHeight = height;
+		myBackgroundColor = new ZLColor(255, 255, 255);
+	}
+
+	@Override
+	public void clear(ZLFile wallpaperFile, FillMode mode) {
+	}
+
+	@Override
+	public void clear(ZLColor color) {
+	}
+
+	@Override
+	public ZLColor getBackgroundColor() {
+		return myBackgroundColor;
+	}
+
+	@Override
+	protected void setFontInternal(List<FontEntry> entries, int size, boolean bold, boolean italic, boolean underline, boolean strikeThrough) {
+		myFontSize = size;
+		myFontIsBold = bold;
+	}
+
+	@Override
+	public void setTextColor(ZLColor color) {
+	}
+
+	@Override
+	public void setLineColor(ZLColor color) {
+	}
+
+	@Override
+	public void setLineWidth(int width) {
+	}
+
+	@Override
+	public void setFillColor(ZLColor color, int alpha) {
+	}
+
+	@Override
+	public int getWidth() {
+		return myWidth;
+	}
+
+	@Override
+	public int getHeight() {
+		return myHeight;
+	}
+
+	private static int charWidthPercent(char ch) {
+		if (ch >= 0x2E80) {
+			// CJK and other full-width scripts
+			return 100;
+		}
+		switch (ch) {
+			case 'i':
+			case 'j':
+			case 'l':
+			case 'I':
+			case '.':
+			case ',':
+			case ':':
+			case ';':
+			case '\'':
+			case '!':
+			case '|':
+				return 28;
+			case ' ':
+			case 'f':
+			case 'r':
+			case 't':
+			case '(':
+			case ')':
+			case '-':
+				return 35;
+			case 'm':
+			case 'w':
+			case 'M':
+			case 'W':
+				return 85;
+			default:
+				return Character.isUpperCase(ch) ? 68 : 55;
+		}
+	}
+
+	@Override
+	public int getStringWidth(char[] string, int offset, int length) {
+		myMeasuredCharsCount += length;
+		int percents = 0;
+		for (int i = offset; i < offset + length; ++i) {
+			percents += charWidthPercent(string[i]);
+		}
+		if (myFontIsBold) {
+			percents += percents / 10;
+		}
+		return (percents * myFontSize + 50) / 100;
+	}
+
+	@Override
+	protected int getSpaceWidthInternal() {
+		return (charWidthPercent(' ') * myFontSize + 50) / 100;
+	}
+
+	@Override
+	protected int getStringHeightInternal() {
+		return myFontSize * 6 / 5;
+	}
+
+	@Override
+	protected int getCharHeightInternal(char chr) {
+		return Character.isUpperCase(chr) || Character.isDigit(chr)
+			? myFontSize * 7 / 10 : myFontSize / 2;
+	}
+
+	@Override
+	protected int getDescentInternal() {
+		return myFontSize / 5;
+	}
+
+	@Override
+	public void drawString(int x, int y, char[] string, int offset, int length) {
+		myDrawnCharsCount += length;
+		long checksum = ((myDrawingChecksum * 31 + x) * 31 + y) * 31 + length;
+		for (int i = offset; i < offset + length; ++i) {
+			checksum = checksum * 31 + string[i];
+		}
+		myDrawingChecksum = checksum;
+	}
+
+	@Override
+	public Size imageSize(ZLImageData image, Size maxSize, ScalingType scaling) {
+		return new Size(Math.max(maxSize.Width / 2, 1), Math.max(maxSize.Height / 2, 1));
+	}
+
+	@Override
+	public void drawImage(int x, int y, ZLImageData image, Size maxSize, ScalingType scaling, ColorAdjustingMode adjustingMode) {
+	}
+
+	@Override
+	public void drawLine(int x0, int y0, int x1, int y1) {
+	}
+
+	@Override
+	public void fillRectangle(int x0, int y0, int x1, int y1) {
+	}
+
+	@Override
+	public void drawPolygonalLine(int[] xs, int ys[]) {
+	}
+
+	@Override
+	public void fillPolygon(int[] xs, int[] ys) {
+	}
+
+	@Override
+	public void drawOutline(int[] xs, int ys[]) {
+	}
+
+	public long measuredCharsCount() {
+		return myMeasuredCharsCount;
+	}
+
+	public long drawnCharsCount() {
+		return myDrawnCharsCount;
+	}
+
+	public long drawingChecksum() {
+		return myDrawingChecksum;
+	}
+
+	public void resetDrawingChecksum() {
+		myDrawingChecksum = 0;
+	}
+}
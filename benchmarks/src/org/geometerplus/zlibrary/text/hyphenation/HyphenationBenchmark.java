@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.hyphenation;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.filesystem.ZLResourceFile;
+import org.geometerplus.zlibrary.core.xml.ZLStringMap;
+import org.geometerplus.zlibrary.core.xml.ZLXMLReaderAdapter;
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+
+import org.geometerplus.benchmark.Benchmarks;
+import org.geometerplus.benchmark.HeadlessEnvironment;
+
+/**
+ * ZLTextTeXHyphenator, a packed pattern trie, against the pattern table
+ * engine it replaced (copied below as PatternTableHyphenator): loading the
+ * patterns from XML and from the compiled file, retained memory and
+ * hyphenation of the words of the application resources. Both engines must
+ * produce the same masks for every word.
+ */
+public class HyphenationBenchmark extends Benchmarks {
+	private static final int LOAD_ROUNDS = 5;
+	private static final int HYPHENATION_ROUNDS = 20;
+
+	public static void main(String[] args) {
+		HeadlessEnvironment.install();
+		final File directory = createTempDirectory("hyphenation");
+		try {
+			for (String language : languages()) {
+				final List<char[]> words = words(language);
+				for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+					run(language, words, directory, round == WARMUP_ROUNDS);
+				}
+			}
+		} finally {
+			ZLTextHyphenator.setCacheDirectory(null);
+			delete(directory);
+		}
+	}
+
+	private static void run(String language, List<char[]> words, File directory, boolean print) {
+		long start = System.nanoTime();
+		for (int i = 0; i < LOAD_ROUNDS; ++i) {
+			new PatternTableHyphenator().load(language);
+		}
+		final long tableLoadTime = System.nanoTime() - start;
+
+		ZLTextHyphenator.setCacheDirectory(null);
+		start = System.nanoTime();
+		for (int i = 0; i < LOAD_ROUNDS; ++i) {
+			new ZLTextTeXHyphenator().load(language);
+		}
+		final long trieLoadTime = System.nanoTime() - start;
+
+		ZLTextHyphenator.setCacheDirectory(directory.getPath());
+		delete(new File(directory, language + ".trie"));
+		new ZLTextTeXHyphenator().load(language);
+		check(new File(directory, language + ".trie").exists(), "compiled " + language + " patterns are not written");
+		start = System.nanoTime();
+		for (int i = 0; i < LOAD_ROUNDS; ++i) {
+			new ZLTextTeXHyphenator().load(language);
+		}
+		final long compiledLoadTime = System.nanoTime() - start;
+		ZLTextHyphenator.setCacheDirectory(null);
+
+		long before = usedMemory();
+		final PatternTableHyphenator table = new PatternTableHyphenator();
+		table.load(language);
+		final long tableMemory = usedMemory() - before;
+		before = usedMemory();
+		final ZLTextTeXHyphenator trie = new ZLTextTeXHyphenator();
+		trie.load(language);
+		final long trieMemory = usedMemory() - before;
+
+		final List<boolean[]> tableMasks = hyphenate(table, words);
+		final List<boolean[]> trieMasks = hyphenate(trie, words);
+		for (int i = 0; i < words.size(); ++i) {
+			check(
+				Arrays.equals(tableMasks.get(i), trieMasks.get(i)),
+				language + ": masks differ for \"" + new String(words.get(i)).trim() + "\""
+			);
+		}
+
+		start = System.nanoTime();
+		for (int i = 0; i < HYPHENATION_ROUNDS; ++i) {
+			hyphenate(table, words);
+		}
+		final long tableTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < HYPHENATION_ROUNDS; ++i) {
+			hyphenate(trie, words);
+		}
+		final long trieTime = System.nanoTime() - start;
+
+		if (print) {
+			System.out.println(language + ": " + words.size() + " words");
+			report("  load, pattern table", tableLoadTime, LOAD_ROUNDS);
+			report("  load, trie from XML", trieLoadTime, LOAD_ROUNDS);
+			report("  load, trie from compiled file", compiledLoadTime, LOAD_ROUNDS);
+			reportMemory("  retained, pattern table", tableMemory);
+			reportMemory("  retained, trie", trieMemory);
+			report("  hyphenate, pattern table", tableTime, HYPHENATION_ROUNDS * words.size());
+			report("  hyphenate, trie", trieTime, HYPHENATION_ROUNDS * words.size());
+		}
+	}
+
+	// all the bundled pattern files
+	private static List<String> languages() {
+		final List<String> languages = new ArrayList<String>();
+		for (ZLFile file : ZLResourceFile.createResourceFile("hyphenationPatterns").children()) {
+			final String name = file.getShortName();
+			if (name.endsWith(".pattern")) {
+				languages.add(name.substring(0, name.length() - ".pattern".length()));
+			}
+		}
+		Collections.sort(languages);
+		return languages;
+	}
+
+	// words of the application resources in the language (or in English, if there
+	// are no resources in the language), as ZLTextHyphenator.getInfo() passes them
+	// to hyphenate(): lower-cased, between spaces: the lower-cased word between spaces
+	private static List<char[]> words(String language) {
+		final Set<String> words = new LinkedHashSet<String>();
+		ZLResourceFile file = resourceFile(language);
+		if (!file.exists() && language.indexOf('-') != -1) {
+			// e.g., de-traditional
+			file = resourceFile(language.substring(0, language.indexOf('-')));
+		}
+		if (!file.exists()) {
+			file = resourceFile("en");
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(file.getInputStream(), "utf-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				for (String w : line.split("[^\\p{L}]+")) {
+					if (w.length() >= 4) {
+						words.add(" " + w.toLowerCase() + " ");
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		final List<char[]> result = new ArrayList<char[]>(words.size());
+		for (String w : words) {
+			result.add(w.toCharArray());
+		}
+		return result;
+	}
+
+	private static ZLResourceFile resourceFile(String language) {
+		return ZLResourceFile.createResourceFile("resources/application/" + language + ".xml");
+	}
+
+	private static List<boolean[]> hyphenate(ZLTextHyphenator hyphenator, List<char[]> words) {
+		final List<boolean[]> masks = new ArrayList<boolean[]>(words.size());
+		for (char[] w : words) {
+			final boolean[] mask = new boolean[w.length];
+			hyphenator.hyphenate(w, mask, w.length);
+			masks.add(mask);
+		}
+		return masks;
+	}
+
+	// ZLTextTeXHyphenator before the trie: a hash table of patterns,
+	// probed for every substring of the word up to the longest pattern length
+	private static final class PatternTableHyphenator extends ZLTextHyphenator {
+		private final HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern> myPatternTable =
+			new HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern>();
+		private int myMaxPatternLength;
+
+		void addPattern(ZLTextTeXHyphenationPattern pattern) {
+			myPatternTable.put(pattern, pattern);
+			if (myMaxPatternLength < pattern.length()) {
+				myMaxPatternLength = pattern.length();
+			}
+		}
+
+		public List<String> languageCodes() {
+			return Collections.emptyList();
+		}
+
+		public void load(String language) {
+			unload();
+			new PatternTableReader(this).readQuietly(ZLResourceFile.createResourceFile(
+				"hyphenationPatterns/" + language + ".pattern"
+			));
+		}
+
+		public void unload() {
+			myPatternTable.clear();
+			myMaxPatternLength = 0;
+		}
+
+		public void hyphenate(char[] stringToHyphenate, boolean[] mask, int length) {
+			if (myPatternTable.isEmpty()) {
+				for (int i = 0; i < length - 1; i++) {
+					mask[i] = false;
+				}
+				return;
+			}
+
+			byte[] values = new byte[length + 1];
+
+			final HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern> table = myPatternTable;
+			ZLTextTeXHyphenationPattern pattern =
+				new ZLTextTeXHyphenationPattern(stringToHyphenate, 0, length, false);
+			for (int offset = 0; offset < length - 1; offset++) {
+				int len = Math.min(length - offset, myMaxPatternLength) + 1;
+				pattern.update(stringToHyphenate, offset, len - 1);
+				while (--len > 0) {
+					pattern.reset(len);
+					final ZLTextTeXHyphenationPattern toApply = table.get(pattern);
+					if (toApply != null) {
+						toApply.apply(values, offset);
+					}
+				}
+			}
+
+			for (int i = 0; i < length - 1; i++) {
+				mask[i] = (values[i + 1] % 2) == 1;
+			}
+		}
+	}
+
+	// ZLTextHyphenationReader, feeding the pattern table
+	private static final class PatternTableReader extends ZLXMLReaderAdapter {
+		private static final String PATTERN = "pattern";
+
+		private final PatternTableHyphenator myHyphenator;
+		private boolean myReadPattern;
+		private char[] myBuffer = new char[10];
+		private int myBufferLength;
+
+		PatternTableReader(PatternTableHyphenator hyphenator) {
+			myHyphenator = hyphenator;
+		}
+
+		@Override
+		public boolean startElementHandler(String tag, ZLStringMap attributes) {
+			if (PATTERN.equals(tag)) {
+				myReadPattern = true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean endElementHandler(String tag) {
+			if (PATTERN.equals(tag)) {
+				myReadPattern = false;
+				final int len = myBufferLength;
+				if (len != 0) {
+					myHyphenator.addPattern(new ZLTextTeXHyphenationPattern(myBuffer, 0, len, true));
+				}
+				myBufferLength = 0;
+			}
+			return false;
+		}
+
+		@Override
+		public void characterDataHandler(char[] ch, int start, int length) {
+			if (myReadPattern) {
+				char[] buffer = myBuffer;
+				final int oldLen = myBufferLength;
+				final int newLen = oldLen + length;
+				if (newLen > buffer.length) {
+					buffer = ZLArrayUtils.createCopy(buffer, oldLen, newLen + 10);
+					myBuffer = buffer;
+				}
+				System.arraycopy(ch, start, buffer, oldLen, length);
+				myBufferLength = newLen;
+			}
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.io.File;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.application.ZLApplication;
+import org.geometerplus.zlibrary.core.view.HeadlessPaintContext;
+
+import org.geometerplus.zlibrary.text.model.ZLTextModel;
+
+import org.geometerplus.benchmark.Benchmarks;
+import org.geometerplus.benchmark.HeadlessEnvironment;
+
+/**
+ * Background pagination of the TextViewBenchmark text: the time to build
+ * the complete page index, its size, and pagePosition()/gotoPage() over it.
+ * The index must list exactly the page starts the page turns reach, and
+ * a pagination resumed from a partial index must produce the same index.
+ */
+public class PaginationBenchmark extends Benchmarks {
+	private static final long TIMEOUT = 10 * 60 * 1000;
+	private static final int GOTO_NUMBER = 200;
+	private static final int POSITION_NUMBER = 10000;
+
+	private static final class PaginatingTextView extends TextViewBenchmark.HeadlessTextView {
+		private final Object myLock = new Object();
+		private byte[] myData;
+
+		PaginatingTextView(ZLApplication application, byte[] data) {
+			super(application);
+			myData = data;
+		}
+
+		@Override
+		protected boolean isPaginationEnabled() {
+			return true;
+		}
+
+		@Override
+		protected byte[] loadPageIndex(ZLTextModel model, String key) {
+			synchronized (myLock) {
+				return myData;
+			}
+		}
+
+		@Override
+		protected void savePageIndex(ZLTextModel model, String key, byte[] data) {
+			synchronized (myLock) {
+				myData = data;
+				myLock.notifyAll();
+			}
+		}
+
+		ZLTextPageIndex waitForCompleteIndex() {
+			final long deadline = System.currentTimeMillis() + TIMEOUT;
+			synchronized (myLock) {
+				while (true) {
+					final ZLTextPageIndex index = ZLTextPageIndex.fromByteArray(paginationKey(), myData);
+					if (index != null && index.isComplete()) {
+						return index;
+					}
+					final long rest = deadline - System.currentTimeMillis();
+					check(rest > 0, "pagination is not finished in " + TIMEOUT + " ms");
+					try {
+						myLock.wait(rest);
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}
+		}
+
+		byte[] data() {
+			synchronized (myLock) {
+				return myData;
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		final ZLApplication application = HeadlessEnvironment.install();
+		final File directory = createTempDirectory("pagination");
+		final ZLTextModel model = TextViewBenchmark.createModel(directory);
+		final HeadlessPaintContext context =
+			new HeadlessPaintContext(TextViewBenchmark.WIDTH, TextViewBenchmark.HEIGHT);
+
+		final List<ZLTextFixedPosition> turnStarts = pageTurnStarts(application, model, context);
+
+		// from scratch
+		PaginatingTextView view = new PaginatingTextView(application, null);
+		HeadlessEnvironment.setView(view);
+		long start = System.nanoTime();
+		view.setModel(model);
+		view.preparePage(context, ZLTextView.PageIndex.current);
+		final ZLTextPageIndex index = view.waitForCompleteIndex();
+		final long pagination = System.nanoTime() - start;
+		checkStarts(index, turnStarts);
+		final byte[] complete = view.data();
+
+		start = System.nanoTime();
+		int total = 0;
+		for (int i = 0; i < POSITION_NUMBER; ++i) {
+			total += view.pagePosition().Total;
+		}
+		final long positions = System.nanoTime() - start;
+		check(total == POSITION_NUMBER * turnStarts.size(), "pagePosition() does not use the index");
+
+		final Random random = new Random(3);
+		start = System.nanoTime();
+		for (int i = 0; i < GOTO_NUMBER; ++i) {
+			final int page = 1 + random.nextInt(turnStarts.size());
+			view.gotoPage(page);
+			view.preparePaintInfo();
+			check(view.pagePosition().Current == page, "gotoPage(" + page + ") is not exact");
+		}
+		final long gotos = System.nanoTime() - start;
+		view.setModel(null);
+
+		// resumed from the first half of the index
+		final ZLTextPageIndex half = new ZLTextPageIndex(index.Key);
+		for (int i = 1; i <= index.size() / 2; ++i) {
+			half.add(index.getPageStart(i));
+		}
+		view = new PaginatingTextView(application, half.toByteArray());
+		HeadlessEnvironment.setView(view);
+		start = System.nanoTime();
+		view.setModel(model);
+		view.preparePage(context, ZLTextView.PageIndex.current);
+		checkStarts(view.waitForCompleteIndex(), turnStarts);
+		final long resumed = System.nanoTime() - start;
+		check(Arrays.equals(complete, view.data()), "resumed index differs");
+		view.setModel(null);
+
+		System.out.println(turnStarts.size() + " pages, index of " + complete.length + " bytes");
+		report("pagination (rate limited), per page", pagination, turnStarts.size());
+		report("pagination resumed at 50%, per page", resumed, turnStarts.size());
+		report("pagePosition, exact", positions, POSITION_NUMBER);
+		report("gotoPage + preparePaintInfo, exact", gotos, GOTO_NUMBER);
+		delete(directory);
+	}
+
+	private static List<ZLTextFixedPosition> pageTurnStarts(ZLApplication application, ZLTextModel model, HeadlessPaintContext context) {
+		final TextViewBenchmark.HeadlessTextView view = new TextViewBenchmark.HeadlessTextView(application);
+		HeadlessEnvironment.setView(view);
+		view.setModel(model);
+		view.preparePage(context, ZLTextView.PageIndex.current);
+		final List<ZLTextFixedPosition> starts = new ArrayList<ZLTextFixedPosition>();
+		starts.add(new ZLTextFixedPosition(view.getStartCursor()));
+		while (view.canScroll(ZLTextView.PageIndex.next)) {
+			view.turnPage(true, ZLTextView.ScrollingMode.NO_OVERLAPPING, 0);
+			view.preparePaintInfo();
+			starts.add(new ZLTextFixedPosition(view.getStartCursor()));
+		}
+		view.setModel(null);
+		return starts;
+	}
+
+	private static void checkStarts(ZLTextPageIndex index, List<ZLTextFixedPosition> starts) {
+		check(index.size() == starts.size(), index.size() + " pages in the index, " + starts.size() + " page turns");
+		for (int i = 0; i < starts.size(); ++i) {
+			check(index.getPageStart(i + 1).compareTo(starts.get(i)) == 0, "page " + (i + 1) + " starts differently");
+		}
+	}
+}
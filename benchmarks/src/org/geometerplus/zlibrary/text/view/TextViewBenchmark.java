@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.io.File;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.application.ZLApplication;
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.fonts.FontManager;
+import org.geometerplus.zlibrary.core.image.ZLImage;
+import org.geometerplus.zlibrary.core.util.ZLColor;
+import org.geometerplus.zlibrary.core.view.HeadlessPaintContext;
+import org.geometerplus.zlibrary.core.view.ZLPaintContext;
+
+import org.geometerplus.zlibrary.text.model.ZLTextModel;
+import org.geometerplus.zlibrary.text.model.ZLTextParagraph;
+import org.geometerplus.zlibrary.text.model.ZLTextWritablePlainModel;
+import org.geometerplus.zlibrary.text.view.style.ZLTextStyleCollection;
+
+import org.geometerplus.fbreader.bookmodel.FBTextKind;
+
+import org.geometerplus.benchmark.Benchmarks;
+import org.geometerplus.benchmark.HeadlessEnvironment;
+
+/**
+ * Layout and pagination of a ZLTextView over a ZLTextPlainModel, measured
+ * through HeadlessPaintContext: the first page, page turns, gotoPage(),
+ * pagePosition() and painting. Page starts of two passes over the text
+ * must coincide, and every page turn must move forward.
+ */
+public class TextViewBenchmark extends Benchmarks {
+	private static final int PARAGRAPHS_NUMBER = 5000;
+	static final int WIDTH = 600;
+	static final int HEIGHT = 800;
+	private static final int GOTO_NUMBER = 200;
+	private static final int POSITION_NUMBER = 10000;
+
+	private static final String[] WORDS = {
+		"the", "reader", "opens", "a", "book", "and", "turns", "pages", "after", "midnight,",
+		"Chapter", "River", "through", "silent", "town.", "wonderful", "extraordinarily",
+		"I", "walk", "with", "my", "lantern", "across", "narrow", "bridges;"
+	};
+
+	static class HeadlessTextView extends ZLTextView {
+		private final ZLTextStyleCollection myStyleCollection = new ZLTextStyleCollection("Base");
+		private final ZLColor myBlack = new ZLColor(0, 0, 0);
+		private final ZLColor myWhite = new ZLColor(255, 255, 255);
+
+		HeadlessTextView(ZLApplication application) {
+			super(application);
+		}
+
+		@Override
+		public ZLTextStyleCollection getTextStyleCollection() {
+			return myStyleCollection;
+		}
+
+		@Override
+		public ImageFitting getImageFitting() {
+			return ImageFitting.covers;
+		}
+
+		@Override
+		public int getLeftMargin() {
+			return 20;
+		}
+
+		@Override
+		public int getRightMargin() {
+			return 20;
+		}
+
+		@Override
+		public int getTopMargin() {
+			return 10;
+		}
+
+		@Override
+		public int getBottomMargin() {
+			return 10;
+		}
+
+		@Override
+		public int getSpaceBetweenColumns() {
+			return 0;
+		}
+
+		@Override
+		public boolean twoColumnView() {
+			return false;
+		}
+
+		@Override
+		public ZLFile getWallpaperFile() {
+			return null;
+		}
+
+		@Override
+		public ZLPaintContext.FillMode getFillMode() {
+			return ZLPaintContext.FillMode.tile;
+		}
+
+		@Override
+		public ZLColor getBackgroundColor() {
+			return myWhite;
+		}
+
+		@Override
+		public ZLColor getSelectionBackgroundColor() {
+			return myBlack;
+		}
+
+		@Override
+		public ZLColor getSelectionForegroundColor() {
+			return myWhite;
+		}
+
+		@Override
+		public ZLColor getHighlightingBackgroundColor() {
+			return myBlack;
+		}
+
+		@Override
+		public ZLColor getHighlightingForegroundColor() {
+			return myWhite;
+		}
+
+		@Override
+		public ZLColor getTextColor(ZLTextHyperlink hyperlink) {
+			return myBlack;
+		}
+
+		@Override
+		public int scrollbarType() {
+			return SCROLLBAR_HIDE;
+		}
+
+		@Override
+		protected ZLPaintContext.ColorAdjustingMode getAdjustingModeForImages() {
+			return ZLPaintContext.ColorAdjustingMode.NONE;
+		}
+
+		@Override
+		protected ExtensionElementManager getExtensionManager() {
+			return null;
+		}
+
+		@Override
+		public FooterArea getFooterArea() {
+			return null;
+		}
+
+		@Override
+		public Animation getAnimationType() {
+			return Animation.none;
+		}
+	}
+
+	public static void main(String[] args) {
+		final ZLApplication application = HeadlessEnvironment.install();
+		final File directory = createTempDirectory("textview");
+		final ZLTextModel model = createModel(directory);
+		final HeadlessTextView view = new HeadlessTextView(application);
+		HeadlessEnvironment.setView(view);
+		final HeadlessPaintContext context = new HeadlessPaintContext(WIDTH, HEIGHT);
+
+		List<Integer> reference = null;
+		for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+			final List<Integer> starts = run(view, model, context, round == WARMUP_ROUNDS);
+			check(reference == null || reference.equals(starts), "page starts differ between passes");
+			reference = starts;
+		}
+		checkNeighbourPainting(application, directory, context);
+		delete(directory);
+	}
+
+	static ZLTextModel createModel(File directory) {
+		return createModel(directory, "benchmark", FBTextKind.REGULAR, 150, true);
+	}
+
+	// paragraphs of the kind, with 20 to 20 + maxExtraWords words; every 100th one is a title.
+	// Without closing controls the paragraph style lasts to the end of the paragraph
+	// (as in the models built by the native readers), so its bottom margin is used
+	private static ZLTextModel createModel(File directory, String id, byte kind, int maxExtraWords, boolean closeControls) {
+		final ZLTextWritablePlainModel model = new ZLTextWritablePlainModel(
+			id, "en", 1024, 65536, directory.getPath(), id,
+			Collections.<String,ZLImage>emptyMap(), new FontManager()
+		);
+		final Random random = new Random(1);
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < PARAGRAPHS_NUMBER; ++i) {
+			model.createParagraph(ZLTextParagraph.Kind.TEXT_PARAGRAPH);
+			final boolean title = i % 100 == 0;
+			model.addControl(title ? FBTextKind.TITLE : kind, true);
+			builder.setLength(0);
+			for (int count = title ? 4 : 20 + random.nextInt(maxExtraWords); count > 0; --count) {
+				builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+			}
+			model.addText(builder.toString().toCharArray());
+			if (closeControls) {
+				model.addControl(title ? FBTextKind.TITLE : kind, false);
+			}
+		}
+		model.stopReading();
+		return model;
+	}
+
+	// the current page must be drawn the same way after its neighbours have been
+	// laid out and painted: they share cached lines with it. Short paragraphs with
+	// top and bottom margins make many pages start with an adjustable first line
+	private static void checkNeighbourPainting(ZLApplication application, File directory, HeadlessPaintContext context) {
+		final HeadlessTextView view = new HeadlessTextView(application);
+		HeadlessEnvironment.setView(view);
+		view.setModel(createModel(directory, "margins", FBTextKind.XHTML_TAG_P, 20, false));
+		view.preparePage(context, ZLTextView.PageIndex.current);
+		for (int i = 0; i < 400 && view.canScroll(ZLTextView.PageIndex.next); ++i) {
+			view.turnPage(true, ZLTextView.ScrollingMode.NO_OVERLAPPING, 0);
+			view.preparePaintInfo();
+			final long checksum = drawingChecksum(view, context, ZLTextView.PageIndex.current);
+			drawingChecksum(view, context, ZLTextView.PageIndex.previous);
+			drawingChecksum(view, context, ZLTextView.PageIndex.next);
+			check(
+				checksum == drawingChecksum(view, context, ZLTextView.PageIndex.current),
+				"painting of the neighbour pages changes page " + view.pagePosition().Current
+			);
+		}
+	}
+
+	private static long drawingChecksum(HeadlessTextView view, HeadlessPaintContext context, ZLTextView.PageIndex index) {
+		context.resetDrawingChecksum();
+		view.paint(context, index);
+		return context.drawingChecksum();
+	}
+
+	// returns paragraph indices of all page starts
+	private static List<Integer> run(HeadlessTextView view, ZLTextModel model, HeadlessPaintContext context, boolean print) {
+		long start = System.nanoTime();
+		view.setModel(model);
+		view.preparePage(context, ZLTextView.PageIndex.current);
+		final long firstPage = System.nanoTime() - start;
+
+		final List<Integer> starts = new ArrayList<Integer>();
+		start = System.nanoTime();
+		ZLTextWordCursor previous = new ZLTextWordCursor(view.getStartCursor());
+		starts.add(previous.getParagraphIndex());
+		while (view.canScroll(ZLTextView.PageIndex.next)) {
+			view.turnPage(true, ZLTextView.ScrollingMode.NO_OVERLAPPING, 0);
+			view.preparePaintInfo();
+			final ZLTextWordCursor current = view.getStartCursor();
+			check(current.compareTo(previous) > 0, "page turn does not move forward at " + current);
+			previous = new ZLTextWordCursor(current);
+			starts.add(current.getParagraphIndex());
+		}
+		final long turns = System.nanoTime() - start;
+		final int pagesNumber = starts.size();
+
+		final Random random = new Random(3);
+		start = System.nanoTime();
+		for (int i = 0; i < GOTO_NUMBER; ++i) {
+			view.gotoPage(1 + random.nextInt(pagesNumber));
+			view.preparePaintInfo();
+		}
+		final long gotos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		int total = 0;
+		for (int i = 0; i < POSITION_NUMBER; ++i) {
+			total += view.pagePosition().Total;
+		}
+		final long positions = System.nanoTime() - start;
+		check(total > 0, "no pages");
+
+		view.gotoPage(1);
+		start = System.nanoTime();
+		for (int i = 0; i < 100; ++i) {
+			view.paint(context, ZLTextView.PageIndex.current);
+			view.turnPage(true, ZLTextView.ScrollingMode.NO_OVERLAPPING, 0);
+			view.preparePaintInfo();
+		}
+		final long paints = System.nanoTime() - start;
+		final ZLTextLineInfoCache cache = view.getLineInfoCache();
+
+		if (print) {
+			System.out.println(pagesNumber + " pages, estimated total " + total / POSITION_NUMBER);
+			report("first page", firstPage, 1);
+			report("turnPage + preparePaintInfo", turns, pagesNumber);
+			report("gotoPage + preparePaintInfo", gotos, GOTO_NUMBER);
+			report("pagePosition", positions, POSITION_NUMBER);
+			report("paint + turnPage", paints, 100);
+			System.out.println(String.format(
+				"line cache: %d lines of %d paragraphs, %d KB; %d hits, %d misses, %d evictions",
+				cache.size(), cache.paragraphs(), cache.approximateMemory() / 1024,
+				cache.hits(), cache.misses(), cache.evictions()
+			));
+		}
+		return starts;
+	}
+}
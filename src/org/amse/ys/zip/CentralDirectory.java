@@ -0,0 +1,131 @@
+package org.amse.ys.zip;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+/**
+ * Reads entry headers from the central directory at the end of an archive,
+ * so an entry can be found (and its size known) without scanning
+ * or inflating the preceding entries.
+ */
+final class CentralDirectory {
+	private static final int END_RECORD_SIZE = 22;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int LOCAL_HEADER_SIZE = 30;
+
+	private CentralDirectory() {
+	}
+
+	/**
+	 * @return false if the archive has no readable central directory
+	 *         (e.g., the archive is truncated or uses ZIP64 extensions);
+	 *         headers map is not changed in such a case
+	 */
+	static boolean read(FileChannel channel, Map<String,LocalFileHeader> headers) throws IOException {
+		final long fileSize = channel.size();
+		if (fileSize < END_RECORD_SIZE || fileSize > Integer.MAX_VALUE) {
+			return false;
+		}
+
+		final int tailSize = (int)Math.min(fileSize, END_RECORD_SIZE + MAX_COMMENT_SIZE);
+		final ByteBuffer tail = readFully(channel, fileSize - tailSize, tailSize);
+		int endRecord = -1;
+		for (int i = tailSize - END_RECORD_SIZE; i >= 0; --i) {
+			if (tail.getInt(i) == LocalFileHeader.END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+				endRecord = i;
+				break;
+			}
+		}
+		if (endRecord == -1) {
+			return false;
+		}
+
+		final int entriesNumber = tail.getShort(endRecord + 10) & 0xFFFF;
+		final long directorySize = tail.getInt(endRecord + 12) & 0xFFFFFFFFL;
+		final long directoryOffset = tail.getInt(endRecord + 16) & 0xFFFFFFFFL;
+		if (entriesNumber == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+			// ZIP64 archive
+			return false;
+		}
+		if (directoryOffset + directorySize > fileSize - tailSize + endRecord) {
+			return false;
+		}
+
+		final ByteBuffer directory = readFully(channel, directoryOffset, (int)directorySize);
+		final LocalFileHeader[] entries = new LocalFileHeader[entriesNumber];
+		int offset = 0;
+		for (int i = 0; i < entriesNumber; ++i) {
+			if (offset + CENTRAL_HEADER_SIZE > directorySize ||
+				directory.getInt(offset) != LocalFileHeader.FOLDER_HEADER_SIGNATURE) {
+				return false;
+			}
+			final LocalFileHeader header = new LocalFileHeader();
+			header.Signature = LocalFileHeader.FILE_HEADER_SIGNATURE;
+			header.Version = directory.getShort(offset + 6) & 0xFFFF;
+			header.Flags = directory.getShort(offset + 8) & 0xFFFF;
+			header.CompressionMethod = directory.getShort(offset + 10) & 0xFFFF;
+			header.ModificationTime = directory.getShort(offset + 12) & 0xFFFF;
+			header.ModificationDate = directory.getShort(offset + 14) & 0xFFFF;
+			header.CRC32 = directory.getInt(offset + 16);
+			header.CompressedSize = directory.getInt(offset + 20);
+			header.UncompressedSize = directory.getInt(offset + 24);
+			if (header.CompressionMethod == 0 && header.CompressedSize != header.UncompressedSize) {
+				header.CompressedSize = header.UncompressedSize;
+			}
+			header.NameLength = directory.getShort(offset + 28) & 0xFFFF;
+			final int extraLength = directory.getShort(offset + 30) & 0xFFFF;
+			final int commentLength = directory.getShort(offset + 32) & 0xFFFF;
+			header.LocalHeaderOffset = directory.getInt(offset + 42);
+			header.DataOffset = -1;
+
+			offset += CENTRAL_HEADER_SIZE;
+			if (offset + header.NameLength > directorySize) {
+				return false;
+			}
+			// the same (byte per char) decoding as in MyBufferedInputStream.readString
+			final char[] name = new char[header.NameLength];
+			for (int j = 0; j < name.length; ++j) {
+				name[j] = (char)(directory.get(offset + j) & 0xFF);
+			}
+			header.FileName = new String(name);
+			offset += header.NameLength + extraLength + commentLength;
+			entries[i] = header;
+		}
+
+		for (LocalFileHeader header : entries) {
+			headers.put(header.FileName, header);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the local header to find where the entry data starts;
+	 * local extra field length may differ from the one in the central directory
+	 */
+	static void resolveDataOffset(FileChannel channel, LocalFileHeader header) throws IOException {
+		final ByteBuffer local = readFully(channel, header.LocalHeaderOffset, LOCAL_HEADER_SIZE);
+		if (local.getInt(0) != LocalFileHeader.FILE_HEADER_SIGNATURE) {
+			throw new ZipException("Invalid local header for " + header.FileName);
+		}
+		header.ExtraLength = local.getShort(28) & 0xFFFF;
+		header.DataOffset =
+			header.LocalHeaderOffset + LOCAL_HEADER_SIZE +
+			(local.getShort(26) & 0xFFFF) + header.ExtraLength;
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			final int count = channel.read(buffer, position + buffer.position());
+			if (count < 0) {
+				throw new ZipException("unexpected end of file at position " + (position + buffer.position()));
+			}
+		}
+		return buffer;
+	}
+}
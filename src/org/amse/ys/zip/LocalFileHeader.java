@@ -28,6 +28,8 @@ public class LocalFileHeader {
 
 	public String FileName;
 	int DataOffset;
+	// known for headers read from the central directory only
+	int LocalHeaderOffset;
 
 	LocalFileHeader() {
 	}
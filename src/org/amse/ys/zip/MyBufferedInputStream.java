@@ -125,6 +125,15 @@ final class MyBufferedInputStream extends InputStream {
 		if (n <= 0) {
 			return;
 		}
+		if (myFileInputStream instanceof FileInputStream) {
+			// seek instead of reopening and skipping from the file start
+			final int position = myCurrentPosition - n;
+			((FileInputStream)myFileInputStream).getChannel().position(position);
+			myBytesReady = 0;
+			myPositionInBuffer = 0;
+			myCurrentPosition = position;
+			return;
+		}
 		myFileInputStream.close();
 		myFileInputStream = myStreamHolder.getInputStream();
 		myBytesReady = 0;
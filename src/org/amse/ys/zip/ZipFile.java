@@ -14,23 +14,80 @@ public final class ZipFile {
 	};
 
 	private final InputStreamHolder myStreamHolder;
+	private final File myFile;
 	private final Map<String,LocalFileHeader> myFileHeaders =
 		new TreeMap<String,LocalFileHeader>(ourIgnoreCaseComparator);
 
 	private boolean myAllFilesAreRead;
+	private boolean myCentralDirectoryIsTried;
 
 	public ZipFile(InputStreamHolder streamHolder) {
+		this(streamHolder, null);
+	}
+
+	/**
+	 * @param file physical file containing the archive, or null if the archive
+	 *        is accessible only as a stream (e.g., is an entry of another archive);
+	 *        for a physical file the headers are read from the central directory,
+	 *        the sequential scan is used only if the central directory is broken
+	 */
+	public ZipFile(InputStreamHolder streamHolder, File file) {
 		myStreamHolder = streamHolder;
+		myFile = file;
 	}
 
 	public Collection<LocalFileHeader> headers() {
 		try {
+			readCentralDirectory();
 			readAllHeaders();
 		} catch (IOException e) {
 		}
 		return myFileHeaders.values();
 	}
 
+	private synchronized void readCentralDirectory() {
+		if (myCentralDirectoryIsTried) {
+			return;
+		}
+		myCentralDirectoryIsTried = true;
+		if (myFile == null || myAllFilesAreRead) {
+			return;
+		}
+
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(myFile, "r");
+			final Map<String,LocalFileHeader> headers =
+				new TreeMap<String,LocalFileHeader>(ourIgnoreCaseComparator);
+			if (CentralDirectory.read(file.getChannel(), headers)) {
+				myFileHeaders.clear();
+				myFileHeaders.putAll(headers);
+				myAllFilesAreRead = true;
+			}
+		} catch (IOException e) {
+		} finally {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private synchronized LocalFileHeader resolve(LocalFileHeader header) throws IOException {
+		if (header.DataOffset != -1) {
+			return header;
+		}
+		final RandomAccessFile file = new RandomAccessFile(myFile, "r");
+		try {
+			CentralDirectory.resolveDataOffset(file.getChannel(), header);
+		} finally {
+			file.close();
+		}
+		return header;
+	}
+
 	private boolean readFileHeader(MyBufferedInputStream baseStream, String fileToFind) throws IOException {
 		LocalFileHeader header = new LocalFileHeader();
 		header.readFrom(baseStream);
@@ -88,10 +145,34 @@ public final class ZipFile {
 		Decompressor.storeDecompressor(decompressor);
 	}
 
+	private static final int MAX_STORED_STREAMS_NUMBER = 4;
 	private final Queue<MyBufferedInputStream> myStoredStreams = new LinkedList<MyBufferedInputStream>();
+	private boolean myStreamsAreReleased;
 
 	synchronized void storeBaseStream(MyBufferedInputStream baseStream) {
-		myStoredStreams.add(baseStream);
+		if (myStreamsAreReleased || myStoredStreams.size() >= MAX_STORED_STREAMS_NUMBER) {
+			try {
+				baseStream.close();
+			} catch (IOException e) {
+			}
+		} else {
+			myStoredStreams.add(baseStream);
+		}
+	}
+
+	/**
+	 * Closes all the stored streams; streams returned after this call are closed
+	 * immediately.  The object stays usable, but new streams are not reused.
+	 */
+	public synchronized void releaseStoredStreams() {
+		myStreamsAreReleased = true;
+		for (MyBufferedInputStream stream : myStoredStreams) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+			}
+		}
+		myStoredStreams.clear();
 	}
 
 	synchronized MyBufferedInputStream getBaseStream() throws IOException {
@@ -123,10 +204,11 @@ public final class ZipFile {
 	}
 
 	public LocalFileHeader getHeader(String entryName) throws IOException {
+		readCentralDirectory();
 		if (!myFileHeaders.isEmpty()) {
 			LocalFileHeader header = myFileHeaders.get(entryName);
 			if (header != null) {
-				return header;
+				return resolve(header);
 			}
 			if (myAllFilesAreRead) {
 				throw new ZipException("Entry " + entryName + " is not found");
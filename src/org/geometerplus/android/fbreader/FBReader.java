@@ -22,6 +22,7 @@ package org.geometerplus.android.fbreader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
@@ -40,10 +41,13 @@ import org.geometerplus.zlibrary.core.options.Config;
 import org.geometerplus.zlibrary.core.resources.ZLResource;
 import org.geometerplus.zlibrary.core.view.ZLViewWidget;
 
+import org.geometerplus.zlibrary.text.model.ZLTextMark;
+import org.geometerplus.zlibrary.text.model.ZLTextModel;
 import org.geometerplus.zlibrary.text.view.ZLTextView;
 
 import org.geometerplus.zlibrary.ui.android.R;
 import org.geometerplus.zlibrary.ui.android.error.ErrorKeys;
+import org.geometerplus.zlibrary.ui.android.image.ZLAndroidImageManager;
 import org.geometerplus.zlibrary.ui.android.library.*;
 import org.geometerplus.zlibrary.ui.android.view.AndroidFontUtil;
 import org.geometerplus.zlibrary.ui.android.view.ZLAndroidWidget;
@@ -366,18 +370,24 @@ public final class FBReader extends Activity implements ZLApplicationWindow {
 			new RunPluginAction(this, myFBReaderApp, data).run();
 		} else if (Intent.ACTION_SEARCH.equals(action)) {
 			final String pattern = intent.getStringExtra(SearchManager.QUERY);
-			final Runnable runnable = new Runnable() {
-				public void run() {
-					final TextSearchPopup popup = (TextSearchPopup)myFBReaderApp.getPopupById(TextSearchPopup.ID);
-					popup.initPosition();
-					myFBReaderApp.MiscOptions.TextSearchPattern.setValue(pattern);
-					if (myFBReaderApp.getTextView().search(pattern, true, false, false, false) != 0) {
+			final TextSearchPopup popup = (TextSearchPopup)myFBReaderApp.getPopupById(TextSearchPopup.ID);
+			popup.initPosition();
+			myFBReaderApp.MiscOptions.TextSearchPattern.setValue(pattern);
+			// the popup is shown with the first found marks, the search goes on in background
+			final AtomicBoolean popupShown = new AtomicBoolean(false);
+			myFBReaderApp.getTextView().search(pattern, true, false, false, false, new ZLTextModel.SearchListener() {
+				public void onMarksFound(List<ZLTextMark> marks) {
+					if (popupShown.compareAndSet(false, true)) {
 						runOnUiThread(new Runnable() {
 							public void run() {
 								myFBReaderApp.showPopup(popup.getId());
 							}
 						});
-					} else {
+					}
+				}
+
+				public void onSearchFinished(int count) {
+					if (count == 0) {
 						runOnUiThread(new Runnable() {
 							public void run() {
 								UIUtil.showErrorMessage(FBReader.this, "textNotFound");
@@ -386,8 +396,7 @@ public final class FBReader extends Activity implements ZLApplicationWindow {
 						});
 					}
 				}
-			};
-			UIUtil.wait("search", runnable, this);
+			});
 		} else if (FBReaderIntents.Action.CLOSE.equals(intent.getAction())) {
 			myCancelIntent = intent;
 			myOpenBookIntent = null;
@@ -615,6 +624,9 @@ public final class FBReader extends Activity implements ZLApplicationWindow {
 
 	@Override
 	protected void onStop() {
+		// the position is stored and flushed in onPause(); the process can be killed
+		// once the activity is stopped, so here the writes are waited for
+		myFBReaderApp.PositionSaver.flushAndWait();
 		ApiServerImplementation.sendEvent(this, ApiListener.EVENT_READ_MODE_CLOSED);
 		PopupPanel.removeAllWindows(myFBReaderApp, this);
 		super.onStop();
@@ -630,6 +642,7 @@ public final class FBReader extends Activity implements ZLApplicationWindow {
 	@Override
 	public void onLowMemory() {
 		myFBReaderApp.onWindowClosing();
+		((ZLAndroidImageManager)ZLAndroidImageManager.Instance()).clearImageCache();
 		super.onLowMemory();
 	}
 
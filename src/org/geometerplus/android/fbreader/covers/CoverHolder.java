@@ -53,6 +53,10 @@ class CoverHolder {
 				coverBitmapTask = null;
 			}
 			coverBitmapRunnable = null;
+			if (coverSyncRunnable != null) {
+				coverSyncRunnable.cancel();
+				coverSyncRunnable = null;
+			}
 		}
 		Key = key;
 	}
@@ -69,6 +73,11 @@ class CoverHolder {
 			}
 		}
 
+		// called under CoverHolder.this lock
+		void cancel() {
+			myImage.cancelSynchronization(myManager.ImageSynchronizer, this);
+		}
+
 		public void run() {
 			synchronized (CoverHolder.this) {
 				try {
@@ -48,13 +48,13 @@ public class CoverManager {
 	private final ExecutorService myPool = Executors.newFixedThreadPool(1, new MinPriorityThreadFactory());
 
 	private final Activity myActivity;
-	private final ZLImageProxy.Synchronizer myImageSynchronizer;
+	final ZLImageProxy.Synchronizer ImageSynchronizer;
 	private final int myCoverWidth;
 	private final int myCoverHeight;
 
 	public CoverManager(Activity activity, ZLImageProxy.Synchronizer synchronizer, int coverWidth, int coverHeight) {
 		myActivity = activity;
-		myImageSynchronizer = synchronizer;
+		ImageSynchronizer = synchronizer;
 		myCoverWidth = coverWidth;
 		myCoverHeight = coverHeight;
 	}
@@ -122,7 +122,8 @@ public class CoverManager {
 					setCoverForView(holder, img);
 				} else {
 					img.startSynchronization(
-						myImageSynchronizer,
+						ImageSynchronizer,
+						ZLImageProxy.LoadingPriority.THUMBNAIL,
 						holder.new CoverSyncRunnable(img)
 					);
 				}
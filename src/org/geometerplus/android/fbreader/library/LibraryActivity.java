@@ -45,7 +45,7 @@ import org.geometerplus.android.fbreader.api.FBReaderIntents;
 import org.geometerplus.android.fbreader.libraryService.BookCollectionShadow;
 import org.geometerplus.android.fbreader.tree.TreeActivity;
 
-public class LibraryActivity extends TreeActivity<LibraryTree> implements MenuItem.OnMenuItemClickListener, View.OnCreateContextMenuListener, IBookCollection.Listener {
+public class LibraryActivity extends TreeActivity<LibraryTree> implements MenuItem.OnMenuItemClickListener, View.OnCreateContextMenuListener, IBookCollection.Listener, IBookCollection.BuildProgressListener {
 	static final String START_SEARCH_ACTION = "action.fbreader.library.start-search";
 
 	private final BookCollectionShadow myCollection = new BookCollectionShadow();
@@ -54,6 +54,7 @@ public class LibraryActivity extends TreeActivity<LibraryTree> implements MenuIt
 
 	@Override
 	protected void onCreate(Bundle icicle) {
+		requestWindowFeature(Window.FEATURE_PROGRESS);
 		super.onCreate(icicle);
 
 		mySelectedBook = FBReaderIntents.getBookExtra(getIntent());
@@ -70,6 +71,7 @@ public class LibraryActivity extends TreeActivity<LibraryTree> implements MenuIt
 				setProgressBarIndeterminateVisibility(!myCollection.status().IsComplete);
 				myRootTree = new RootTree(myCollection);
 				myCollection.addListener(LibraryActivity.this);
+				myCollection.addBuildProgressListener(LibraryActivity.this);
 				init(getIntent());
 			}
 		});
@@ -95,6 +97,7 @@ public class LibraryActivity extends TreeActivity<LibraryTree> implements MenuIt
 	private synchronized void deleteRootTree() {
 		if (myRootTree != null) {
 			myCollection.removeListener(this);
+			myCollection.removeBuildProgressListener(this);
 			myCollection.unbind();
 			myRootTree = null;
 		}
@@ -490,5 +493,17 @@ public class LibraryActivity extends TreeActivity<LibraryTree> implements MenuIt
 
 	public void onBuildEvent(IBookCollection.Status status) {
 		setProgressBarIndeterminateVisibility(!status.IsComplete);
+		if (status.IsComplete) {
+			setProgressBarVisibility(false);
+		}
+	}
+
+	public void onBuildProgress(int processed, int total) {
+		if (total > 0 && processed < total) {
+			setProgressBarVisibility(true);
+			setProgress((int)(10000L * processed / total));
+		} else {
+			setProgressBarVisibility(false);
+		}
 	}
 }
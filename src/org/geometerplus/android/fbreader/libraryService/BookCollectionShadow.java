@@ -20,6 +20,7 @@
 package org.geometerplus.android.fbreader.libraryService;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.*;
 import android.os.IBinder;
@@ -43,8 +44,29 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	private volatile LibraryInterface myInterface;
 	private final List<Runnable> myOnBindActions = new LinkedList<Runnable>();
 
+	// -1 means the service was not asked yet
+	private int myBinaryVersion = -1;
+
+	// books() pages are requested by PREFETCHED_PAGES_NUMBER pages per call;
+	// prefetched pages are valid until the first library change;
+	// a change only increments the generation, so the broadcast receiver
+	// never waits for a running fetch
+	private static final int PREFETCHED_PAGES_NUMBER = 5;
+	private final AtomicInteger myGeneration = new AtomicInteger();
+	private int myPrefetchedGeneration;
+	private String myPrefetchedQuery;
+	private int myPrefetchedFirstPage;
+	private List<Book> myPrefetchedBooks;
+
 	private final BroadcastReceiver myReceiver = new BroadcastReceiver() {
 		public void onReceive(Context context, Intent intent) {
+			if (LibraryService.BUILD_PROGRESS_ACTION.equals(intent.getAction())) {
+				fireBuildProgress(
+					intent.getIntExtra("processed", 0), intent.getIntExtra("total", 0)
+				);
+				return;
+			}
+			invalidatePrefetchedBooks();
 			if (!hasListeners()) {
 				return;
 			}
@@ -105,6 +127,7 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	}
 
 	public synchronized void reset(boolean force) {
+		invalidatePrefetchedBooks();
 		if (myInterface != null) {
 			try {
 				myInterface.reset(force);
@@ -138,6 +161,12 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	public List<Book> books(final BookQuery query) {
 		return listCall(new ListCallable<Book>() {
 			public List<Book> call() throws RemoteException {
+				if (binaryVersion() == SerializerUtil.BINARY_VERSION) {
+					final List<Book> books = prefetchedBooks(query);
+					if (books != null) {
+						return books;
+					}
+				}
 				return SerializerUtil.deserializeBookList(
 					myInterface.books(SerializerUtil.serialize(query))
 				);
@@ -289,6 +318,7 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	}
 
 	public synchronized boolean saveBook(Book book) {
+		invalidatePrefetchedBooks();
 		if (myInterface == null) {
 			return false;
 		}
@@ -311,6 +341,7 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	}
 
 	public synchronized void removeBook(Book book, boolean deleteFromDisk) {
+		invalidatePrefetchedBooks();
 		if (myInterface != null) {
 			try {
 				myInterface.removeBook(SerializerUtil.serialize(book), deleteFromDisk);
@@ -456,6 +487,14 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	public List<Bookmark> bookmarks(final BookmarkQuery query) {
 		return listCall(new ListCallable<Bookmark>() {
 			public List<Bookmark> call() throws RemoteException {
+				if (binaryVersion() == SerializerUtil.BINARY_VERSION) {
+					final List<Bookmark> bookmarks = SerializerUtil.deserializeBookmarkListBinary(
+						myInterface.bookmarksBinary(SerializerUtil.serialize(query), SerializerUtil.BINARY_VERSION)
+					);
+					if (bookmarks != null) {
+						return bookmarks;
+					}
+				}
 				return SerializerUtil.deserializeBookmarkList(
 					myInterface.bookmarks(SerializerUtil.serialize(query))
 				);
@@ -464,6 +503,7 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	}
 
 	public synchronized void saveBookmark(Bookmark bookmark) {
+		invalidatePrefetchedBooks();
 		if (myInterface != null) {
 			try {
 				bookmark.update(SerializerUtil.deserializeBookmark(
@@ -475,6 +515,7 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	}
 
 	public synchronized void deleteBookmark(Bookmark bookmark) {
+		invalidatePrefetchedBooks();
 		if (myInterface != null) {
 			try {
 				myInterface.deleteBookmark(SerializerUtil.serialize(bookmark));
@@ -530,6 +571,7 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	}
 
 	public synchronized void rescan(String path) {
+		invalidatePrefetchedBooks();
 		if (myInterface != null) {
 			try {
 				myInterface.rescan(path);
@@ -554,6 +596,7 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	}
 
 	public synchronized boolean setActiveFormats(List<String> formats) {
+		invalidatePrefetchedBooks();
 		if (myInterface != null) {
 			try {
 				return myInterface.setActiveFormats(formats);
@@ -563,6 +606,51 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 		return false;
 	}
 
+	private int binaryVersion() throws RemoteException {
+		if (myBinaryVersion == -1) {
+			// older services do not know the method, the call returns 0 then
+			myBinaryVersion = myInterface.binaryVersion();
+		}
+		return myBinaryVersion;
+	}
+
+	// called under the lock from listCall()
+	private List<Book> prefetchedBooks(BookQuery query) throws RemoteException {
+		final String key = SerializerUtil.serialize(new BookQuery(query.Filter, query.Limit));
+		final int generation = myGeneration.get();
+		if (myPrefetchedBooks == null ||
+			myPrefetchedGeneration != generation ||
+			!key.equals(myPrefetchedQuery) ||
+			query.Page < myPrefetchedFirstPage ||
+			query.Page >= myPrefetchedFirstPage + PREFETCHED_PAGES_NUMBER) {
+			myPrefetchedBooks = null;
+			final List<Book> books = SerializerUtil.deserializeBookListBinary(myInterface.booksBinary(
+				SerializerUtil.serialize(query), PREFETCHED_PAGES_NUMBER, SerializerUtil.BINARY_VERSION
+			));
+			if (books == null) {
+				return null;
+			}
+			// a change during the fetch leaves the block outdated at once
+			myPrefetchedGeneration = generation;
+			myPrefetchedQuery = key;
+			myPrefetchedFirstPage = query.Page;
+			myPrefetchedBooks = books;
+		}
+		final int start = (query.Page - myPrefetchedFirstPage) * query.Limit;
+		final int end = Math.min(start + query.Limit, myPrefetchedBooks.size());
+		// callers may change the books they get, so the block keeps its own objects
+		final List<Book> page = new ArrayList<Book>(Math.max(end - start, 0));
+		for (int i = start; i < end; ++i) {
+			page.add(myPrefetchedBooks.get(i).copy());
+		}
+		return page;
+	}
+
+	// not synchronized: it is called from the broadcast receiver on the main thread
+	private void invalidatePrefetchedBooks() {
+		myGeneration.incrementAndGet();
+	}
+
 	private interface ListCallable<T> {
 		List<T> call() throws RemoteException;
 	}
@@ -584,12 +672,15 @@ public class BookCollectionShadow extends AbstractBookCollection implements Serv
 	// method from ServiceConnection interface
 	public synchronized void onServiceConnected(ComponentName name, IBinder service) {
 		myInterface = LibraryInterface.Stub.asInterface(service);
+		myBinaryVersion = -1;
+		invalidatePrefetchedBooks();
 		while (!myOnBindActions.isEmpty()) {
 			Config.Instance().runOnConnect(myOnBindActions.remove(0));
 		}
 		if (myContext != null) {
 			myContext.registerReceiver(myReceiver, new IntentFilter(LibraryService.BOOK_EVENT_ACTION));
 			myContext.registerReceiver(myReceiver, new IntentFilter(LibraryService.BUILD_EVENT_ACTION));
+			myContext.registerReceiver(myReceiver, new IntentFilter(LibraryService.BUILD_PROGRESS_ACTION));
 		}
 	}
 
@@ -53,6 +53,7 @@ public class LibraryService extends Service {
 
 	static final String BOOK_EVENT_ACTION = "fbreader.library_service.book_event";
 	static final String BUILD_EVENT_ACTION = "fbreader.library_service.build_event";
+	static final String BUILD_PROGRESS_ACTION = "fbreader.library_service.build_progress";
 	static final String COVER_READY_ACTION = "fbreader.library_service.cover_ready";
 
 	private final BitmapCache myCoversCache = new BitmapCache(0.2f);
@@ -153,6 +154,14 @@ public class LibraryService extends Service {
 					sendBroadcast(intent);
 				}
 			});
+			myCollection.addBuildProgressListener(new BookCollection.BuildProgressListener() {
+				public void onBuildProgress(int processed, int total) {
+					final Intent intent = new Intent(BUILD_PROGRESS_ACTION);
+					intent.putExtra("processed", processed);
+					intent.putExtra("total", total);
+					sendBroadcast(intent);
+				}
+			});
 			myCollection.startBuild();
 		}
 
@@ -451,6 +460,39 @@ public class LibraryService extends Service {
 				return false;
 			}
 		}
+
+		public int binaryVersion() {
+			return SerializerUtil.BINARY_VERSION;
+		}
+
+		// returns books for given number of query pages in one block
+		public byte[] booksBinary(String query, int pages, int version) {
+			if (version != SerializerUtil.BINARY_VERSION) {
+				return null;
+			}
+			BookQuery q = SerializerUtil.deserializeBookQuery(query);
+			if (q == null) {
+				return null;
+			}
+			final List<Book> books = new ArrayList<Book>();
+			for (int i = 0; i < pages; ++i, q = q.next()) {
+				final List<Book> page = myCollection.books(q);
+				books.addAll(page);
+				if (page.size() < q.Limit) {
+					break;
+				}
+			}
+			return SerializerUtil.serializeBookListBinary(books);
+		}
+
+		public byte[] bookmarksBinary(String query, int version) {
+			if (version != SerializerUtil.BINARY_VERSION) {
+				return null;
+			}
+			return SerializerUtil.serializeBookmarkListBinary(myCollection.bookmarks(
+				SerializerUtil.deserializeBookmarkQuery(query)
+			));
+		}
 	}
 
 	private volatile LibraryImplementation myLibrary;
@@ -75,7 +75,7 @@ final class SQLiteBooksDatabase extends BooksDatabase {
 
 	private void migrate() {
 		final int version = myDatabase.getVersion();
-		final int currentVersion = 35;
+		final int currentVersion = 36;
 		if (version >= currentVersion) {
 			return;
 		}
@@ -153,6 +153,8 @@ final class SQLiteBooksDatabase extends BooksDatabase {
 				updateTables33();
 			case 34:
 				updateTables34();
+			case 35:
+				updateTables35();
 		}
 		myDatabase.setTransactionSuccessful();
 		myDatabase.setVersion(currentVersion);
@@ -697,6 +699,29 @@ final class SQLiteBooksDatabase extends BooksDatabase {
 		}
 	}
 
+	protected Map<Long,Long> loadDirectoryFingerprints() {
+		final Cursor cursor = myDatabase.rawQuery(
+			"SELECT file_id,fingerprint FROM Files WHERE fingerprint IS NOT NULL", null
+		);
+		final HashMap<Long,Long> fingerprints = new HashMap<Long,Long>();
+		while (cursor.moveToNext()) {
+			fingerprints.put(cursor.getLong(0), cursor.getLong(1));
+		}
+		cursor.close();
+		return fingerprints;
+	}
+
+	protected void saveDirectoryFingerprint(long fileId, long fingerprint) {
+		final SQLiteStatement statement = get("UPDATE Files SET fingerprint=? WHERE file_id=?");
+		if (fingerprint != -1) {
+			statement.bindLong(1, fingerprint);
+		} else {
+			statement.bindNull(1);
+		}
+		statement.bindLong(2, fileId);
+		statement.execute();
+	}
+
 	protected Collection<FileInfo> loadFileInfos() {
 		Cursor cursor = myDatabase.rawQuery(
 			"SELECT file_id,name,parent_id,size FROM Files", null
@@ -1686,6 +1711,10 @@ final class SQLiteBooksDatabase extends BooksDatabase {
 		myDatabase.execSQL("CREATE TABLE IF NOT EXISTS DeletedBookmarkIds(uid TEXT(36) PRIMARY KEY)");
 	}
 
+	private void updateTables35() {
+		myDatabase.execSQL("ALTER TABLE Files ADD COLUMN fingerprint INTEGER");
+	}
+
 	private SQLiteStatement get(String sql) {
 		SQLiteStatement statement = myStatements.get(sql);
 		if (statement == null) {
@@ -551,6 +551,8 @@ public class PreferenceActivity extends ZLPreferenceActivity {
 			}
 		});
 
+		statusLineScreen.addOption(viewOptions.ExactPageNumbers, "exactPageNumbers");
+
 		footerPreferences.add(statusLineScreen.addPreference(new ZLIntegerRangePreference(
 			this, statusLineScreen.Resource.getResource("footerHeight"),
 			viewOptions.FooterHeight
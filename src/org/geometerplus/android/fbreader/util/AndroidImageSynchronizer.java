@@ -83,9 +83,15 @@ public class AndroidImageSynchronizer implements ZLImageProxy.Synchronizer {
 	}
 
 	@Override
-	public void startImageLoading(ZLImageProxy image, Runnable postAction) {
+	public void startImageLoading(ZLImageProxy image, ZLImageProxy.LoadingPriority priority, Runnable postAction) {
 		final ZLAndroidImageManager manager = (ZLAndroidImageManager)ZLAndroidImageManager.Instance();
-		manager.startImageLoading(this, image, postAction);
+		manager.startImageLoading(this, image, priority, postAction);
+	}
+
+	@Override
+	public void cancelImageLoading(ZLImageProxy image, Runnable postAction) {
+		final ZLAndroidImageManager manager = (ZLAndroidImageManager)ZLAndroidImageManager.Instance();
+		manager.cancelImageLoading(image, postAction);
 	}
 
 	@Override
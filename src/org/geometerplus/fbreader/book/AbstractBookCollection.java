@@ -25,6 +25,8 @@ import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 
 public abstract class AbstractBookCollection implements IBookCollection {
 	private final List<Listener> myListeners = Collections.synchronizedList(new LinkedList<Listener>());
+	private final List<BuildProgressListener> myProgressListeners =
+		Collections.synchronizedList(new LinkedList<BuildProgressListener>());
 
 	public void addListener(Listener listener) {
 		if (!myListeners.contains(listener)) {
@@ -56,6 +58,24 @@ public abstract class AbstractBookCollection implements IBookCollection {
 		}
 	}
 
+	public void addBuildProgressListener(BuildProgressListener listener) {
+		if (!myProgressListeners.contains(listener)) {
+			myProgressListeners.add(listener);
+		}
+	}
+
+	public void removeBuildProgressListener(BuildProgressListener listener) {
+		myProgressListeners.remove(listener);
+	}
+
+	protected void fireBuildProgress(int processed, int total) {
+		synchronized (myProgressListeners) {
+			for (BuildProgressListener l : myProgressListeners) {
+				l.onBuildProgress(processed, total);
+			}
+		}
+	}
+
 	public final Book getBookByFile(String path) {
 		return getBookByFile(ZLFile.createFileByPath(path));
 	}
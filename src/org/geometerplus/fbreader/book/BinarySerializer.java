@@ -0,0 +1,592 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.book;
+
+import java.io.*;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.util.RationalNumber;
+import org.geometerplus.zlibrary.core.util.ZLColor;
+
+import org.geometerplus.zlibrary.text.view.ZLTextPosition;
+
+/**
+ * Compact binary form of the library objects, used for lists transferred
+ * between the library service and its clients. Each serialized block starts
+ * with the format version; blocks of unknown versions are not deserialized.
+ * String methods keep the bytes as ISO-8859-1 characters.
+ */
+class BinarySerializer extends AbstractSerializer {
+	static final int VERSION = 1;
+
+	private static final String CHARSET = "ISO-8859-1";
+	private static final String UTF8 = "UTF-8";
+
+	private interface Writer<T> {
+		void write(DataOutputStream stream, T object) throws IOException;
+	}
+
+	private interface Reader<T> {
+		T read(DataInputStream stream) throws IOException;
+	}
+
+	private final Writer<BookQuery> myBookQueryWriter = new Writer<BookQuery>() {
+		public void write(DataOutputStream stream, BookQuery query) throws IOException {
+			stream.writeInt(query.Limit);
+			stream.writeInt(query.Page);
+			writeFilter(stream, query.Filter);
+		}
+	};
+	private final Reader<BookQuery> myBookQueryReader = new Reader<BookQuery>() {
+		public BookQuery read(DataInputStream stream) throws IOException {
+			final int limit = stream.readInt();
+			final int page = stream.readInt();
+			return new BookQuery(readFilter(stream), limit, page);
+		}
+	};
+
+	private final Writer<BookmarkQuery> myBookmarkQueryWriter = new Writer<BookmarkQuery>() {
+		public void write(DataOutputStream stream, BookmarkQuery query) throws IOException {
+			stream.writeInt(query.Limit);
+			stream.writeInt(query.Page);
+			stream.writeBoolean(query.Visible);
+			stream.writeBoolean(query.Book != null);
+			if (query.Book != null) {
+				writeBook(stream, query.Book);
+			}
+		}
+	};
+	private final Reader<BookmarkQuery> myBookmarkQueryReader = new Reader<BookmarkQuery>() {
+		public BookmarkQuery read(DataInputStream stream) throws IOException {
+			final int limit = stream.readInt();
+			final int page = stream.readInt();
+			final boolean visible = stream.readBoolean();
+			final Book book = stream.readBoolean() ? readBook(stream) : null;
+			return new BookmarkQuery(book, visible, limit, page);
+		}
+	};
+
+	private final Writer<Book> myBookWriter = new Writer<Book>() {
+		public void write(DataOutputStream stream, Book book) throws IOException {
+			writeBook(stream, book);
+		}
+	};
+	private final Reader<Book> myBookReader = new Reader<Book>() {
+		public Book read(DataInputStream stream) throws IOException {
+			return readBook(stream);
+		}
+	};
+
+	private final Writer<Bookmark> myBookmarkWriter = new Writer<Bookmark>() {
+		public void write(DataOutputStream stream, Bookmark bookmark) throws IOException {
+			stream.writeLong(bookmark.getId());
+			writeString(stream, bookmark.Uid);
+			writeString(stream, bookmark.getVersionUid());
+			stream.writeBoolean(bookmark.IsVisible);
+			stream.writeLong(bookmark.BookId);
+			writeString(stream, bookmark.BookTitle);
+			writeString(stream, bookmark.getText());
+			writeDate(stream, bookmark.getDate(Bookmark.DateType.Creation));
+			writeDate(stream, bookmark.getDate(Bookmark.DateType.Modification));
+			writeDate(stream, bookmark.getDate(Bookmark.DateType.Access));
+			writeString(stream, bookmark.ModelId);
+			stream.writeInt(bookmark.getParagraphIndex());
+			stream.writeInt(bookmark.getElementIndex());
+			stream.writeInt(bookmark.getCharIndex());
+			final ZLTextPosition end = bookmark.getEnd();
+			if (end != null) {
+				stream.writeInt(end.getParagraphIndex());
+				stream.writeInt(end.getElementIndex());
+				stream.writeInt(end.getCharIndex());
+			} else {
+				stream.writeInt(bookmark.getLength());
+				stream.writeInt(-1);
+				stream.writeInt(-1);
+			}
+			stream.writeInt(bookmark.getStyleId());
+		}
+	};
+	private final Reader<Bookmark> myBookmarkReader = new Reader<Bookmark>() {
+		public Bookmark read(DataInputStream stream) throws IOException {
+			final long id = stream.readLong();
+			final String uid = readString(stream);
+			final String versionUid = readString(stream);
+			final boolean isVisible = stream.readBoolean();
+			final long bookId = stream.readLong();
+			final String bookTitle = readString(stream);
+			final String text = readString(stream);
+			final Date creationDate = readDate(stream);
+			final Date modificationDate = readDate(stream);
+			final Date accessDate = readDate(stream);
+			final String modelId = readString(stream);
+			final int startParagraph = stream.readInt();
+			final int startElement = stream.readInt();
+			final int startChar = stream.readInt();
+			final int endParagraph = stream.readInt();
+			final int endElement = stream.readInt();
+			final int endChar = stream.readInt();
+			final int styleId = stream.readInt();
+			if (bookId == -1) {
+				return null;
+			}
+			return new Bookmark(
+				id, uid, versionUid,
+				bookId, bookTitle, text,
+				creationDate, modificationDate, accessDate,
+				modelId,
+				startParagraph, startElement, startChar,
+				endParagraph, endElement, endChar,
+				isVisible,
+				styleId
+			);
+		}
+	};
+
+	private final Writer<HighlightingStyle> myStyleWriter = new Writer<HighlightingStyle>() {
+		public void write(DataOutputStream stream, HighlightingStyle style) throws IOException {
+			final ZLColor bgColor = style.getBackgroundColor();
+			final ZLColor fgColor = style.getForegroundColor();
+			stream.writeInt(style.Id);
+			writeString(stream, style.getName());
+			stream.writeInt(bgColor != null ? bgColor.intValue() : -1);
+			stream.writeInt(fgColor != null ? fgColor.intValue() : -1);
+		}
+	};
+	private final Reader<HighlightingStyle> myStyleReader = new Reader<HighlightingStyle>() {
+		public HighlightingStyle read(DataInputStream stream) throws IOException {
+			final int id = stream.readInt();
+			final String name = readString(stream);
+			final int bg = stream.readInt();
+			final int fg = stream.readInt();
+			if (id == -1) {
+				return null;
+			}
+			return new HighlightingStyle(
+				id, name,
+				bg != -1 ? new ZLColor(bg) : null,
+				fg != -1 ? new ZLColor(fg) : null
+			);
+		}
+	};
+
+	@Override
+	public String serialize(BookQuery query) {
+		return toString(serialize(query, myBookQueryWriter));
+	}
+
+	@Override
+	public BookQuery deserializeBookQuery(String data) {
+		return deserialize(toBytes(data), myBookQueryReader);
+	}
+
+	@Override
+	public String serialize(BookmarkQuery query) {
+		return toString(serialize(query, myBookmarkQueryWriter));
+	}
+
+	@Override
+	public BookmarkQuery deserializeBookmarkQuery(String data) {
+		return deserialize(toBytes(data), myBookmarkQueryReader);
+	}
+
+	@Override
+	public String serialize(Book book) {
+		return toString(serialize(book, myBookWriter));
+	}
+
+	@Override
+	public Book deserializeBook(String data) {
+		return deserialize(toBytes(data), myBookReader);
+	}
+
+	@Override
+	public String serialize(Bookmark bookmark) {
+		return toString(serialize(bookmark, myBookmarkWriter));
+	}
+
+	@Override
+	public Bookmark deserializeBookmark(String data) {
+		return deserialize(toBytes(data), myBookmarkReader);
+	}
+
+	@Override
+	public String serialize(HighlightingStyle style) {
+		return toString(serialize(style, myStyleWriter));
+	}
+
+	@Override
+	public HighlightingStyle deserializeStyle(String data) {
+		return deserialize(toBytes(data), myStyleReader);
+	}
+
+	public byte[] serializeBookList(List<Book> books) {
+		return serializeList(books, myBookWriter);
+	}
+
+	public List<Book> deserializeBookList(byte[] data) {
+		return deserializeList(data, myBookReader);
+	}
+
+	public byte[] serializeBookmarkList(List<Bookmark> bookmarks) {
+		return serializeList(bookmarks, myBookmarkWriter);
+	}
+
+	public List<Bookmark> deserializeBookmarkList(byte[] data) {
+		return deserializeList(data, myBookmarkReader);
+	}
+
+	private static String toString(byte[] data) {
+		try {
+			return new String(data, CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static byte[] toBytes(String data) {
+		try {
+			return data.getBytes(CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static <T> byte[] serialize(T object, Writer<T> writer) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		final DataOutputStream stream = new DataOutputStream(bytes);
+		try {
+			stream.writeByte(VERSION);
+			writer.write(stream, object);
+			stream.flush();
+		} catch (IOException e) {
+			// never happens for in-memory stream
+			throw new RuntimeException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static <T> T deserialize(byte[] data, Reader<T> reader) {
+		final DataInputStream stream = new DataInputStream(new ByteArrayInputStream(data));
+		try {
+			if (stream.readUnsignedByte() != VERSION) {
+				return null;
+			}
+			return reader.read(stream);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static <T> byte[] serializeList(List<T> list, Writer<T> writer) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * list.size() + 16);
+		final DataOutputStream stream = new DataOutputStream(bytes);
+		try {
+			stream.writeByte(VERSION);
+			stream.writeInt(list.size());
+			for (T object : list) {
+				writer.write(stream, object);
+			}
+			stream.flush();
+		} catch (IOException e) {
+			// never happens for in-memory stream
+			throw new RuntimeException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static <T> List<T> deserializeList(byte[] data, Reader<T> reader) {
+		final DataInputStream stream = new DataInputStream(new ByteArrayInputStream(data));
+		try {
+			if (stream.readUnsignedByte() != VERSION) {
+				return null;
+			}
+			final int size = stream.readInt();
+			final List<T> list = new ArrayList<T>(size);
+			for (int i = 0; i < size; ++i) {
+				final T object = reader.read(stream);
+				if (object != null) {
+					list.add(object);
+				}
+			}
+			return list;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static void writeBook(DataOutputStream stream, Book book) throws IOException {
+		stream.writeLong(book.getId());
+		writeString(stream, book.File.getUrl());
+		writeString(stream, book.getTitle());
+		writeString(stream, book.getEncodingNoDetection());
+		writeString(stream, book.getLanguage());
+
+		final List<UID> uids = book.uids();
+		stream.writeInt(uids.size());
+		for (UID uid : uids) {
+			writeString(stream, uid.Type);
+			writeString(stream, uid.Id);
+		}
+
+		final List<Author> authors = book.authors();
+		stream.writeInt(authors.size());
+		for (Author author : authors) {
+			writeString(stream, author.DisplayName);
+			writeString(stream, author.SortKey);
+		}
+
+		final List<Tag> tags = book.tags();
+		stream.writeInt(tags.size());
+		for (Tag tag : tags) {
+			writeTag(stream, tag);
+		}
+
+		final List<String> labels = book.labels();
+		stream.writeInt(labels.size());
+		for (String label : labels) {
+			writeString(stream, label);
+		}
+
+		final SeriesInfo seriesInfo = book.getSeriesInfo();
+		writeString(stream, seriesInfo != null ? seriesInfo.Series.getTitle() : null);
+		writeString(stream, seriesInfo != null && seriesInfo.Index != null
+			? seriesInfo.Index.toPlainString() : null);
+
+		stream.writeBoolean(book.HasBookmark);
+
+		final RationalNumber progress = book.getProgress();
+		stream.writeBoolean(progress != null);
+		if (progress != null) {
+			stream.writeLong(progress.Numerator);
+			stream.writeLong(progress.Denominator);
+		}
+	}
+
+	private static Book readBook(DataInputStream stream) throws IOException {
+		final long id = stream.readLong();
+		final String url = readString(stream);
+		final String title = readString(stream);
+		final String encoding = readString(stream);
+		final String language = readString(stream);
+
+		final List<UID> uids = new ArrayList<UID>();
+		for (int count = stream.readInt(); count > 0; --count) {
+			final String type = readString(stream);
+			uids.add(new UID(type, readString(stream)));
+		}
+
+		final List<Author> authors = new ArrayList<Author>();
+		for (int count = stream.readInt(); count > 0; --count) {
+			final String name = readString(stream);
+			authors.add(new Author(name, readString(stream)));
+		}
+
+		final List<Tag> tags = new ArrayList<Tag>();
+		for (int count = stream.readInt(); count > 0; --count) {
+			tags.add(readTag(stream));
+		}
+
+		final List<String> labels = new ArrayList<String>();
+		for (int count = stream.readInt(); count > 0; --count) {
+			labels.add(readString(stream));
+		}
+
+		final String seriesTitle = readString(stream);
+		final String seriesIndex = readString(stream);
+		final boolean hasBookmark = stream.readBoolean();
+		final RationalNumber progress = stream.readBoolean()
+			? RationalNumber.create(stream.readLong(), stream.readLong()) : null;
+
+		if (id == -1 || url == null) {
+			return null;
+		}
+		final Book book = new Book(id, ZLFile.createFileByUrl(url), title, encoding, language);
+		for (Author author : authors) {
+			book.addAuthorWithNoCheck(author);
+		}
+		for (Tag tag : tags) {
+			if (tag != null) {
+				book.addTagWithNoCheck(tag);
+			}
+		}
+		for (String label : labels) {
+			book.addLabelWithNoCheck(label);
+		}
+		for (UID uid : uids) {
+			book.addUidWithNoCheck(uid);
+		}
+		book.setSeriesInfoWithNoCheck(seriesTitle, seriesIndex);
+		book.setProgressWithNoCheck(progress);
+		book.HasBookmark = hasBookmark;
+		return book;
+	}
+
+	private static final int FILTER_EMPTY = 0;
+	private static final int FILTER_NOT = 1;
+	private static final int FILTER_AND = 2;
+	private static final int FILTER_OR = 3;
+	private static final int FILTER_AUTHOR = 4;
+	private static final int FILTER_TAG = 5;
+	private static final int FILTER_LABEL = 6;
+	private static final int FILTER_SERIES = 7;
+	private static final int FILTER_PATTERN = 8;
+	private static final int FILTER_TITLE_PREFIX = 9;
+	private static final int FILTER_HAS_BOOKMARK = 10;
+	private static final int FILTER_HAS_PHYSICAL_FILE = 11;
+
+	private static void writeFilter(DataOutputStream stream, Filter filter) throws IOException {
+		if (filter instanceof Filter.Empty) {
+			stream.writeByte(FILTER_EMPTY);
+		} else if (filter instanceof Filter.Not) {
+			stream.writeByte(FILTER_NOT);
+			writeFilter(stream, ((Filter.Not)filter).Base);
+		} else if (filter instanceof Filter.And) {
+			stream.writeByte(FILTER_AND);
+			writeFilter(stream, ((Filter.And)filter).First);
+			writeFilter(stream, ((Filter.And)filter).Second);
+		} else if (filter instanceof Filter.Or) {
+			stream.writeByte(FILTER_OR);
+			writeFilter(stream, ((Filter.Or)filter).First);
+			writeFilter(stream, ((Filter.Or)filter).Second);
+		} else if (filter instanceof Filter.ByAuthor) {
+			final Author author = ((Filter.ByAuthor)filter).Author;
+			stream.writeByte(FILTER_AUTHOR);
+			writeString(stream, author.DisplayName);
+			writeString(stream, author.SortKey);
+		} else if (filter instanceof Filter.ByTag) {
+			stream.writeByte(FILTER_TAG);
+			writeTag(stream, ((Filter.ByTag)filter).Tag);
+		} else if (filter instanceof Filter.ByLabel) {
+			stream.writeByte(FILTER_LABEL);
+			writeString(stream, ((Filter.ByLabel)filter).Label);
+		} else if (filter instanceof Filter.BySeries) {
+			stream.writeByte(FILTER_SERIES);
+			writeString(stream, ((Filter.BySeries)filter).Series.getTitle());
+		} else if (filter instanceof Filter.ByPattern) {
+			stream.writeByte(FILTER_PATTERN);
+			writeString(stream, ((Filter.ByPattern)filter).Pattern);
+		} else if (filter instanceof Filter.ByTitlePrefix) {
+			stream.writeByte(FILTER_TITLE_PREFIX);
+			writeString(stream, ((Filter.ByTitlePrefix)filter).Prefix);
+		} else if (filter instanceof Filter.HasBookmark) {
+			stream.writeByte(FILTER_HAS_BOOKMARK);
+		} else if (filter instanceof Filter.HasPhysicalFile) {
+			stream.writeByte(FILTER_HAS_PHYSICAL_FILE);
+		} else {
+			throw new RuntimeException("Unsupported filter type: " + filter.getClass());
+		}
+	}
+
+	private static Filter readFilter(DataInputStream stream) throws IOException {
+		final int type = stream.readUnsignedByte();
+		switch (type) {
+			case FILTER_EMPTY:
+				return new Filter.Empty();
+			case FILTER_NOT:
+				return new Filter.Not(readFilter(stream));
+			case FILTER_AND:
+			{
+				final Filter first = readFilter(stream);
+				return new Filter.And(first, readFilter(stream));
+			}
+			case FILTER_OR:
+			{
+				final Filter first = readFilter(stream);
+				return new Filter.Or(first, readFilter(stream));
+			}
+			case FILTER_AUTHOR:
+			{
+				final String name = readString(stream);
+				return new Filter.ByAuthor(new Author(name, readString(stream)));
+			}
+			case FILTER_TAG:
+				return new Filter.ByTag(readTag(stream));
+			case FILTER_LABEL:
+				return new Filter.ByLabel(readString(stream));
+			case FILTER_SERIES:
+				return new Filter.BySeries(new Series(readString(stream)));
+			case FILTER_PATTERN:
+				return new Filter.ByPattern(readString(stream));
+			case FILTER_TITLE_PREFIX:
+				return new Filter.ByTitlePrefix(readString(stream));
+			case FILTER_HAS_BOOKMARK:
+				return new Filter.HasBookmark();
+			case FILTER_HAS_PHYSICAL_FILE:
+				return new Filter.HasPhysicalFile();
+			default:
+				throw new IOException("Unsupported filter type: " + type);
+		}
+	}
+
+	// tag is written as a path from the root
+	private static void writeTag(DataOutputStream stream, Tag tag) throws IOException {
+		final LinkedList<String> names = new LinkedList<String>();
+		for (Tag t = tag; t != null; t = t.Parent) {
+			names.addFirst(t.Name);
+		}
+		stream.writeInt(names.size());
+		for (String name : names) {
+			writeString(stream, name);
+		}
+	}
+
+	private static Tag readTag(DataInputStream stream) throws IOException {
+		final String[] names = new String[stream.readInt()];
+		for (int i = 0; i < names.length; ++i) {
+			names[i] = readString(stream);
+		}
+		return Tag.getTag(names);
+	}
+
+	private static void writeDate(DataOutputStream stream, Date date) throws IOException {
+		stream.writeBoolean(date != null);
+		if (date != null) {
+			stream.writeLong(date.getTime());
+		}
+	}
+
+	private static Date readDate(DataInputStream stream) throws IOException {
+		return stream.readBoolean() ? new Date(stream.readLong()) : null;
+	}
+
+	// unlike writeUTF(), there is no 64K limit on string length
+	private static void writeString(DataOutputStream stream, String str) throws IOException {
+		if (str == null) {
+			stream.writeInt(-1);
+			return;
+		}
+		final byte[] data = str.getBytes(UTF8);
+		stream.writeInt(data.length);
+		stream.write(data);
+	}
+
+	private static String readString(DataInputStream stream) throws IOException {
+		final int length = stream.readInt();
+		if (length == -1) {
+			return null;
+		}
+		final byte[] data = new byte[length];
+		stream.readFully(data);
+		return new String(data, UTF8);
+	}
+}
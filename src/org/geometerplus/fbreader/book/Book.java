@@ -154,6 +154,14 @@ public class Book extends TitledEntity<Book> {
 		}
 	}
 
+	// a detached copy; changing it does not affect this book
+	public Book copy() {
+		final Book copy = new Book(myId, File, getTitle(), myEncoding, myLanguage);
+		copy.updateFrom(this);
+		copy.myIsSaved = myIsSaved;
+		return copy;
+	}
+
 	public void reloadInfoFromFile() {
 		try {
 			readMetainfo(getPlugin());
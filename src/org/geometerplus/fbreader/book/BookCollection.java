@@ -21,6 +21,7 @@ package org.geometerplus.fbreader.book;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.geometerplus.zlibrary.core.filesystem.*;
 import org.geometerplus.zlibrary.core.image.ZLImage;
@@ -46,6 +47,7 @@ public class BookCollection extends AbstractBookCollection {
 	private final List<String> myFilesToRescan =
 		Collections.synchronizedList(new LinkedList<String>());
 	private final DuplicateResolver myDuplicateResolver = new DuplicateResolver();
+	private final BookIndex myIndex = new BookIndex();
 
 	private volatile Status myStatus = Status.NotStarted;
 
@@ -75,6 +77,20 @@ public class BookCollection extends AbstractBookCollection {
 	}
 
 	private Book getBookByFile(ZLFile bookFile, final FormatPlugin plugin) {
+		final BookRequest request = requestBook(bookFile, plugin);
+		if (request == null) {
+			return null;
+		}
+		final Book book = request.call();
+		if (book != null && request.Save) {
+			saveBook(book);
+		}
+		return book;
+	}
+
+	// the database part of getBookByFile(); reading of metainfo is postponed
+	// to BookRequest.call(), that does not touch the database and the collection
+	private BookRequest requestBook(ZLFile bookFile, final FormatPlugin plugin) {
 		if (plugin == null || !isFormatActive(plugin)) {
 			return null;
 		}
@@ -87,14 +103,14 @@ public class BookCollection extends AbstractBookCollection {
 
 		Book book = myBooksByFile.get(bookFile);
 		if (book != null) {
-			return book;
+			return new BookRequest(bookFile, plugin, book, false, false);
 		}
 
 		final ZLFile otherFile = myDuplicateResolver.findDuplicate(bookFile);
 		if (otherFile != null) {
 			book = myBooksByFile.get(otherFile);
 			if (book != null) {
-				return book;
+				return new BookRequest(bookFile, plugin, book, false, false);
 			}
 		}
 
@@ -111,23 +127,48 @@ public class BookCollection extends AbstractBookCollection {
 		}
 
 		if (book != null && fileInfos.check(physicalFile, physicalFile != bookFile)) {
-			saveBook(book);
-			return book;
+			return new BookRequest(bookFile, plugin, book, false, true);
 		}
 		fileInfos.save();
 
-		try {
-			if (book == null) {
-				book = new Book(bookFile, plugin);
-			} else {
-				book.readMetainfo(plugin);
-			}
-		} catch (BookReadingException e) {
-			return null;
+		return new BookRequest(bookFile, plugin, book, true, true);
+	}
+
+	private static final class BookRequest implements Callable<Book> {
+		final ZLFile File;
+		final FormatPlugin Plugin;
+		final boolean ReadMetainfo;
+		final boolean Save;
+
+		private final Book myBook;
+
+		BookRequest(ZLFile file, FormatPlugin plugin, Book book, boolean readMetainfo, boolean save) {
+			File = file;
+			Plugin = plugin;
+			ReadMetainfo = readMetainfo;
+			Save = save;
+			myBook = book;
 		}
 
-		saveBook(book);
-		return book;
+		// returns null if metainfo cannot be read
+		public Book call() {
+			if (!ReadMetainfo) {
+				return myBook;
+			}
+			try {
+				if (myBook == null) {
+					return new Book(File, Plugin);
+				}
+				if (Plugin != null) {
+					myBook.readMetainfo(Plugin);
+				} else {
+					myBook.readMetainfo();
+				}
+				return myBook;
+			} catch (BookReadingException e) {
+				return null;
+			}
+		}
 	}
 
 	public Book getBookById(long id) {
@@ -211,17 +252,20 @@ public class BookCollection extends AbstractBookCollection {
 				final Book original = duplicate != null ? myBooksByFile.get(duplicate) : null;
 				if (original != null) {
 					if (new BookMergeHelper(this).merge(original, book)) {
+						myIndex.update(original);
 						fireBookEvent(BookEvent.Updated, original);
 					}
 				} else {
 					myBooksByFile.put(book.File, book);
 					myDuplicateResolver.addFile(book.File);
 					myBooksById.put(book.getId(), book);
+					myIndex.add(book);
 					fireBookEvent(BookEvent.Added, book);
 				}
 				return true;
 			} else if (force) {
 				existing.updateFrom(book);
+				myIndex.update(existing);
 				if (existing.save(myDatabase, false)) {
 					fireBookEvent(BookEvent.Updated, existing);
 					return true;
@@ -240,6 +284,7 @@ public class BookCollection extends AbstractBookCollection {
 			myBooksByFile.remove(book.File);
 			myDuplicateResolver.removeFile(book.File);
 			myBooksById.remove(book.getId());
+			myIndex.remove(book);
 
 			if (deleteFromDisk) {
 				book.File.getPhysicalFile().delete();
@@ -277,10 +322,13 @@ public class BookCollection extends AbstractBookCollection {
 			return Collections.emptyList();
 		}
 
-		final List<Book> allBooks;
-		synchronized (myBooksByFile) {
-			//allBooks = new ArrayList<Book>(new LinkedHashSet<Book>(myBooksByFile.values()));
-			allBooks = new ArrayList<Book>(myBooksByFile.values());
+		// null means the filter cannot be resolved by the indexes
+		List<Book> allBooks = myIndex.candidates(query.Filter);
+		if (allBooks == null) {
+			synchronized (myBooksByFile) {
+				//allBooks = new ArrayList<Book>(new LinkedHashSet<Book>(myBooksByFile.values()));
+				allBooks = new ArrayList<Book>(myBooksByFile.values());
+			}
 		}
 		final int start = query.Page * query.Limit;
 		if (start >= allBooks.size()) {
@@ -307,9 +355,11 @@ public class BookCollection extends AbstractBookCollection {
 	}
 
 	public boolean hasBooks(Filter filter) {
-		final List<Book> allBooks;
-		synchronized (myBooksByFile) {
-			allBooks = new ArrayList<Book>(myBooksByFile.values());
+		List<Book> allBooks = myIndex.candidates(filter);
+		if (allBooks == null) {
+			synchronized (myBooksByFile) {
+				allBooks = new ArrayList<Book>(myBooksByFile.values());
+			}
 		}
 		for (Book b : allBooks) {
 			if (filter.matches(b)) {
@@ -348,37 +398,11 @@ public class BookCollection extends AbstractBookCollection {
 	}
 
 	public List<Author> authors() {
-		final Set<Author> authors = new TreeSet<Author>();
-		synchronized (myBooksByFile) {
-			for (Book book : myBooksByFile.values()) {
-				final List<Author> bookAuthors = book.authors();
-				if (bookAuthors.isEmpty()) {
-					authors.add(Author.NULL);
-				} else {
-					authors.addAll(bookAuthors);
-				}
-			}
-		}
-		return new ArrayList<Author>(authors);
+		return myIndex.authors();
 	}
 
 	public List<Tag> tags() {
-		final Set<Tag> tags = new HashSet<Tag>();
-		synchronized (myBooksByFile) {
-			for (Book book : myBooksByFile.values()) {
-				final List<Tag> bookTags = book.tags();
-				if (bookTags.isEmpty()) {
-					tags.add(Tag.NULL);
-				} else {
-					for (Tag t : bookTags) {
-						for (; t != null; t = t.Parent) {
-							tags.add(t);
-						}
-					}
-				}
-			}
-		}
-		return new ArrayList<Tag>(tags);
+		return myIndex.tags();
 	}
 
 	public List<String> labels() {
@@ -386,40 +410,15 @@ public class BookCollection extends AbstractBookCollection {
 	}
 
 	public boolean hasSeries() {
-		synchronized (myBooksByFile) {
-			for (Book book : myBooksByFile.values()) {
-				if (book.getSeriesInfo() != null) {
-					return true;
-				}
-			}
-		}
-		return false;
+		return myIndex.hasSeries();
 	}
 
 	public List<String> series() {
-		final Set<String> series = new TreeSet<String>();
-		synchronized (myBooksByFile) {
-			for (Book book : myBooksByFile.values()) {
-				final SeriesInfo info = book.getSeriesInfo();
-				if (info != null) {
-					series.add(info.Series.getTitle());
-				}
-			}
-		}
-		return new ArrayList<String>(series);
+		return myIndex.series();
 	}
 
 	public List<String> firstTitleLetters() {
-		synchronized (myBooksByFile) {
-			final TreeSet<String> letters = new TreeSet<String>();
-			for (Book book : myBooksByFile.values()) {
-				final String l = book.firstTitleLetter();
-				if (l != null) {
-					letters.add(l);
-				}
-			}
-			return new ArrayList<String>(letters);
-		}
+		return myIndex.firstTitleLetters();
 	}
 
 	public Book getRecentBook(int index) {
@@ -452,7 +451,8 @@ public class BookCollection extends AbstractBookCollection {
 			public void run() {
 				try {
 					build();
-					setStatus(Status.Succeeded);
+					// an interrupted build stops without saving its partial results
+					setStatus(isInterrupted() ? Status.Failed : Status.Succeeded);
 				} catch (Throwable t) {
 					setStatus(Status.Failed);
 					t.printStackTrace();
@@ -513,6 +513,7 @@ public class BookCollection extends AbstractBookCollection {
 					myDuplicateResolver.removeFile(f);
 					if (book != null) {
 						myBooksById.remove(book.getId());
+						myIndex.remove(book);
 						fireBookEvent(BookEvent.Removed, book);
 					}
 				}
@@ -579,18 +580,37 @@ public class BookCollection extends AbstractBookCollection {
 		final Map<Long,Book> orphanedBooksByFileId = myDatabase.loadBooks(fileInfos, false);
 		final Set<Book> newBooks = new HashSet<Book>();
 
-		final List<ZLPhysicalFile> physicalFilesList = collectPhysicalFiles(BookDirectories);
-		for (ZLPhysicalFile file : physicalFilesList) {
-			if (physicalFiles.contains(file)) {
-				continue;
+		// files of directories that were not changed since the last build
+		// are not collected; their books (if any) are already processed in Step 1
+		final Map<ZLPhysicalFile,Long> fingerprints = new HashMap<ZLPhysicalFile,Long>();
+		final List<ZLPhysicalFile> physicalFilesList =
+			collectPhysicalFiles(BookDirectories, fileInfos, fingerprints);
+		final BuildPipeline pipeline = new BuildPipeline(
+			fileInfos, savedBooksByFileId, orphanedBooksByFileId, newBooks,
+			physicalFilesList.size()
+		);
+		try {
+			for (ZLPhysicalFile file : physicalFilesList) {
+				if (Thread.currentThread().isInterrupted()) {
+					break;
+				}
+				if (physicalFiles.contains(file)) {
+					pipeline.skip(file);
+					continue;
+				}
+				pipeline.collect(file, !fileInfos.check(file, true));
 			}
-			collectBooks(
-				file, fileInfos,
-				savedBooksByFileId, orphanedBooksByFileId,
-				newBooks,
-				!fileInfos.check(file, true)
-			);
-			file.setCached(false);
+			pipeline.finish();
+		} finally {
+			pipeline.shutdown();
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			return;
+		}
+		// fingerprints are stored only after all the files are processed,
+		// so an interrupted build does not hide unprocessed directories
+		for (Map.Entry<ZLPhysicalFile,Long> entry : fingerprints.entrySet()) {
+			fileInfos.setFingerprint(entry.getKey(), entry.getValue());
 		}
 
 		// Step 3: add help file
@@ -615,6 +635,13 @@ public class BookCollection extends AbstractBookCollection {
 	}
 
 	private List<ZLPhysicalFile> collectPhysicalFiles(List<String> paths) {
+		return collectPhysicalFiles(paths, null, null);
+	}
+
+	// if fileInfos is not null, files of directories with unchanged fingerprints
+	// are skipped (subdirectories are still walked); new fingerprints of other
+	// directories are put into the fingerprints map
+	private List<ZLPhysicalFile> collectPhysicalFiles(List<String> paths, FileInfoSet fileInfos, Map<ZLPhysicalFile,Long> fingerprints) {
 		final Queue<ZLPhysicalFile> fileQueue = new LinkedList<ZLPhysicalFile>();
 		final HashSet<ZLPhysicalFile> dirSet = new HashSet<ZLPhysicalFile>();
 		final LinkedList<ZLPhysicalFile> fileList = new LinkedList<ZLPhysicalFile>();
@@ -623,6 +650,7 @@ public class BookCollection extends AbstractBookCollection {
 			fileQueue.offer(new ZLPhysicalFile(new File(p)));
 		}
 
+		final int salt = fileInfos != null ? fingerprintSalt() : 0;
 		while (!fileQueue.isEmpty()) {
 			final ZLPhysicalFile entry = fileQueue.poll();
 			if (!entry.exists()) {
@@ -633,8 +661,19 @@ public class BookCollection extends AbstractBookCollection {
 					continue;
 				}
 				dirSet.add(entry);
-				for (ZLFile file : entry.children()) {
-					fileQueue.add((ZLPhysicalFile)file);
+				final List<ZLFile> children = entry.children();
+				boolean unchanged = false;
+				if (fileInfos != null) {
+					final long fingerprint = directoryFingerprint(entry, children, salt);
+					unchanged = fileInfos.checkDirectory(entry, fingerprint);
+					if (!unchanged) {
+						fingerprints.put(entry, fingerprint);
+					}
+				}
+				for (ZLFile file : children) {
+					if (!unchanged || file.isDirectory()) {
+						fileQueue.add((ZLPhysicalFile)file);
+					}
 				}
 			} else {
 				entry.setCached(true);
@@ -645,6 +684,41 @@ public class BookCollection extends AbstractBookCollection {
 		return fileList;
 	}
 
+	// the fingerprint depends on the set of active formats and plugins,
+	// so that changing them forces a full rescan
+	private int fingerprintSalt() {
+		final Set<String> formats = myActiveFormats;
+		return 31 * PluginCollection.Instance().plugins().size() +
+			(formats != null ? formats.hashCode() : 0);
+	}
+
+	// children order is not specified, so their hashes are combined by sum;
+	// size and modification time of every child are included, so a book
+	// rewritten in place changes the fingerprint of its directory
+	private static long directoryFingerprint(ZLPhysicalFile directory, List<ZLFile> children, int salt) {
+		long childrenHash = 0;
+		for (ZLFile file : children) {
+			long hash = file.getShortName().hashCode();
+			if (!file.isDirectory()) {
+				hash = 31 * hash + file.size();
+			}
+			hash = 31 * hash + file.lastModified();
+			childrenHash += mix(hash);
+		}
+		long fingerprint = directory.lastModified();
+		fingerprint = 31 * fingerprint + children.size();
+		fingerprint = 31 * fingerprint + childrenHash;
+		fingerprint = 31 * fingerprint + salt;
+		// -1 means "no fingerprint" in FileInfo
+		return fingerprint != -1 ? fingerprint : 0;
+	}
+
+	private static long mix(long hash) {
+		hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+		hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return hash ^ (hash >>> 33);
+	}
+
 	private void collectBooks(
 		ZLFile file, FileInfoSet fileInfos,
 		Map<Long,Book> savedBooksByFileId, Map<Long,Book> orphanedBooksByFileId,
@@ -689,6 +763,221 @@ public class BookCollection extends AbstractBookCollection {
 		}
 	}
 
+	// Step 2 of build(): metainfo is read by a pool of workers, but found books
+	// are saved and added in the order of files, so that DuplicateResolver
+	// chooses the same originals as in a sequential scan
+	private final class BuildPipeline {
+		private static final int BATCH_SIZE = 32;
+
+		private final FileInfoSet myFileInfos;
+		private final Map<Long,Book> mySavedBooksByFileId;
+		private final Map<Long,Book> myOrphanedBooksByFileId;
+		private final Set<Book> myNewBooks;
+
+		private final ExecutorService myReaders;
+		private final LinkedList<PendingBook> myQueue = new LinkedList<PendingBook>();
+		private final int myTotal;
+		private int myProcessed;
+
+		BuildPipeline(
+			FileInfoSet fileInfos,
+			Map<Long,Book> savedBooksByFileId, Map<Long,Book> orphanedBooksByFileId,
+			Set<Book> newBooks,
+			int total
+		) {
+			myFileInfos = fileInfos;
+			mySavedBooksByFileId = savedBooksByFileId;
+			myOrphanedBooksByFileId = orphanedBooksByFileId;
+			myNewBooks = newBooks;
+			myTotal = total;
+			myReaders = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())),
+				new BuildThreadFactory()
+			);
+		}
+
+		void skip(ZLPhysicalFile file) {
+			enqueue(new PendingBook(file));
+		}
+
+		void collect(ZLPhysicalFile file, boolean doReadMetaInfo) {
+			collect((ZLFile)file, doReadMetaInfo);
+			enqueue(new PendingBook(file));
+		}
+
+		// mirrors collectBooks(), but postpones metainfo reading and saving
+		private void collect(ZLFile file, boolean doReadMetaInfo) {
+			final long fileId = myFileInfos.getId(file);
+			if (mySavedBooksByFileId.get(fileId) != null) {
+				return;
+			}
+
+			final FormatPlugin plugin = PluginCollection.Instance().getPlugin(file);
+			if (plugin != null && !isFormatActive(plugin)) {
+				return;
+			}
+
+			final Book orphaned = myOrphanedBooksByFileId.get(fileId);
+			if (orphaned != null) {
+				enqueue(new PendingBook(
+					file, plugin, true, doReadMetaInfo,
+					new BookRequest(file, null, orphaned, doReadMetaInfo, false)
+				));
+				return;
+			}
+
+			final BookRequest request = requestBook(file, plugin);
+			if (request != null) {
+				enqueue(new PendingBook(file, plugin, false, doReadMetaInfo, request));
+			} else if (file.isArchive()) {
+				for (ZLFile entry : myFileInfos.archiveEntries(file)) {
+					collect(entry, doReadMetaInfo);
+				}
+			}
+		}
+
+		private void enqueue(PendingBook pending) {
+			myQueue.add(pending);
+			if (myQueue.size() >= 2 * BATCH_SIZE) {
+				flush();
+			}
+		}
+
+		void finish() {
+			while (!myQueue.isEmpty()) {
+				flush();
+			}
+		}
+
+		void shutdown() {
+			myReaders.shutdownNow();
+		}
+
+		private void flush() {
+			if (Thread.currentThread().isInterrupted()) {
+				// the build is interrupted; pending books are dropped
+				myQueue.clear();
+				return;
+			}
+			final List<PendingBook> batch = new ArrayList<PendingBook>(BATCH_SIZE);
+			for (int i = 0; i < BATCH_SIZE && !myQueue.isEmpty(); ++i) {
+				batch.add(myQueue.removeFirst());
+			}
+			// wait for the readers outside of the transaction
+			for (PendingBook pending : batch) {
+				if (!pending.waitForResult()) {
+					// the build is interrupted; pending books are dropped
+					myQueue.clear();
+					return;
+				}
+			}
+			myDatabase.executeAsTransaction(new Runnable() {
+				public void run() {
+					for (PendingBook pending : batch) {
+						apply(pending);
+					}
+				}
+			});
+			fireBuildProgress(myProcessed, myTotal);
+		}
+
+		private void apply(PendingBook pending) {
+			if (pending.Request == null) {
+				((ZLPhysicalFile)pending.File).setCached(false);
+				++myProcessed;
+				return;
+			}
+
+			Book book = pending.Result;
+			if (book != null && pending.Request.Save) {
+				// an earlier file of this batch could be the same book
+				final Book existing = myBooksByFile.get(book.File);
+				if (existing != null) {
+					book = existing;
+				} else {
+					final ZLFile duplicate = myDuplicateResolver.findDuplicate(book.File);
+					final Book original = duplicate != null ? myBooksByFile.get(duplicate) : null;
+					if (original != null) {
+						book = original;
+					} else {
+						saveBook(book);
+					}
+				}
+			} else if (book == null && pending.IsOrphaned) {
+				book = getBookByFile(pending.File, pending.Plugin);
+			}
+
+			if (book != null) {
+				myNewBooks.add(book);
+			} else if (pending.File.isArchive()) {
+				// rare case: the plugin failed to read an archive;
+				// its entries are scanned sequentially to keep the order
+				for (ZLFile entry : myFileInfos.archiveEntries(pending.File)) {
+					collectBooks(
+						entry, myFileInfos,
+						mySavedBooksByFileId, myOrphanedBooksByFileId,
+						myNewBooks,
+						pending.DoReadMetaInfo
+					);
+				}
+			}
+		}
+
+		private final class PendingBook {
+			final ZLFile File;
+			final FormatPlugin Plugin;
+			final boolean IsOrphaned;
+			final boolean DoReadMetaInfo;
+			final BookRequest Request;
+
+			private final Future<Book> myFuture;
+			Book Result;
+
+			// marks the end of a physical file
+			PendingBook(ZLPhysicalFile file) {
+				this(file, null, false, false, null);
+			}
+
+			PendingBook(ZLFile file, FormatPlugin plugin, boolean isOrphaned, boolean doReadMetaInfo, BookRequest request) {
+				File = file;
+				Plugin = plugin;
+				IsOrphaned = isOrphaned;
+				DoReadMetaInfo = doReadMetaInfo;
+				Request = request;
+				myFuture = request != null && request.ReadMetainfo ? myReaders.submit(request) : null;
+			}
+
+			// returns false if the waiting thread is interrupted
+			boolean waitForResult() {
+				if (myFuture == null) {
+					Result = Request != null ? Request.call() : null;
+					return true;
+				}
+				try {
+					Result = myFuture.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				} catch (ExecutionException e) {
+					Result = null;
+				}
+				return true;
+			}
+		}
+	}
+
+	private static class BuildThreadFactory implements ThreadFactory {
+		private final ThreadFactory myDefaultThreadFactory = Executors.defaultThreadFactory();
+
+		public Thread newThread(Runnable r) {
+			final Thread th = myDefaultThreadFactory.newThread(r);
+			th.setName("Library.build.reader");
+			th.setPriority(Thread.MIN_PRIORITY);
+			th.setDaemon(true);
+			return th;
+		}
+	}
+
 	@Override
 	public ZLImage getCover(Book book, int maxWidth, int maxHeight) {
 		return BookUtil.getCover(book);
@@ -717,6 +1006,7 @@ public class BookCollection extends AbstractBookCollection {
 				final Book book = getBookById(bookmark.BookId);
 				if (book != null) {
 					book.HasBookmark = true;
+					myIndex.update(book);
 					fireBookEvent(BookEvent.BookmarksUpdated, book);
 				}
 			}
@@ -730,6 +1020,7 @@ public class BookCollection extends AbstractBookCollection {
 				final Book book = getBookById(bookmark.BookId);
 				if (book != null) {
 					book.HasBookmark = myDatabase.hasVisibleBookmark(bookmark.BookId);
+					myIndex.update(book);
 					fireBookEvent(BookEvent.BookmarksUpdated, book);
 				}
 			}
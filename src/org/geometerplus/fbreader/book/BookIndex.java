@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.book;
+
+import java.util.*;
+
+/**
+ * Secondary indexes over books of a BookCollection. Books are ordered by
+ * the moment of addition, i.e. in the same order as in the collection itself.
+ */
+final class BookIndex {
+	// keys a book was indexed with; they are needed for removal
+	// because the book object can be changed after indexing
+	private static final class Entry {
+		final int Serial;
+		final List<Author> Authors;
+		final List<Tag> Tags;
+		final List<String> Labels;
+		final Series Series;
+		final String TitleLetter;
+		final boolean HasBookmark;
+
+		Entry(int serial, Book book) {
+			Serial = serial;
+			final List<Author> authors = book.authors();
+			Authors = authors.isEmpty()
+				? Collections.singletonList(Author.NULL) : new ArrayList<Author>(authors);
+			final List<Tag> tags = book.tags();
+			Tags = tags.isEmpty()
+				? Collections.singletonList(Tag.NULL) : new ArrayList<Tag>(tags);
+			Labels = new ArrayList<String>(book.labels());
+			final SeriesInfo info = book.getSeriesInfo();
+			Series = info != null ? info.Series : null;
+			TitleLetter = book.firstTitleLetter();
+			HasBookmark = book.HasBookmark;
+		}
+	}
+
+	private final Map<Book,Entry> myEntries = new IdentityHashMap<Book,Entry>();
+	private int myNextSerial;
+
+	private final Map<Author,TreeMap<Integer,Book>> myByAuthor =
+		new HashMap<Author,TreeMap<Integer,Book>>();
+	private final Map<Tag,TreeMap<Integer,Book>> myByTag =
+		new HashMap<Tag,TreeMap<Integer,Book>>();
+	private final Map<String,TreeMap<Integer,Book>> myByLabel =
+		new HashMap<String,TreeMap<Integer,Book>>();
+	private final Map<Series,TreeMap<Integer,Book>> myBySeries =
+		new HashMap<Series,TreeMap<Integer,Book>>();
+	private final Map<String,TreeMap<Integer,Book>> myByTitleLetter =
+		new HashMap<String,TreeMap<Integer,Book>>();
+	private final TreeMap<Integer,Book> myWithBookmark = new TreeMap<Integer,Book>();
+
+	// adds the book or updates its keys if the book is already indexed
+	synchronized void add(Book book) {
+		final Entry old = myEntries.remove(book);
+		final int serial;
+		if (old != null) {
+			unindex(old);
+			serial = old.Serial;
+		} else {
+			serial = myNextSerial++;
+		}
+		final Entry entry = new Entry(serial, book);
+		myEntries.put(book, entry);
+
+		for (Author a : entry.Authors) {
+			put(myByAuthor, a, serial, book);
+		}
+		for (Tag t : entry.Tags) {
+			put(myByTag, t, serial, book);
+		}
+		for (String l : entry.Labels) {
+			put(myByLabel, l, serial, book);
+		}
+		if (entry.Series != null) {
+			put(myBySeries, entry.Series, serial, book);
+		}
+		if (entry.TitleLetter != null) {
+			put(myByTitleLetter, entry.TitleLetter, serial, book);
+		}
+		if (entry.HasBookmark) {
+			myWithBookmark.put(serial, book);
+		}
+	}
+
+	// updates keys of the book; does nothing if the book is not indexed
+	synchronized void update(Book book) {
+		if (myEntries.containsKey(book)) {
+			add(book);
+		}
+	}
+
+	synchronized void remove(Book book) {
+		final Entry entry = myEntries.remove(book);
+		if (entry != null) {
+			unindex(entry);
+		}
+	}
+
+	private void unindex(Entry entry) {
+		final int serial = entry.Serial;
+		for (Author a : entry.Authors) {
+			remove(myByAuthor, a, serial);
+		}
+		for (Tag t : entry.Tags) {
+			remove(myByTag, t, serial);
+		}
+		for (String l : entry.Labels) {
+			remove(myByLabel, l, serial);
+		}
+		if (entry.Series != null) {
+			remove(myBySeries, entry.Series, serial);
+		}
+		if (entry.TitleLetter != null) {
+			remove(myByTitleLetter, entry.TitleLetter, serial);
+		}
+		myWithBookmark.remove(serial);
+	}
+
+	private static <K> void put(Map<K,TreeMap<Integer,Book>> index, K key, int serial, Book book) {
+		TreeMap<Integer,Book> books = index.get(key);
+		if (books == null) {
+			books = new TreeMap<Integer,Book>();
+			index.put(key, books);
+		}
+		books.put(serial, book);
+	}
+
+	private static <K> void remove(Map<K,TreeMap<Integer,Book>> index, K key, int serial) {
+		final TreeMap<Integer,Book> books = index.get(key);
+		if (books != null) {
+			books.remove(serial);
+			if (books.isEmpty()) {
+				index.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Returns books that can match the filter, in collection order; the caller
+	 * still has to check each of them with Filter.matches(). Returns null
+	 * if the filter cannot be resolved by the indexes.
+	 */
+	synchronized List<Book> candidates(Filter filter) {
+		final SortedMap<Integer,Book> books = plan(filter);
+		return books != null ? new ArrayList<Book>(books.values()) : null;
+	}
+
+	private SortedMap<Integer,Book> plan(Filter filter) {
+		if (filter instanceof Filter.ByAuthor) {
+			return nonNull(myByAuthor.get(((Filter.ByAuthor)filter).Author));
+		} else if (filter instanceof Filter.ByTag) {
+			return nonNull(myByTag.get(((Filter.ByTag)filter).Tag));
+		} else if (filter instanceof Filter.ByLabel) {
+			return nonNull(myByLabel.get(((Filter.ByLabel)filter).Label));
+		} else if (filter instanceof Filter.BySeries) {
+			return nonNull(myBySeries.get(((Filter.BySeries)filter).Series));
+		} else if (filter instanceof Filter.ByTitlePrefix) {
+			return nonNull(myByTitleLetter.get(((Filter.ByTitlePrefix)filter).Prefix));
+		} else if (filter instanceof Filter.HasBookmark) {
+			return myWithBookmark;
+		} else if (filter instanceof Filter.And) {
+			final Filter.And and = (Filter.And)filter;
+			final SortedMap<Integer,Book> first = plan(and.First);
+			final SortedMap<Integer,Book> second = plan(and.Second);
+			if (first == null) {
+				return second;
+			} else if (second == null) {
+				return first;
+			}
+			return intersection(first, second);
+		} else if (filter instanceof Filter.Or) {
+			final Filter.Or or = (Filter.Or)filter;
+			final SortedMap<Integer,Book> first = plan(or.First);
+			if (first == null) {
+				return null;
+			}
+			final SortedMap<Integer,Book> second = plan(or.Second);
+			if (second == null) {
+				return null;
+			}
+			final TreeMap<Integer,Book> union = new TreeMap<Integer,Book>(first);
+			union.putAll(second);
+			return union;
+		} else {
+			// Empty, Not, ByPattern, HasPhysicalFile: full scan is needed
+			return null;
+		}
+	}
+
+	private static SortedMap<Integer,Book> nonNull(SortedMap<Integer,Book> books) {
+		return books != null ? books : new TreeMap<Integer,Book>();
+	}
+
+	private static SortedMap<Integer,Book> intersection(SortedMap<Integer,Book> first, SortedMap<Integer,Book> second) {
+		if (first.size() > second.size()) {
+			final SortedMap<Integer,Book> swap = first;
+			first = second;
+			second = swap;
+		}
+		final TreeMap<Integer,Book> result = new TreeMap<Integer,Book>();
+		for (Map.Entry<Integer,Book> entry : first.entrySet()) {
+			if (second.containsKey(entry.getKey())) {
+				result.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	synchronized List<Author> authors() {
+		return new ArrayList<Author>(new TreeSet<Author>(myByAuthor.keySet()));
+	}
+
+	synchronized List<Tag> tags() {
+		final Set<Tag> tags = new HashSet<Tag>();
+		for (Tag t : myByTag.keySet()) {
+			for (; t != null; t = t.Parent) {
+				tags.add(t);
+			}
+		}
+		return new ArrayList<Tag>(tags);
+	}
+
+	synchronized boolean hasSeries() {
+		return !myBySeries.isEmpty();
+	}
+
+	synchronized List<String> series() {
+		final Set<String> series = new TreeSet<String>();
+		for (Series s : myBySeries.keySet()) {
+			series.add(s.getTitle());
+		}
+		return new ArrayList<String>(series);
+	}
+
+	synchronized List<String> firstTitleLetters() {
+		return new ArrayList<String>(new TreeSet<String>(myByTitleLetter.keySet()));
+	}
+}
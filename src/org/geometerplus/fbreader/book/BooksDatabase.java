@@ -95,6 +95,9 @@ public abstract class BooksDatabase {
 	protected abstract Collection<FileInfo> loadFileInfos(long fileId);
 	protected abstract void removeFileInfo(long fileId);
 	protected abstract void saveFileInfo(FileInfo fileInfo);
+	// returns map fileId -> fingerprint
+	protected abstract Map<Long,Long> loadDirectoryFingerprints();
+	protected abstract void saveDirectoryFingerprint(long fileId, long fingerprint);
 
 	protected abstract void addBookHistoryEvent(long bookId, int event);
 	protected abstract void removeBookHistoryEvents(long bookId, int event);
@@ -25,6 +25,8 @@ public final class FileInfo extends ZLTree<FileInfo> {
 	public final String Name;
 	public long Id;
 	public long FileSize = -1;
+	// for directories only, see FileInfoSet.checkDirectory()
+	public long Fingerprint = -1;
 
 	FileInfo(String name, FileInfo parent) {
 		this(name, parent, -1);
@@ -59,6 +59,8 @@ public final class FileInfoSet {
 
 	private final LinkedHashSet<FileInfo> myInfosToSave = new LinkedHashSet<FileInfo>();
 	private final LinkedHashSet<FileInfo> myInfosToRemove = new LinkedHashSet<FileInfo>();
+	private final LinkedHashSet<FileInfo> myFingerprintsToSave = new LinkedHashSet<FileInfo>();
+	private boolean myFingerprintsLoaded;
 
 	private final BooksDatabase myDatabase;
 
@@ -96,6 +98,12 @@ public final class FileInfoSet {
 					myDatabase.saveFileInfo(info);
 				}
 				myInfosToSave.clear();
+				for (FileInfo info : myFingerprintsToSave) {
+					if (info.Id != -1) {
+						myDatabase.saveDirectoryFingerprint(info.Id, info.Fingerprint);
+					}
+				}
+				myFingerprintsToSave.clear();
 			}
 		});
 	}
@@ -121,6 +129,36 @@ public final class FileInfoSet {
 		}
 	}
 
+	// returns true if the fingerprint stored by setFingerprint() is equal to given one,
+	// i.e. the directory content was not changed since the last scan
+	public boolean checkDirectory(ZLPhysicalFile directory, long fingerprint) {
+		loadFingerprints();
+		final FileInfo info = get(directory);
+		return info.Fingerprint != -1 && info.Fingerprint == fingerprint;
+	}
+
+	public void setFingerprint(ZLPhysicalFile directory, long fingerprint) {
+		loadFingerprints();
+		final FileInfo info = get(directory);
+		if (info.Fingerprint != fingerprint) {
+			info.Fingerprint = fingerprint;
+			myFingerprintsToSave.add(info);
+		}
+	}
+
+	private void loadFingerprints() {
+		if (myFingerprintsLoaded) {
+			return;
+		}
+		myFingerprintsLoaded = true;
+		for (Map.Entry<Long,Long> entry : myDatabase.loadDirectoryFingerprints().entrySet()) {
+			final FileInfo info = myInfosById.get(entry.getKey());
+			if (info != null) {
+				info.Fingerprint = entry.getValue();
+			}
+		}
+	}
+
 	public List<ZLFile> archiveEntries(ZLFile file) {
 		final FileInfo info = get(file);
 		if (!info.hasChildren()) {
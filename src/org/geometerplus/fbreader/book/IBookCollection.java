@@ -45,6 +45,12 @@ public interface IBookCollection {
 		void onBuildEvent(Status status);
 	}
 
+	public interface BuildProgressListener {
+		// total is the number of physical files in book directories;
+		// it is known only after the directories are walked
+		void onBuildProgress(int processed, int total);
+	}
+
 	public void addListener(Listener listener);
 	public void removeListener(Listener listener);
 
@@ -26,6 +26,10 @@ public abstract class SerializerUtil {
 	}
 
 	private static final AbstractSerializer defaultSerializer = new XMLSerializer();
+	private static final BinarySerializer binarySerializer = new BinarySerializer();
+
+	// version of binary list format; both sides should use the same version
+	public static final int BINARY_VERSION = BinarySerializer.VERSION;
 
 	public static String serialize(BookQuery query) {
 		return query != null ? defaultSerializer.serialize(query) : null;
@@ -70,6 +74,15 @@ public abstract class SerializerUtil {
 		return books;
 	}
 
+	public static byte[] serializeBookListBinary(List<Book> books) {
+		return binarySerializer.serializeBookList(books);
+	}
+
+	// returns null if data are in unsupported format
+	public static List<Book> deserializeBookListBinary(byte[] data) {
+		return data != null ? binarySerializer.deserializeBookList(data) : null;
+	}
+
 	public static String serialize(Bookmark bookmark) {
 		return bookmark != null ? defaultSerializer.serialize(bookmark) : null;
 	}
@@ -97,6 +110,15 @@ public abstract class SerializerUtil {
 		return bookmarks;
 	}
 
+	public static byte[] serializeBookmarkListBinary(List<Bookmark> bookmarks) {
+		return binarySerializer.serializeBookmarkList(bookmarks);
+	}
+
+	// returns null if data are in unsupported format
+	public static List<Bookmark> deserializeBookmarkListBinary(byte[] data) {
+		return data != null ? binarySerializer.deserializeBookmarkList(data) : null;
+	}
+
 	public static String serialize(HighlightingStyle style) {
 		return style != null ? defaultSerializer.serialize(style) : null;
 	}
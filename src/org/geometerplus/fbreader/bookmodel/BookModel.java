@@ -28,12 +28,27 @@ import org.geometerplus.zlibrary.text.model.*;
 import org.geometerplus.fbreader.book.Book;
 import org.geometerplus.fbreader.formats.BuiltinFormatPlugin;
 import org.geometerplus.fbreader.formats.FormatPlugin;
+import org.geometerplus.fbreader.formats.NativeFormatPlugin;
 
 public abstract class BookModel {
 	public static BookModel createModel(Book book) throws BookReadingException {
 		final FormatPlugin plugin = book.getPlugin();
 
-		if (plugin instanceof BuiltinFormatPlugin) {
+		if (plugin instanceof NativeFormatPlugin) {
+			final BookModelCache cache = BookModelCache.Instance();
+			final long start = System.currentTimeMillis();
+			NativeBookModel model = cache.load(book);
+			if (model != null) {
+				((NativeFormatPlugin)plugin).setupModel(model);
+				cache.onWarmOpen(System.currentTimeMillis() - start);
+			} else {
+				model = new NativeBookModel(book);
+				((NativeFormatPlugin)plugin).readModel(model);
+				cache.store(model);
+				cache.onColdOpen(System.currentTimeMillis() - start);
+			}
+			return model;
+		} else if (plugin instanceof BuiltinFormatPlugin) {
 			final BookModel model = new NativeBookModel(book);
 			((BuiltinFormatPlugin)plugin).readModel(model);
 			return model;
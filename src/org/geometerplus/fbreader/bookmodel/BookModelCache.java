@@ -0,0 +1,539 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.bookmodel;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.filesystem.ZLPhysicalFile;
+import org.geometerplus.zlibrary.core.fonts.FileInfo;
+import org.geometerplus.zlibrary.core.fonts.FontEntry;
+import org.geometerplus.zlibrary.core.image.ZLFileImage;
+import org.geometerplus.zlibrary.core.image.ZLImage;
+import org.geometerplus.zlibrary.core.library.ZLibrary;
+import org.geometerplus.zlibrary.text.model.ZLTextModel;
+
+import org.geometerplus.fbreader.Paths;
+import org.geometerplus.fbreader.book.Book;
+
+/**
+ * On-disk cache of models built by native format plugins.
+ *
+ * Native code writes text, footnote and label blocks to files in the
+ * temporary directory, and passes everything else (paragraph arrays, TOC,
+ * images, fonts) to NativeBookModel callbacks. A cache entry is a copy of
+ * those block files plus a record of the callback arguments, kept in a
+ * directory named after the book file path, size, modification time,
+ * encoding and language; a cached model is restored by replaying the
+ * callbacks on a new NativeBookModel, with no native parsing involved.
+ * Models that refer to encrypted resources are not cached. The cache keeps
+ * the recently opened models, at most MAX_BOOKS of them and MAX_SIZE bytes
+ * in total.
+ */
+public final class BookModelCache {
+	private static final int MAGIC = 0x46424d43; // "FBMC"
+	private static final int VERSION = 1;
+	private static final int MAX_BOOKS = 8;
+	private static final long MAX_SIZE = 32 * 1024 * 1024;
+	private static final String INFO_FILE = "model.info";
+
+	private static final BookModelCache ourInstance = new BookModelCache();
+
+	public static BookModelCache Instance() {
+		return ourInstance;
+	}
+
+	private static final class Key {
+		final String Path;
+		final long Size;
+		final long Modified;
+		final String Encoding;
+		final String Language;
+		final String Tag;
+
+		Key(String path, long size, long modified, String encoding, String language, String tag) {
+			Path = path;
+			Size = size;
+			Modified = modified;
+			Encoding = encoding;
+			Language = language;
+			Tag = tag;
+		}
+
+		String directoryName() {
+			long hash = 0xcbf29ce484222325L;
+			final String data = Path + '\000' + Size + '\000' + Modified + '\000' + Encoding + '\000' + Language;
+			for (int i = 0; i < data.length(); ++i) {
+				hash ^= data.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+			return Long.toHexString(hash);
+		}
+
+		void write(DataOutputStream stream) throws IOException {
+			writeString(stream, Path);
+			stream.writeLong(Size);
+			stream.writeLong(Modified);
+			writeString(stream, Encoding);
+			writeString(stream, Language);
+			writeString(stream, Tag);
+		}
+
+		boolean matches(DataInputStream stream) throws IOException {
+			return
+				equals(Path, readString(stream)) &&
+				Size == stream.readLong() &&
+				Modified == stream.readLong() &&
+				equals(Encoding, readString(stream)) &&
+				equals(Language, readString(stream)) &&
+				equals(Tag, readString(stream));
+		}
+
+		private static boolean equals(String s0, String s1) {
+			return s0 == null ? s1 == null : s0.equals(s1);
+		}
+	}
+
+	private int myColdOpensCount;
+	private long myColdOpensTime;
+	private int myWarmOpensCount;
+	private long myWarmOpensTime;
+
+	private BookModelCache() {
+	}
+
+	private static File rootDirectory() {
+		return new File(Paths.tempDirectory(), "models");
+	}
+
+	private static Key key(Book book) {
+		final ZLPhysicalFile physicalFile = book.File.getPhysicalFile();
+		if (physicalFile == null) {
+			return null;
+		}
+		final File file = physicalFile.javaFile();
+		if (!file.isFile()) {
+			return null;
+		}
+		return new Key(
+			book.File.getPath(),
+			file.length(),
+			file.lastModified(),
+			book.getEncodingNoDetection(),
+			book.getLanguage(),
+			ZLibrary.Instance().getVersionName()
+		);
+	}
+
+	/**
+	 * @return restored model, or null if there is no valid cache entry for the book
+	 */
+	NativeBookModel load(Book book) {
+		final Key key = key(book);
+		if (key == null) {
+			return null;
+		}
+		final File directory = new File(rootDirectory(), key.directoryName());
+		final File infoFile = new File(directory, INFO_FILE);
+		if (!infoFile.exists()) {
+			return null;
+		}
+
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(infoFile)));
+			if (stream.readInt() != MAGIC || stream.readInt() != VERSION || !key.matches(stream)) {
+				return null;
+			}
+			final String directoryName = directory.getPath();
+			final NativeBookModel model = new NativeBookModel(book);
+			// search indices are not parts of the cache entry
+			model.setCacheDirectory(Paths.tempDirectory());
+
+			for (int count = stream.readInt(); count > 0; --count) {
+				final String id = stream.readUTF();
+				final ZLFileImage image = ZLFileImage.byUrlPath(stream.readUTF());
+				if (image == null) {
+					return null;
+				}
+				model.addImage(id, image);
+			}
+
+			final String linksExtension = stream.readUTF();
+			final int linksBlocksNumber = stream.readInt();
+			if (!blocksExist(directory, linksExtension, linksBlocksNumber)) {
+				return null;
+			}
+			model.initInternalHyperlinks(directoryName, linksExtension, linksBlocksNumber);
+
+			readTOC(stream, model);
+
+			for (int count = stream.readInt(); count > 0; --count) {
+				final boolean isBookModel = stream.readBoolean();
+				final String id = readString(stream);
+				final String language = readString(stream);
+				final int paragraphsNumber = stream.readInt();
+				final int[] entryIndices = readIntArray(stream);
+				final int[] entryOffsets = readIntArray(stream);
+				final int[] paragraphLengths = readIntArray(stream);
+				final int[] textSizes = readIntArray(stream);
+				final byte[] paragraphKinds = new byte[stream.readInt()];
+				stream.readFully(paragraphKinds);
+				final String extension = stream.readUTF();
+				final int blocksNumber = stream.readInt();
+				if (!blocksExist(directory, extension, blocksNumber)) {
+					return null;
+				}
+				final ZLTextModel textModel = model.createTextModel(
+					id, language, paragraphsNumber,
+					entryIndices, entryOffsets,
+					paragraphLengths, textSizes, paragraphKinds,
+					directoryName, extension, blocksNumber
+				);
+				if (isBookModel) {
+					model.setBookTextModel(textModel);
+				} else {
+					model.setFootnoteModel(textModel);
+				}
+			}
+
+			for (int count = stream.readInt(); count > 0; --count) {
+				final String[] families = new String[stream.readInt()];
+				for (int i = 0; i < families.length; ++i) {
+					families[i] = stream.readUTF();
+				}
+				model.registerFontFamilyList(families);
+			}
+
+			for (int count = stream.readInt(); count > 0; --count) {
+				final String family = stream.readUTF();
+				final FileInfo[] infos = new FileInfo[4];
+				for (int i = 0; i < infos.length; ++i) {
+					final String path = readString(stream);
+					infos[i] = path != null ? new FileInfo(path, null) : null;
+				}
+				model.registerFontEntry(family, infos[0], infos[1], infos[2], infos[3]);
+			}
+
+			directory.setLastModified(System.currentTimeMillis());
+			return model;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static void readTOC(DataInputStream stream, NativeBookModel model) throws IOException {
+		for (int count = stream.readInt(); count > 0; --count) {
+			final String text = readString(stream);
+			model.addTOCItem(text, stream.readInt());
+			readTOC(stream, model);
+			model.leaveTOCItem();
+		}
+	}
+
+	private static boolean blocksExist(File directory, String extension, int blocksNumber) {
+		for (int i = 0; i < blocksNumber; ++i) {
+			if (!new File(directory, i + "." + extension).exists()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores a model just built by native code. Must be called before
+	 * another book is parsed, since native code reuses its block files.
+	 */
+	void store(NativeBookModel model) {
+		final Key key = key(model.Book);
+		if (key == null || !isCacheable(model)) {
+			return;
+		}
+
+		final File root = rootDirectory();
+		final File directory = new File(root, key.directoryName());
+		deleteDirectory(directory);
+		directory.mkdirs();
+
+		DataOutputStream stream = null;
+		final File tempFile = new File(directory, INFO_FILE + ".tmp");
+		try {
+			copyBlocks(model.myLinksDirectoryName, model.myLinksFileExtension, model.myLinksBlocksNumber, directory);
+			for (NativeBookModel.TextModelInfo info : model.myTextModelInfos) {
+				copyBlocks(info.DirectoryName, info.FileExtension, info.BlocksNumber, directory);
+			}
+
+			stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			stream.writeInt(MAGIC);
+			stream.writeInt(VERSION);
+			key.write(stream);
+
+			stream.writeInt(model.myImageMap.size());
+			for (Map.Entry<String,ZLImage> entry : model.myImageMap.entrySet()) {
+				stream.writeUTF(entry.getKey());
+				final String uri = ((ZLFileImage)entry.getValue()).getURI();
+				stream.writeUTF(uri.substring(ZLFileImage.SCHEME.length() + 3));
+			}
+
+			stream.writeUTF(model.myLinksFileExtension);
+			stream.writeInt(model.myLinksBlocksNumber);
+
+			writeTOC(stream, model.TOCTree);
+
+			stream.writeInt(model.myTextModelInfos.size());
+			for (NativeBookModel.TextModelInfo info : model.myTextModelInfos) {
+				stream.writeBoolean(info.Model == model.getTextModel());
+				writeString(stream, info.Id);
+				writeString(stream, info.Language);
+				stream.writeInt(info.ParagraphsNumber);
+				writeIntArray(stream, info.EntryIndices);
+				writeIntArray(stream, info.EntryOffsets);
+				writeIntArray(stream, info.ParagraphLengths);
+				writeIntArray(stream, info.TextSizes);
+				stream.writeInt(info.ParagraphKinds.length);
+				stream.write(info.ParagraphKinds);
+				stream.writeUTF(info.FileExtension);
+				stream.writeInt(info.BlocksNumber);
+			}
+
+			stream.writeInt(model.myFontFamilyLists.size());
+			for (String[] families : model.myFontFamilyLists) {
+				stream.writeInt(families.length);
+				for (String f : families) {
+					stream.writeUTF(f);
+				}
+			}
+
+			final List<Map.Entry<String,FontEntry>> fontEntries;
+			synchronized (model.FontManager.Entries) {
+				fontEntries = new ArrayList<Map.Entry<String,FontEntry>>(model.FontManager.Entries.entrySet());
+			}
+			stream.writeInt(fontEntries.size());
+			for (Map.Entry<String,FontEntry> entry : fontEntries) {
+				stream.writeUTF(entry.getKey());
+				for (int i = 0; i < 4; ++i) {
+					final FileInfo info = entry.getValue().fileInfo((i & 1) != 0, (i & 2) != 0);
+					writeString(stream, info != null ? info.Path : null);
+				}
+			}
+
+			stream.close();
+			stream = null;
+			if (!tempFile.renameTo(new File(directory, INFO_FILE))) {
+				deleteDirectory(directory);
+			}
+		} catch (IOException e) {
+			deleteDirectory(directory);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+				deleteDirectory(directory);
+			}
+		}
+
+		removeOldEntries(root);
+	}
+
+	private static boolean isCacheable(NativeBookModel model) {
+		if (model.myLinksDirectoryName == null || model.myTextModelInfos.isEmpty()) {
+			return false;
+		}
+		final HashMap<String,String> directories = new HashMap<String,String>();
+		directories.put(model.myLinksFileExtension, model.myLinksDirectoryName);
+		for (NativeBookModel.TextModelInfo info : model.myTextModelInfos) {
+			// block files of different directories are copied into one
+			final String directory = directories.put(info.FileExtension, info.DirectoryName);
+			if (directory != null && !directory.equals(info.DirectoryName)) {
+				return false;
+			}
+		}
+		for (ZLImage image : model.myImageMap.values()) {
+			if (!(image instanceof ZLFileImage) || ((ZLFileImage)image).isEncrypted()) {
+				return false;
+			}
+		}
+		synchronized (model.FontManager.Entries) {
+			for (FontEntry entry : model.FontManager.Entries.values()) {
+				for (int i = 0; i < 4; ++i) {
+					final FileInfo info = entry.fileInfo((i & 1) != 0, (i & 2) != 0);
+					if (info != null && info.EncryptionInfo != null) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private static void writeTOC(DataOutputStream stream, TOCTree tree) throws IOException {
+		final List<TOCTree> subtrees = tree.subtrees();
+		stream.writeInt(subtrees.size());
+		for (TOCTree t : subtrees) {
+			writeString(stream, t.getText());
+			final TOCTree.Reference reference = t.getReference();
+			stream.writeInt(reference != null ? reference.ParagraphIndex : -1);
+			writeTOC(stream, t);
+		}
+	}
+
+	private static void copyBlocks(String directoryName, String extension, int blocksNumber, File target) throws IOException {
+		for (int i = 0; i < blocksNumber; ++i) {
+			final String name = i + "." + extension;
+			final File copy = new File(target, name);
+			if (copy.exists()) {
+				continue;
+			}
+			FileChannel from = null;
+			FileChannel to = null;
+			try {
+				from = new FileInputStream(new File(directoryName, name)).getChannel();
+				to = new FileOutputStream(copy).getChannel();
+				final long size = from.size();
+				for (long position = 0; position < size; ) {
+					position += from.transferTo(position, size - position, to);
+				}
+			} finally {
+				if (from != null) {
+					from.close();
+				}
+				if (to != null) {
+					to.close();
+				}
+			}
+		}
+	}
+
+	private static void removeOldEntries(File root) {
+		final File[] directories = root.listFiles();
+		if (directories == null) {
+			return;
+		}
+		Arrays.sort(directories, new Comparator<File>() {
+			public int compare(File f0, File f1) {
+				final long m0 = f0.lastModified();
+				final long m1 = f1.lastModified();
+				return m0 > m1 ? -1 : (m0 < m1 ? 1 : 0);
+			}
+		});
+		long size = 0;
+		for (int i = 0; i < directories.length; ++i) {
+			size += directorySize(directories[i]);
+			if (i >= MAX_BOOKS || size > MAX_SIZE) {
+				deleteDirectory(directories[i]);
+			}
+		}
+	}
+
+	private static long directorySize(File directory) {
+		long size = 0;
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				size += f.length();
+			}
+		}
+		return size;
+	}
+
+	private static void deleteDirectory(File directory) {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private static void writeString(DataOutputStream stream, String s) throws IOException {
+		stream.writeBoolean(s != null);
+		if (s != null) {
+			stream.writeUTF(s);
+		}
+	}
+
+	private static String readString(DataInputStream stream) throws IOException {
+		return stream.readBoolean() ? stream.readUTF() : null;
+	}
+
+	private static void writeIntArray(DataOutputStream stream, int[] array) throws IOException {
+		stream.writeInt(array.length);
+		for (int value : array) {
+			stream.writeInt(value);
+		}
+	}
+
+	private static int[] readIntArray(DataInputStream stream) throws IOException {
+		final int[] array = new int[stream.readInt()];
+		for (int i = 0; i < array.length; ++i) {
+			array[i] = stream.readInt();
+		}
+		return array;
+	}
+
+	synchronized void onColdOpen(long time) {
+		++myColdOpensCount;
+		myColdOpensTime += time;
+	}
+
+	synchronized void onWarmOpen(long time) {
+		++myWarmOpensCount;
+		myWarmOpensTime += time;
+	}
+
+	/**
+	 * @return number of models built by native code since start
+	 */
+	public synchronized int coldOpensCount() {
+		return myColdOpensCount;
+	}
+
+	/**
+	 * @return number of models restored from the cache since start
+	 */
+	public synchronized int warmOpensCount() {
+		return myWarmOpensCount;
+	}
+
+	/**
+	 * @return average time (in milliseconds) to build a model by native code, including caching
+	 */
+	public synchronized long averageColdOpenTime() {
+		return myColdOpensCount > 0 ? myColdOpensTime / myColdOpensCount : 0;
+	}
+
+	/**
+	 * @return average time (in milliseconds) to restore a model from the cache
+	 */
+	public synchronized long averageWarmOpenTime() {
+		return myWarmOpensCount > 0 ? myWarmOpensTime / myWarmOpensCount : 0;
+	}
+}
@@ -22,6 +22,7 @@ package org.geometerplus.fbreader.bookmodel;
 import java.util.HashMap;
 
 import org.geometerplus.zlibrary.core.image.*;
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
 
 import org.geometerplus.zlibrary.text.model.*;
 
@@ -36,33 +37,111 @@ abstract class BookModelImpl extends BookModel {
 		super(book);
 	}
 
-	@Override
-	protected Label getLabelInternal(String id) {
-		final int len = id.length();
-		final int size = myInternalHyperlinks.size();
+	// open-addressing index over myInternalHyperlinks, built on first lookup;
+	// table slots contain label number + 1 (0 for an empty slot), labels are
+	// described by block index and offset of the label length char
+	private int[] myLabelTable;
+	private int[] myLabelHashes;
+	private int[] myLabelBlocks;
+	private int[] myLabelOffsets;
 
+	private void buildLabelIndex() {
+		final int size = myInternalHyperlinks.size();
+		int count = 0;
+		int[] hashes = new int[256];
+		int[] blocks = new int[256];
+		int[] offsets = new int[256];
 		for (int i = 0; i < size; ++i) {
 			final char[] block = myInternalHyperlinks.block(i);
 			for (int offset = 0; offset < block.length; ) {
-				final int labelLength = (int)block[offset++];
+				final int labelLength = (int)block[offset];
 				if (labelLength == 0) {
 					break;
 				}
-				final int idLength = (int)block[offset + labelLength];
-				if ((labelLength != len) || !id.equals(new String(block, offset, labelLength))) {
-					offset += labelLength + idLength + 3;
-					continue;
+				if (count == hashes.length) {
+					hashes = ZLArrayUtils.createCopy(hashes, count, 2 * count);
+					blocks = ZLArrayUtils.createCopy(blocks, count, 2 * count);
+					offsets = ZLArrayUtils.createCopy(offsets, count, 2 * count);
 				}
-				offset += labelLength + 1;
-				final String modelId = (idLength > 0) ? new String(block, offset, idLength) : null;
-				offset += idLength;
-				final int paragraphNumber = (int)block[offset] + (((int)block[offset + 1]) << 16);
-				return new Label(modelId, paragraphNumber);
+				// same as String.hashCode()
+				int hash = 0;
+				for (int j = offset + 1; j <= offset + labelLength; ++j) {
+					hash = 31 * hash + block[j];
+				}
+				hashes[count] = hash;
+				blocks[count] = i;
+				offsets[count] = offset;
+				++count;
+				offset += labelLength + (int)block[offset + labelLength + 1] + 4;
 			}
 		}
+
+		int capacity = 16;
+		while (capacity < 2 * count) {
+			capacity <<= 1;
+		}
+		final int[] table = new int[capacity];
+		final int mask = capacity - 1;
+		// on duplicate ids the first label wins, as it did for linear search
+		for (int k = 0; k < count; ++k) {
+			int slot = mix(hashes[k]) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = k + 1;
+		}
+
+		myLabelHashes = hashes;
+		myLabelBlocks = blocks;
+		myLabelOffsets = offsets;
+		myLabelTable = table;
+	}
+
+	private static int mix(int hash) {
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		return hash ^ (hash >>> 13);
+	}
+
+	@Override
+	protected synchronized Label getLabelInternal(String id) {
+		if (myLabelTable == null) {
+			buildLabelIndex();
+		}
+
+		final int len = id.length();
+		final int hash = id.hashCode();
+		final int[] table = myLabelTable;
+		final int mask = table.length - 1;
+		for (int slot = mix(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			final int k = table[slot] - 1;
+			if (myLabelHashes[k] != hash) {
+				continue;
+			}
+			final char[] block = myInternalHyperlinks.block(myLabelBlocks[k]);
+			int offset = myLabelOffsets[k];
+			if ((int)block[offset++] != len || !matches(block, offset, id)) {
+				continue;
+			}
+			offset += len;
+			final int idLength = (int)block[offset++];
+			final String modelId = (idLength > 0) ? new String(block, offset, idLength) : null;
+			offset += idLength;
+			final int paragraphNumber = (int)block[offset] + (((int)block[offset + 1]) << 16);
+			return new Label(modelId, paragraphNumber);
+		}
 		return null;
 	}
 
+	private static boolean matches(char[] block, int offset, String id) {
+		for (int i = 0; i < id.length(); ++i) {
+			if (block[offset + i] != id.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public void addImage(String id, ZLImage image) {
 		myImageMap.put(id, image);
 	}
@@ -19,18 +19,75 @@
 
 package org.geometerplus.fbreader.bookmodel;
 
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geometerplus.zlibrary.core.util.MiscUtil;
+
 import org.geometerplus.zlibrary.text.model.*;
 
 import org.geometerplus.fbreader.book.Book;
 
 public class NativeBookModel extends BookModelImpl {
+	// arguments of a createTextModel() call, kept for BookModelCache
+	static final class TextModelInfo {
+		final String Id;
+		final String Language;
+		final int ParagraphsNumber;
+		final int[] EntryIndices;
+		final int[] EntryOffsets;
+		final int[] ParagraphLengths;
+		final int[] TextSizes;
+		final byte[] ParagraphKinds;
+		final String DirectoryName;
+		final String FileExtension;
+		final int BlocksNumber;
+		ZLTextModel Model;
+
+		TextModelInfo(
+			String id, String language, int paragraphsNumber,
+			int[] entryIndices, int[] entryOffsets,
+			int[] paragraphLengths, int[] textSizes, byte[] paragraphKinds,
+			String directoryName, String fileExtension, int blocksNumber
+		) {
+			Id = id;
+			Language = language;
+			ParagraphsNumber = paragraphsNumber;
+			EntryIndices = entryIndices;
+			EntryOffsets = entryOffsets;
+			ParagraphLengths = paragraphLengths;
+			TextSizes = textSizes;
+			ParagraphKinds = paragraphKinds;
+			DirectoryName = directoryName;
+			FileExtension = fileExtension;
+			BlocksNumber = blocksNumber;
+		}
+	}
+
 	private ZLTextModel myBookTextModel;
+	private String myCacheDirectory;
+
+	String myLinksDirectoryName;
+	String myLinksFileExtension;
+	int myLinksBlocksNumber;
+	final List<TextModelInfo> myTextModelInfos = new ArrayList<TextModelInfo>();
+	final List<String[]> myFontFamilyLists = new ArrayList<String[]>();
 
 	NativeBookModel(Book book) {
 		super(book);
 	}
 
+	// directory for the search index; by default, the directory of the text blocks
+	void setCacheDirectory(String directory) {
+		myCacheDirectory = directory;
+	}
+
 	public void initInternalHyperlinks(String directoryName, String fileExtension, int blocksNumber) {
+		myLinksDirectoryName = directoryName;
+		myLinksFileExtension = fileExtension;
+		myLinksBlocksNumber = blocksNumber;
 		myInternalHyperlinks = new CachedCharStorageRO(directoryName, fileExtension, blocksNumber);
 	}
 
@@ -55,22 +112,55 @@ public class NativeBookModel extends BookModelImpl {
 		int[] paragraphLenghts, int[] textSizes, byte[] paragraphKinds,
 		String directoryName, String fileExtension, int blocksNumber
 	) {
-		return new ZLTextNativeModel(
+		if (myCacheDirectory == null) {
+			myCacheDirectory = directoryName;
+		}
+		final TextModelInfo info = new TextModelInfo(
 			id, language, paragraphsNumber,
 			entryIndices, entryOffsets,
 			paragraphLenghts, textSizes, paragraphKinds,
-			directoryName, fileExtension, blocksNumber, myImageMap, FontManager
+			directoryName, fileExtension, blocksNumber
 		);
+		info.Model = new ZLTextNativeModel(
+			id, language, paragraphsNumber,
+			entryIndices, entryOffsets,
+			paragraphLenghts, textSizes, paragraphKinds,
+			directoryName, fileExtension, blocksNumber,
+			CharStorage.Kind.MAPPED,
+			myImageMap, FontManager
+		);
+		myTextModelInfos.add(info);
+		return info.Model;
 	}
 
+	// search indices of other books are removed, except for the recently opened ones
+	private static final int MAX_SEARCH_INDICES = 8;
+
 	public void setBookTextModel(ZLTextModel model) {
 		myBookTextModel = model;
+		if (model instanceof ZLTextPlainModel && myCacheDirectory != null && Book.getId() != -1) {
+			final File index = new File(myCacheDirectory, "search" + Book.getId() + ".index");
+			// modification time is the last use time for removeOldFiles()
+			index.setLastModified(System.currentTimeMillis());
+			MiscUtil.removeOldFiles(index.getParentFile().listFiles(new FilenameFilter() {
+				public boolean accept(File dir, String name) {
+					return name.startsWith("search") && name.endsWith(".index");
+				}
+			}), MAX_SEARCH_INDICES);
+			((ZLTextPlainModel)model).enableSearchIndex(index.getPath());
+		}
 	}
 
 	public void setFootnoteModel(ZLTextModel model) {
 		myFootnotes.put(model.getId(), model);
 	}
 
+	@Override
+	public void registerFontFamilyList(String[] families) {
+		myFontFamilyLists.add(families);
+		super.registerFontFamilyList(families);
+	}
+
 	@Override
 	public ZLTextModel getTextModel() {
 		return myBookTextModel;
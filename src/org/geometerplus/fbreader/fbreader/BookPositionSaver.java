@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.fbreader.fbreader;
+
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.geometerplus.zlibrary.core.util.RationalNumber;
+
+import org.geometerplus.zlibrary.text.view.ZLTextPosition;
+
+import org.geometerplus.fbreader.book.Book;
+import org.geometerplus.fbreader.book.IBookCollection;
+
+/**
+ * Write-behind saver for reading positions and progress.
+ *
+ * Saves are kept per book, so a save replaces a pending (not yet written)
+ * save of the same book. The writer thread blocks on a queue of books with
+ * pending saves; when woken, it waits a short delay for the burst to settle
+ * (unless flush() is called) and then writes all pending saves in one pass.
+ * flushAndWait() also waits, for FLUSH_TIMEOUT at most, until the saves
+ * are written.
+ */
+public final class BookPositionSaver {
+	// delay between the first pending save and the write
+	private static final long DELAY = 500;
+	// maximal time flushAndWait() waits for the writes; it is called from the UI thread
+	private static final long FLUSH_TIMEOUT = 200;
+
+	private static final class Save {
+		final Book Book;
+		final ZLTextPosition Position;
+		final RationalNumber Progress;
+
+		Save(Book book, ZLTextPosition position, RationalNumber progress) {
+			Book = book;
+			Position = position;
+			Progress = progress;
+		}
+	}
+
+	private final IBookCollection myCollection;
+	private final LinkedBlockingQueue<Long> myQueue = new LinkedBlockingQueue<Long>();
+	private final LinkedHashMap<Long,Save> myPending = new LinkedHashMap<Long,Save>();
+	private boolean myFlushRequested;
+	// number of saves taken from myPending but not written yet
+	private int myWritingCount;
+	private Thread myThread;
+
+	private int myWritesCount;
+	private int myCoalescedCount;
+
+	BookPositionSaver(IBookCollection collection) {
+		myCollection = collection;
+	}
+
+	synchronized void add(Book book, ZLTextPosition position, RationalNumber progress) {
+		if (myThread == null) {
+			myThread = new Thread("FBReader.positionSaver") {
+				public void run() {
+					while (true) {
+						try {
+							myQueue.take();
+							synchronized (BookPositionSaver.this) {
+								if (!myFlushRequested) {
+									BookPositionSaver.this.wait(DELAY);
+								}
+								myFlushRequested = false;
+							}
+						} catch (InterruptedException e) {
+						}
+						writePending();
+					}
+				}
+			};
+			myThread.setPriority(Thread.MIN_PRIORITY);
+			myThread.start();
+		}
+
+		final Long id = book.getId();
+		if (myPending.put(id, new Save(book, position, progress)) != null) {
+			++myCoalescedCount;
+		} else {
+			myQueue.offer(id);
+		}
+	}
+
+	/**
+	 * Makes the writer thread write pending saves without the usual delay;
+	 * does not wait for the writes.
+	 */
+	public synchronized void flush() {
+		if (!myPending.isEmpty()) {
+			myFlushRequested = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Same as flush(), but also waits until the saves are written,
+	 * for FLUSH_TIMEOUT at most. For the cases the saves must not be lost,
+	 * e.g., when the activity is stopped.
+	 *
+	 * @return true if all the saves are written
+	 */
+	public synchronized boolean flushAndWait() {
+		flush();
+		final long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+		while (!myPending.isEmpty() || myWritingCount > 0) {
+			final long timeout = deadline - System.currentTimeMillis();
+			if (timeout <= 0) {
+				return false;
+			}
+			try {
+				wait(timeout);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void writePending() {
+		final List<Save> saves;
+		synchronized (this) {
+			saves = new ArrayList<Save>(myPending.values());
+			myPending.clear();
+			myQueue.clear();
+			myWritingCount = saves.size();
+		}
+		int written = 0;
+		try {
+			for (Save save : saves) {
+				myCollection.storePosition(save.Book.getId(), save.Position);
+				save.Book.setProgress(save.Progress);
+				myCollection.saveBook(save.Book);
+				++written;
+			}
+		} finally {
+			synchronized (this) {
+				myWritesCount += written;
+				myWritingCount = 0;
+				// wakes flushAndWait() callers
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return number of saves written to the collection
+	 */
+	public synchronized int writesCount() {
+		return myWritesCount;
+	}
+
+	/**
+	 * @return number of saves replaced by later saves of the same book before being written
+	 */
+	public synchronized int coalescedCount() {
+		return myCoalescedCount;
+	}
+}
@@ -30,6 +30,7 @@ import org.geometerplus.zlibrary.text.hyphenation.ZLTextHyphenator;
 import org.geometerplus.zlibrary.text.model.ZLTextModel;
 import org.geometerplus.zlibrary.text.view.*;
 
+import org.geometerplus.fbreader.Paths;
 import org.geometerplus.fbreader.book.*;
 import org.geometerplus.fbreader.bookmodel.*;
 import org.geometerplus.fbreader.fbreader.options.*;
@@ -58,6 +59,8 @@ public final class FBReaderApp extends ZLApplication {
 	public final PageTurningOptions PageTurningOptions = new PageTurningOptions();
 	public final SyncOptions SyncOptions = new SyncOptions();
 
+	public final BookPositionSaver PositionSaver;
+
 	private final ZLKeyBindings myBindings = new ZLKeyBindings();
 
 	public final FBView BookTextView;
@@ -76,6 +79,9 @@ public final class FBReaderApp extends ZLApplication {
 
 	public FBReaderApp(IBookCollection collection) {
 		Collection = collection;
+		PositionSaver = new BookPositionSaver(collection);
+
+		ZLTextHyphenator.setCacheDirectory(Paths.tempDirectory() + "/hyphenation");
 
 		collection.addListener(new IBookCollection.Listener() {
 			public void onBookEvent(BookEvent event, Book book) {
@@ -301,8 +307,6 @@ public final class FBReaderApp extends ZLApplication {
 		clearTextCaches();
 		Model = null;
 		ExternalBook = null;
-		System.gc();
-		System.gc();
 
 		FormatPlugin plugin = null;
 		try {
@@ -442,51 +446,7 @@ public final class FBReaderApp extends ZLApplication {
 
 	public void onWindowClosing() {
 		storePosition();
-	}
-
-	private class PositionSaver implements Runnable {
-		private final Book myBook;
-		private final ZLTextPosition myPosition;
-		private final RationalNumber myProgress;
-
-		PositionSaver(Book book, ZLTextPosition position, RationalNumber progress) {
-			myBook = book;
-			myPosition = position;
-			myProgress = progress;
-		}
-
-		public void run() {
-			Collection.storePosition(myBook.getId(), myPosition);
-			myBook.setProgress(myProgress);
-			Collection.saveBook(myBook);
-		}
-	}
-
-	private class SaverThread extends Thread {
-		private final List<Runnable> myTasks =
-			Collections.synchronizedList(new LinkedList<Runnable>());
-
-		SaverThread() {
-			setPriority(MIN_PRIORITY);
-		}
-
-		void add(Runnable task) {
-			myTasks.add(task);
-		}
-
-		public void run() {
-			while (true) {
-				synchronized (myTasks) {
-					while (!myTasks.isEmpty()) {
-						myTasks.remove(0).run();
-					}
-				}
-				try {
-					sleep(500);
-				} catch (InterruptedException e) {
-				}
-			}
-		}
+		PositionSaver.flush();
 	}
 
 	public void useSyncInfo(boolean openOtherBook, Notifier notifier) {
@@ -505,7 +465,6 @@ public final class FBReaderApp extends ZLApplication {
 		}
 	}
 
-	private final SaverThread mySaverThread = new SaverThread();
 	private volatile ZLTextPosition myStoredPosition;
 	private volatile Book myStoredPositionBook;
 
@@ -546,13 +505,7 @@ public final class FBReaderApp extends ZLApplication {
 	}
 
 	private void savePosition() {
-		final RationalNumber progress = BookTextView.getProgress();
-		synchronized (mySaverThread) {
-			if (!mySaverThread.isAlive()) {
-				mySaverThread.start();
-			}
-			mySaverThread.add(new PositionSaver(myStoredPositionBook, myStoredPosition, progress));
-		}
+		PositionSaver.add(myStoredPositionBook, myStoredPosition, BookTextView.getProgress());
 	}
 
 	public boolean hasCancelActions() {
@@ -19,12 +19,14 @@
 
 package org.geometerplus.fbreader.fbreader;
 
+import java.io.*;
 import java.util.*;
 
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 import org.geometerplus.zlibrary.core.filesystem.ZLResourceFile;
 import org.geometerplus.zlibrary.core.fonts.FontEntry;
 import org.geometerplus.zlibrary.core.library.ZLibrary;
+import org.geometerplus.zlibrary.core.util.MiscUtil;
 import org.geometerplus.zlibrary.core.util.ZLColor;
 import org.geometerplus.zlibrary.core.view.ZLPaintContext;
 
@@ -32,6 +34,7 @@ import org.geometerplus.zlibrary.text.model.ZLTextModel;
 import org.geometerplus.zlibrary.text.view.*;
 import org.geometerplus.zlibrary.text.view.style.ZLTextStyleCollection;
 
+import org.geometerplus.fbreader.Paths;
 import org.geometerplus.fbreader.bookmodel.BookModel;
 import org.geometerplus.fbreader.bookmodel.FBHyperlinkType;
 import org.geometerplus.fbreader.bookmodel.TOCTree;
@@ -790,4 +793,93 @@ public final class FBView extends ZLTextView {
 	protected ExtensionElementManager getExtensionManager() {
 		return myBookElementManager;
 	}
+
+	@Override
+	protected boolean isPaginationEnabled() {
+		return myViewOptions.ExactPageNumbers.getValue();
+	}
+
+	// there is a file per book and style key; only the recently used ones are kept
+	private static final int MAX_PAGE_INDICES = 32;
+
+	private File pageIndexFile(ZLTextModel model, String key) {
+		final BookModel bookModel = myReader.Model;
+		if (bookModel == null || bookModel.Book == null || model != bookModel.getTextModel()) {
+			return null;
+		}
+		return new File(Paths.tempDirectory() + "/pages", bookModel.Book.getId() + "-" + key);
+	}
+
+	@Override
+	protected byte[] loadPageIndex(ZLTextModel model, String key) {
+		final File file = pageIndexFile(model, key);
+		if (file == null || !file.exists()) {
+			return null;
+		}
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new FileInputStream(file));
+			final byte[] data = new byte[(int)file.length()];
+			stream.readFully(data);
+			// modification time is the last use time for removeOldFiles()
+			file.setLastModified(System.currentTimeMillis());
+			return data;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void savePageIndex(ZLTextModel model, String key, byte[] data) {
+		final File file = pageIndexFile(model, key);
+		if (file == null) {
+			return;
+		}
+		file.getParentFile().mkdirs();
+		OutputStream stream = null;
+		try {
+			stream = new FileOutputStream(file);
+			stream.write(data);
+		} catch (IOException e) {
+			file.delete();
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		MiscUtil.removeOldFiles(file.getParentFile().listFiles(), MAX_PAGE_INDICES);
+	}
+
+	@Override
+	protected int[] getSectionRange(int paragraphIndex) {
+		final BookModel model = myReader.Model;
+		if (model == null || getModel() != model.getTextModel()) {
+			return null;
+		}
+
+		int start = -1;
+		int end = getModel().getParagraphsNumber();
+		for (TOCTree tree : model.TOCTree) {
+			final TOCTree.Reference reference = tree.getReference();
+			if (reference == null) {
+				continue;
+			}
+			if (reference.ParagraphIndex > paragraphIndex) {
+				end = reference.ParagraphIndex;
+				break;
+			}
+			start = reference.ParagraphIndex;
+		}
+		return start != -1 ? new int[] { start, end } : null;
+	}
 }
@@ -35,6 +35,7 @@ public class ViewOptions {
 	public final ZLIntegerRangeOption ScrollbarType;
 	public final ZLIntegerRangeOption FooterHeight;
 	public final ZLStringOption ColorProfileName;
+	public final ZLBooleanOption ExactPageNumbers;
 
 	private ColorProfile myColorProfile;
 	private ZLTextStyleCollection myTextStyleCollection;
@@ -67,6 +68,8 @@ public class ViewOptions {
 		ColorProfileName =
 			new ZLStringOption("Options", "ColorProfile", ColorProfile.DAY);
 		ColorProfileName.setSpecialName("colorProfile");
+		ExactPageNumbers =
+			new ZLBooleanOption("Options", "ExactPageNumbers", false);
 	}
 
 	public ColorProfile getColorProfile() {
@@ -75,8 +75,11 @@ public class NativeFormatPlugin extends BuiltinFormatPlugin {
 	private native FileEncryptionInfo[] readEncryptionInfosNative(Book book);
 
 	@Override
-	synchronized public void readUids(Book book) throws BookReadingException {
-		readUidsNative(book);
+	public void readUids(Book book) throws BookReadingException {
+		synchronized (this) {
+			readUidsNative(book);
+		}
+		// hashing of the whole file does not need the native lock
 		if (book.uids().isEmpty()) {
 			book.addUid(BookUtil.createUid(book.File, "SHA-256"));
 		}
@@ -98,6 +101,7 @@ public class NativeFormatPlugin extends BuiltinFormatPlugin {
 		//android.os.Debug.stopMethodTracing();
 		switch (code) {
 			case 0:
+				setupModel(model);
 				return;
 			case 3:
 				throw new CachedCharStorageException("Cannot write file from native code");
@@ -112,6 +116,11 @@ public class NativeFormatPlugin extends BuiltinFormatPlugin {
 
 	private native int readModelNative(BookModel model);
 
+	// called for every model this plugin provides, including models
+	// restored from BookModelCache (these skip readModel())
+	public void setupModel(BookModel model) {
+	}
+
 	@Override
 	public ZLFileImageProxy readCover(ZLFile file) {
 		return new ZLFileImageProxy(file) {
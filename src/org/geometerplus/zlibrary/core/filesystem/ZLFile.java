@@ -237,15 +237,24 @@ public abstract class ZLFile implements InputStreamHolder {
 		return myIsCached;
 	}
 
+	// true if any instance with the path is marked as cached
+	static boolean isCachedPath(String path) {
+		synchronized (ourCachedFiles) {
+			return ourCachedFiles.containsKey(path);
+		}
+	}
+
 	public void setCached(boolean cached) {
 		myIsCached = cached;
-		if (cached) {
-			ourCachedFiles.put(getPath(), this);
-		} else {
-			ourCachedFiles.remove(getPath());
-			if (0 != (myArchiveType & ArchiveType.ZIP)) {
-				ZLZipEntryFile.removeFromCache(this);
+		synchronized (ourCachedFiles) {
+			if (cached) {
+				ourCachedFiles.put(getPath(), this);
+			} else {
+				ourCachedFiles.remove(getPath());
 			}
 		}
+		if (!cached && 0 != (myArchiveType & ArchiveType.ZIP)) {
+			ZLZipEntryFile.removeFromCache(this);
+		}
 	}
 }
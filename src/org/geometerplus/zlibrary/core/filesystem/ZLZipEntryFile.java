@@ -41,23 +41,12 @@ final class ZLZipEntryFile extends ZLArchiveEntryFile {
 		return Collections.emptyList();
 	}
 
-	private static HashMap<ZLFile,ZipFile> ourZipFileMap = new HashMap<ZLFile,ZipFile>();
-
 	private static ZipFile getZipFile(final ZLFile file) throws IOException {
-		synchronized (ourZipFileMap) {
-			ZipFile zf = file.isCached() ? ourZipFileMap.get(file) : null;
-			if (zf == null) {
-				zf = new ZipFile(file);
-				if (file.isCached()) {
-					ourZipFileMap.put(file, zf);
-				}
-			}
-			return zf;
-		}
+		return ZLZipFileCache.get(file);
 	}
 
 	static void removeFromCache(ZLFile file) {
-		ourZipFileMap.remove(file);
+		ZLZipFileCache.remove(file);
 	}
 
 	ZLZipEntryFile(ZLFile parent, String name) {
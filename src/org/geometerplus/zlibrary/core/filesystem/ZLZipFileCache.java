@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.core.filesystem;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.amse.ys.zip.ZipFile;
+
+/**
+ * Shared cache of parsed zip archives.  The cache is split into stripes
+ * (by archive path hash), each stripe is a small LRU guarded by its own lock.
+ * The archives explicitly marked as cached (e.g., the opened book) are pinned,
+ * whichever ZLFile instance has been marked (see ZLFile.isCachedPath()):
+ * they are never evicted, neither as least recently used nor as idle ones.
+ * Other entries not used for IDLE_TIMEOUT milliseconds are dropped by a sweep
+ * over all the stripes, at most once per SWEEP_PERIOD.
+ * An entry is also dropped if the archive has been modified.
+ */
+public final class ZLZipFileCache {
+	private static final int STRIPES_NUMBER = 4;
+	private static final int ENTRIES_PER_STRIPE = 4;
+	private static final long IDLE_TIMEOUT = 60 * 1000;
+	private static final long SWEEP_PERIOD = 10 * 1000;
+
+	private static final class Entry {
+		final ZLFile File;
+		final ZipFile ZipFile;
+		final long Stamp;
+		long LastAccessTime;
+
+		Entry(ZLFile file, ZipFile zipFile, long stamp) {
+			File = file;
+			ZipFile = zipFile;
+			Stamp = stamp;
+		}
+
+		boolean isPinned() {
+			return File.isCached() || ZLFile.isCachedPath(File.getPath());
+		}
+	}
+
+	private static final class Stripe extends LinkedHashMap<ZLFile,Entry> {
+		private static final long serialVersionUID = 1L;
+
+		Stripe() {
+			super(ENTRIES_PER_STRIPE + 1, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ZLFile,Entry> eldest) {
+			if (size() <= ENTRIES_PER_STRIPE) {
+				return false;
+			}
+			// the least recently used entry that is not pinned is removed here
+			// (the just added one is never removed);
+			// if all the entries are pinned, the stripe grows over the limit
+			int candidates = size() - 1;
+			for (Iterator<Entry> it = values().iterator(); candidates-- > 0; ) {
+				final Entry entry = it.next();
+				if (!entry.isPinned()) {
+					it.remove();
+					release(entry);
+					break;
+				}
+			}
+			return false;
+		}
+
+		void removeIdle(long now) {
+			for (Iterator<Entry> it = values().iterator(); it.hasNext(); ) {
+				final Entry entry = it.next();
+				if (now - entry.LastAccessTime > IDLE_TIMEOUT && !entry.isPinned()) {
+					it.remove();
+					release(entry);
+				}
+			}
+		}
+	}
+
+	private static final Stripe[] ourStripes = new Stripe[STRIPES_NUMBER];
+	static {
+		for (int i = 0; i < STRIPES_NUMBER; ++i) {
+			ourStripes[i] = new Stripe();
+		}
+	}
+
+	private static final AtomicLong ourLastSweepTime = new AtomicLong();
+
+	private static final AtomicInteger ourHits = new AtomicInteger();
+	private static final AtomicInteger ourMisses = new AtomicInteger();
+	private static final AtomicInteger ourEvictions = new AtomicInteger();
+
+	private ZLZipFileCache() {
+	}
+
+	private static Stripe stripe(ZLFile file) {
+		return ourStripes[(file.hashCode() & 0x7FFFFFFF) % STRIPES_NUMBER];
+	}
+
+	private static void release(Entry entry) {
+		ourEvictions.incrementAndGet();
+		entry.ZipFile.releaseStoredStreams();
+	}
+
+	static ZipFile get(ZLFile file) throws IOException {
+		final Stripe stripe = stripe(file);
+		final long now = System.currentTimeMillis();
+		final long stamp = file.lastModified();
+		removeIdle(now);
+		synchronized (stripe) {
+			Entry entry = stripe.get(file);
+			if (entry != null && entry.Stamp != stamp) {
+				stripe.remove(file);
+				release(entry);
+				entry = null;
+			}
+			if (entry != null) {
+				ourHits.incrementAndGet();
+			} else {
+				ourMisses.incrementAndGet();
+				entry = new Entry(
+					file,
+					new ZipFile(
+						file,
+						file instanceof ZLPhysicalFile ? ((ZLPhysicalFile)file).javaFile() : null
+					),
+					stamp
+				);
+				stripe.put(file, entry);
+			}
+			entry.LastAccessTime = now;
+			return entry.ZipFile;
+		}
+	}
+
+	// stripes are locked one by one, never two at a time
+	private static void removeIdle(long now) {
+		final long last = ourLastSweepTime.get();
+		if (now - last < SWEEP_PERIOD || !ourLastSweepTime.compareAndSet(last, now)) {
+			return;
+		}
+		for (Stripe stripe : ourStripes) {
+			synchronized (stripe) {
+				stripe.removeIdle(now);
+			}
+		}
+	}
+
+	static void remove(ZLFile file) {
+		final Stripe stripe = stripe(file);
+		synchronized (stripe) {
+			final Entry entry = stripe.remove(file);
+			if (entry != null) {
+				release(entry);
+			}
+		}
+	}
+
+	public static int hits() {
+		return ourHits.get();
+	}
+
+	public static int misses() {
+		return ourMisses.get();
+	}
+
+	public static int evictions() {
+		return ourEvictions.get();
+	}
+}
@@ -32,6 +32,13 @@ public abstract class ZLImageManager {
 
 	public abstract ZLImageData getImageData(ZLImage image);
 
+	// number of images decoded (not taken from a cache) since start
+	public abstract int decodingsCount();
+	// average decoding time, in milliseconds
+	public abstract long averageDecodingTime();
+	public abstract int memoryCacheHitsCount();
+	public abstract int diskCacheHitsCount();
+
 	protected final static class PalmImageHeader {
 		public final int Width;
 		public final int Height;
@@ -20,8 +20,17 @@
 package org.geometerplus.zlibrary.core.image;
 
 public abstract class ZLImageProxy implements ZLImage {
+	// loading order, most urgent first
+	public static enum LoadingPriority {
+		VISIBLE,
+		NEXT_PAGE,
+		THUMBNAIL,
+		PREFETCH;
+	};
+
 	public interface Synchronizer {
-		void startImageLoading(ZLImageProxy image, Runnable postAction);
+		void startImageLoading(ZLImageProxy image, LoadingPriority priority, Runnable postAction);
+		void cancelImageLoading(ZLImageProxy image, Runnable postAction);
 		void synchronize(ZLImageProxy image, Runnable postAction);
 	}
 
@@ -43,7 +52,17 @@ public abstract class ZLImageProxy implements ZLImage {
 	}
 
 	public void startSynchronization(Synchronizer synchronizer, Runnable postAction) {
-		synchronizer.startImageLoading(this, postAction);
+		startSynchronization(synchronizer, LoadingPriority.VISIBLE, postAction);
+	}
+
+	public void startSynchronization(Synchronizer synchronizer, LoadingPriority priority, Runnable postAction) {
+		synchronizer.startImageLoading(this, priority, postAction);
+	}
+
+	// postAction will not be called; loading itself is dropped if it has not started
+	// and nobody else waits for it (a request without postAction always waits)
+	public void cancelSynchronization(Synchronizer synchronizer, Runnable postAction) {
+		synchronizer.cancelImageLoading(this, postAction);
 	}
 
 	public static enum SourceType {
@@ -19,6 +19,7 @@
 
 package org.geometerplus.zlibrary.core.util;
 
+import java.io.File;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -105,4 +106,28 @@ public abstract class MiscUtil {
 		}
 		return tokens;
 	}
+
+	// keeps maxNumber most recently modified of the given files, deletes the others
+	public static void removeOldFiles(File[] files, int maxNumber) {
+		if (files == null || files.length <= maxNumber) {
+			return;
+		}
+		final long[] modified = new long[files.length];
+		final Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; ++i) {
+			// lastModified() is read once, files can be touched while sorting
+			modified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i0, Integer i1) {
+				final long m0 = modified[i0];
+				final long m1 = modified[i1];
+				return m0 > m1 ? -1 : (m0 < m1 ? 1 : 0);
+			}
+		});
+		for (int i = maxNumber; i < order.length; ++i) {
+			files[order[i]].delete();
+		}
+	}
 }
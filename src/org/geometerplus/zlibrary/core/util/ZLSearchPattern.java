@@ -20,20 +20,65 @@
 package org.geometerplus.zlibrary.core.util;
 
 public class ZLSearchPattern {
+	static final int SKIP_TABLE_SIZE = 256;
+
 	final boolean IgnoreCase;
 	final char[] LowerCasePattern;
 	final char[] UpperCasePattern;
+	// Horspool shifts, indexed by the low byte of the text character;
+	// characters sharing a low byte share the (smallest) shift.
+	// null if a pattern character is out of Latin-1: such characters collide
+	// in the table, the shifts shrink to almost nothing, and the plain scan is faster
+	final int[] SkipTable;
 
 	public ZLSearchPattern(String pattern, boolean ignoreCase) {
 		pattern = pattern.replace("\u200b", "");
 		IgnoreCase = ignoreCase;
 		if (IgnoreCase) {
 			LowerCasePattern = pattern.toLowerCase().toCharArray();
-			UpperCasePattern = pattern.toUpperCase().toCharArray();
+			final char[] upper = pattern.toUpperCase().toCharArray();
+			if (upper.length == LowerCasePattern.length) {
+				UpperCasePattern = upper;
+			} else {
+				UpperCasePattern = new char[LowerCasePattern.length];
+				for (int i = 0; i < LowerCasePattern.length; ++i) {
+					UpperCasePattern[i] = Character.toUpperCase(LowerCasePattern[i]);
+				}
+			}
 		} else {
 			LowerCasePattern = pattern.toCharArray();
 			UpperCasePattern = null;
 		}
+
+		SkipTable = isLatin1(LowerCasePattern) && isLatin1(UpperCasePattern)
+			? createSkipTable() : null;
+	}
+
+	private static boolean isLatin1(char[] pattern) {
+		if (pattern != null) {
+			for (char ch : pattern) {
+				if (ch > 0xFF) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private int[] createSkipTable() {
+		final int length = LowerCasePattern.length;
+		final int[] table = new int[SKIP_TABLE_SIZE];
+		for (int i = 0; i < SKIP_TABLE_SIZE; ++i) {
+			table[i] = Math.max(length, 1);
+		}
+		for (int i = 0; i < length - 1; ++i) {
+			final int shift = length - 1 - i;
+			table[LowerCasePattern[i]] = shift;
+			if (UpperCasePattern != null) {
+				table[UpperCasePattern[i]] = shift;
+			}
+		}
+		return table;
 	}
 
 	public int getLength() {
@@ -33,14 +33,118 @@ public abstract class ZLSearchUtil {
 		}
 	}
 
+	public interface Listener {
+		// start is relative to the offset passed to findAll;
+		// returning false stops the search
+		boolean onMatch(int start, int length);
+	}
+
 	public static Result find(char[] text, int offset, int length, final ZLSearchPattern pattern) {
 		return find(text, offset, length, pattern, 0);
 	}
 
 	public static Result find(char[] text, int offset, int length, final ZLSearchPattern pattern, int pos) {
+		final long found = findInternal(text, offset, length, pattern, pos, useHorspool(text, offset, length, pattern));
+		return found != -1 ? new Result((int)(found >> 32), (int)found) : null;
+	}
+
+	/**
+	 * Reports all (possibly overlapping) occurrences of the pattern
+	 * to the listener; does not allocate anything.
+	 *
+	 * @return number of reported occurrences
+	 */
+	public static int findAll(char[] text, int offset, int length, final ZLSearchPattern pattern, Listener listener) {
+		final boolean horspool = useHorspool(text, offset, length, pattern);
+		int count = 0;
+		for (long found = findInternal(text, offset, length, pattern, 0, horspool); found != -1; ) {
+			final int start = (int)(found >> 32);
+			++count;
+			if (!listener.onMatch(start, (int)found)) {
+				break;
+			}
+			found = findInternal(text, offset, length, pattern, start + 1, horspool);
+		}
+		return count;
+	}
+
+	private static final int MIN_HORSPOOL_LENGTH = 4;
+
+	// zero-width spaces inside of a match are skipped, so the match can be
+	// longer than the pattern; the Horspool shifts are not valid in such a case.
+	// For very short patterns, and for patterns out of Latin-1 (no skip table),
+	// the shifts are too small to pay for themselves
+	// (see benchmarks/SearchUtilBenchmark), so the plain scan is used.
+	private static boolean useHorspool(char[] text, int offset, int length, ZLSearchPattern pattern) {
+		if (pattern.getLength() < MIN_HORSPOOL_LENGTH || pattern.SkipTable == null) {
+			return false;
+		}
+		for (int i = offset + length - 1; i >= offset; --i) {
+			if (text[i] == '\u200b') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// returns (start << 32) + length, or -1 if there is no match
+	private static long findInternal(char[] text, int offset, int length, final ZLSearchPattern pattern, int pos, boolean horspool) {
+		if (pattern.getLength() == 0) {
+			return -1;
+		}
 		if (pos < 0) {
 			pos = 0;
 		}
+		return horspool
+			? findHorspool(text, offset, length, pattern, pos)
+			: findWithSoftBreaks(text, offset, length, pattern, pos);
+	}
+
+	private static long findHorspool(char[] text, int offset, int length, final ZLSearchPattern pattern, int pos) {
+		final char[] lower = pattern.LowerCasePattern;
+		final int patternLength = lower.length;
+		final int lastStart = offset + length - patternLength;
+		final int[] skip = pattern.SkipTable;
+		final int last = patternLength - 1;
+		if (pattern.IgnoreCase) {
+			final char[] upper = pattern.UpperCasePattern;
+			for (int i = offset + pos; i <= lastStart; ) {
+				final char lastChar = text[i + last];
+				if (lastChar == lower[last] || lastChar == upper[last]) {
+					int j = last - 1;
+					for (; j >= 0; --j) {
+						final char symbol = text[i + j];
+						if (lower[j] != symbol && upper[j] != symbol) {
+							break;
+						}
+					}
+					if (j < 0) {
+						return ((long)(i - offset) << 32) + patternLength;
+					}
+				}
+				i += skip[lastChar & 0xFF];
+			}
+		} else {
+			for (int i = offset + pos; i <= lastStart; ) {
+				final char lastChar = text[i + last];
+				if (lastChar == lower[last]) {
+					int j = last - 1;
+					for (; j >= 0; --j) {
+						if (lower[j] != text[i + j]) {
+							break;
+						}
+					}
+					if (j < 0) {
+						return ((long)(i - offset) << 32) + patternLength;
+					}
+				}
+				i += skip[lastChar & 0xFF];
+			}
+		}
+		return -1;
+	}
+
+	private static long findWithSoftBreaks(char[] text, int offset, int length, final ZLSearchPattern pattern, int pos) {
 		final char[] lower = pattern.LowerCasePattern;
 		final int patternLength = lower.length;
 		final int end = offset + length;
@@ -69,7 +173,7 @@ public abstract class ZLSearchUtil {
 						++j;
 					}
 					if (j == patternLength) {
-						return new Result(i - offset, k - i);
+						return ((long)(i - offset) << 32) + (k - i);
 					}
 				}
 			}
@@ -94,11 +198,11 @@ public abstract class ZLSearchUtil {
 						++j;
 					}
 					if (j >= patternLength) {
-						return new Result(i - offset, k - i);
+						return ((long)(i - offset) << 32) + (k - i);
 					}
 				}
 			}
 		}
-		return null;
+		return -1;
 	}
 }
@@ -102,6 +102,15 @@ abstract public class ZLPaintContext {
 	abstract public int getWidth();
 	abstract public int getHeight();
 
+	/**
+	 * Contexts with equal keys measure equal strings in equal fonts equally,
+	 * so they can share measured widths. Subclasses with settings that change
+	 * measurements add them to the key.
+	 */
+	public String getMeasuringKey() {
+		return getClass().getName();
+	}
+
 	public final int getStringWidth(String string) {
 		return getStringWidth(string.toCharArray(), 0, string.length());
 	}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.hyphenation;
+
+import java.util.*;
+
+/**
+ * Hyphenation infos of recently hyphenated words, shared by all views
+ * (and background layout threads). Infos are keyed by word content; the
+ * cache is cleared when the hyphenator switches language, and infos
+ * computed before the switch are not stored.
+ */
+final class ZLTextHyphenationInfoCache {
+	private static final int MAX_SIZE = 4096;
+
+	private static final class Key {
+		char[] Data;
+		int Offset;
+		int Length;
+		int Hash;
+
+		void set(char[] data, int offset, int length) {
+			Data = data;
+			Offset = offset;
+			Length = length;
+			int hash = length;
+			for (int i = offset; i < offset + length; ++i) {
+				hash = 31 * hash + data[i];
+			}
+			Hash = hash;
+		}
+
+		Key copy() {
+			final Key key = new Key();
+			key.Data = new char[Length];
+			System.arraycopy(Data, Offset, key.Data, 0, Length);
+			key.Offset = 0;
+			key.Length = Length;
+			key.Hash = Hash;
+			return key;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			final Key key = (Key)o;
+			if (Hash != key.Hash || Length != key.Length) {
+				return false;
+			}
+			for (int i = 0; i < Length; ++i) {
+				if (Data[Offset + i] != key.Data[key.Offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return Hash;
+		}
+	}
+
+	private final LinkedHashMap<Key,ZLTextHyphenationInfo> myInfos =
+		new LinkedHashMap<Key,ZLTextHyphenationInfo>(MAX_SIZE, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,ZLTextHyphenationInfo> eldest) {
+				return size() > MAX_SIZE;
+			}
+		};
+	private final Key myProbe = new Key();
+	private int myGeneration;
+
+	synchronized int generation() {
+		return myGeneration;
+	}
+
+	synchronized ZLTextHyphenationInfo get(char[] data, int offset, int length) {
+		myProbe.set(data, offset, length);
+		final ZLTextHyphenationInfo info = myInfos.get(myProbe);
+		myProbe.Data = null;
+		return info;
+	}
+
+	synchronized void put(int generation, char[] data, int offset, int length, ZLTextHyphenationInfo info) {
+		if (generation != myGeneration) {
+			return;
+		}
+		myProbe.set(data, offset, length);
+		myInfos.put(myProbe.copy(), info);
+		myProbe.Data = null;
+	}
+
+	synchronized void clear() {
+		myInfos.clear();
+		++myGeneration;
+	}
+}
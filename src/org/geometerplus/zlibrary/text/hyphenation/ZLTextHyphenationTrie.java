@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.hyphenation;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+// Packed trie of TeX hyphenation patterns.
+//
+// The trie is stored in a single byte buffer with the layout
+//     int nodeCount, int edgeCount, int valuesLength,
+//     int[nodeCount + 1] first edge of node,
+//     char[edgeCount] edge labels (sorted for every node),
+//     int[edgeCount] edge targets,
+//     int[nodeCount] offset of the node values (-1 if the node ends no pattern),
+//     byte[valuesLength] pattern values,
+// so that a compiled file can be mapped into memory and used as is,
+// without parsing or copying.
+final class ZLTextHyphenationTrie {
+	private static final int MAGIC = 0x46424859; // "FBHY"
+	private static final int VERSION = 1;
+
+	private final ByteBuffer myData;
+	private final IntBuffer myFirstEdge;
+	private final CharBuffer myLabels;
+	private final IntBuffer myTargets;
+	private final IntBuffer myValueOffsets;
+	private final ByteBuffer myValues;
+
+	private ZLTextHyphenationTrie(ByteBuffer data) {
+		final int nodeCount = data.getInt(0);
+		final int edgeCount = data.getInt(4);
+		final int valuesLength = data.getInt(8);
+		if (nodeCount <= 0 || edgeCount < 0 || valuesLength < 0 ||
+			data.capacity() != 12 + 4 * (nodeCount + 1) + 6 * edgeCount + 4 * nodeCount + valuesLength) {
+			throw new IllegalArgumentException("Corrupted hyphenation trie");
+		}
+
+		myData = data;
+		int position = 12;
+		myFirstEdge = slice(data, position).asIntBuffer();
+		position += 4 * (nodeCount + 1);
+		myLabels = slice(data, position).asCharBuffer();
+		position += 2 * edgeCount;
+		myTargets = slice(data, position).asIntBuffer();
+		position += 4 * edgeCount;
+		myValueOffsets = slice(data, position).asIntBuffer();
+		position += 4 * nodeCount;
+		myValues = slice(data, position);
+	}
+
+	private static ByteBuffer slice(ByteBuffer data, int position) {
+		final ByteBuffer copy = data.duplicate();
+		copy.position(position);
+		return copy.slice();
+	}
+
+	private int child(int node, char label) {
+		int low = myFirstEdge.get(node);
+		int high = myFirstEdge.get(node + 1) - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final char middleLabel = myLabels.get(middle);
+			if (middleLabel < label) {
+				low = middle + 1;
+			} else if (middleLabel > label) {
+				high = middle - 1;
+			} else {
+				return myTargets.get(middle);
+			}
+		}
+		return -1;
+	}
+
+	// values must be zero-filled and contain at least length + 1 elements
+	void apply(char[] string, int length, byte[] values) {
+		for (int offset = 0; offset < length - 1; ++offset) {
+			int node = 0;
+			for (int j = offset; j < length; ++j) {
+				node = child(node, string[j]);
+				if (node == -1) {
+					break;
+				}
+				final int valueOffset = myValueOffsets.get(node);
+				if (valueOffset != -1) {
+					for (int i = 0, k = offset; k <= j + 1; ++i, ++k) {
+						final byte val = myValues.get(valueOffset + i);
+						if (values[k] < val) {
+							values[k] = val;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	static ZLTextHyphenationTrie read(File file, String tag) {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			if (raf.readInt() != MAGIC || raf.readInt() != VERSION || !tag.equals(raf.readUTF())) {
+				return null;
+			}
+			final long start = raf.getFilePointer();
+			return new ZLTextHyphenationTrie(
+				raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, raf.length() - start)
+			);
+		} catch (IOException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		} finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	void write(File file, String tag) {
+		final File parent = file.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		final File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream stream = null;
+		try {
+			stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			stream.writeInt(MAGIC);
+			stream.writeInt(VERSION);
+			stream.writeUTF(tag);
+			final ByteBuffer data = myData.duplicate();
+			data.clear();
+			final byte[] buffer = new byte[8192];
+			while (data.hasRemaining()) {
+				final int len = Math.min(buffer.length, data.remaining());
+				data.get(buffer, 0, len);
+				stream.write(buffer, 0, len);
+			}
+			stream.close();
+			stream = null;
+			if (!temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			temp.delete();
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+				temp.delete();
+			}
+		}
+	}
+
+	static final class Builder {
+		private static final class Node {
+			final TreeMap<Character,Node> Children = new TreeMap<Character,Node>();
+			byte[] Values;
+		}
+
+		private final Node myRoot = new Node();
+
+		void add(char[] symbols, byte[] values, int length) {
+			Node node = myRoot;
+			for (int i = 0; i < length; ++i) {
+				final Character label = symbols[i];
+				Node next = node.Children.get(label);
+				if (next == null) {
+					next = new Node();
+					node.Children.put(label, next);
+				}
+				node = next;
+			}
+			if (length > 0) {
+				final byte[] copy = new byte[length + 1];
+				System.arraycopy(values, 0, copy, 0, length + 1);
+				node.Values = copy;
+			}
+		}
+
+		ZLTextHyphenationTrie build() {
+			final ArrayList<Node> nodes = new ArrayList<Node>();
+			final IdentityHashMap<Node,Integer> indices = new IdentityHashMap<Node,Integer>();
+			int edgeCount = 0;
+			int valuesLength = 0;
+			nodes.add(myRoot);
+			indices.put(myRoot, 0);
+			for (int i = 0; i < nodes.size(); ++i) {
+				final Node node = nodes.get(i);
+				for (Node child : node.Children.values()) {
+					indices.put(child, nodes.size());
+					nodes.add(child);
+				}
+				edgeCount += node.Children.size();
+				if (node.Values != null) {
+					valuesLength += node.Values.length;
+				}
+			}
+
+			final int nodeCount = nodes.size();
+			final ByteBuffer data = ByteBuffer.allocate(
+				12 + 4 * (nodeCount + 1) + 6 * edgeCount + 4 * nodeCount + valuesLength
+			);
+			data.putInt(nodeCount).putInt(edgeCount).putInt(valuesLength);
+			int edge = 0;
+			for (Node node : nodes) {
+				data.putInt(edge);
+				edge += node.Children.size();
+			}
+			data.putInt(edge);
+			for (Node node : nodes) {
+				for (char label : node.Children.keySet()) {
+					data.putChar(label);
+				}
+			}
+			for (Node node : nodes) {
+				for (Node child : node.Children.values()) {
+					data.putInt(indices.get(child));
+				}
+			}
+			int valueOffset = 0;
+			for (Node node : nodes) {
+				if (node.Values != null) {
+					data.putInt(valueOffset);
+					valueOffset += node.Values.length;
+				} else {
+					data.putInt(-1);
+				}
+			}
+			for (Node node : nodes) {
+				if (node.Values != null) {
+					data.put(node.Values);
+				}
+			}
+			return new ZLTextHyphenationTrie(data);
+		}
+	}
+}
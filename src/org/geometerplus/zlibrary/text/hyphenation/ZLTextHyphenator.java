@@ -40,6 +40,17 @@ public abstract class ZLTextHyphenator {
 		}
 	}
 
+	private static volatile String ourCacheDirectory;
+
+	// directory to keep compiled pattern files in; null disables them
+	public static void setCacheDirectory(String directory) {
+		ourCacheDirectory = directory;
+	}
+
+	protected static String getCacheDirectory() {
+		return ourCacheDirectory;
+	}
+
 	protected ZLTextHyphenator() {
 	}
 
@@ -47,7 +58,23 @@ public abstract class ZLTextHyphenator {
 	public abstract void load(final String languageCode);
 	public abstract void unload();
 
+	private final ZLTextHyphenationInfoCache myInfoCache = new ZLTextHyphenationInfoCache();
+
 	public ZLTextHyphenationInfo getInfo(final ZLTextWord word) {
+		final int generation = myInfoCache.generation();
+		ZLTextHyphenationInfo info = myInfoCache.get(word.Data, word.Offset, word.Length);
+		if (info == null) {
+			info = createInfo(word);
+			myInfoCache.put(generation, word.Data, word.Offset, word.Length, info);
+		}
+		return info;
+	}
+
+	protected void clearInfoCache() {
+		myInfoCache.clear();
+	}
+
+	private ZLTextHyphenationInfo createInfo(final ZLTextWord word) {
 		final int len = word.Length;
 		final boolean[] isLetter = new boolean[len];
 		final char[] pattern = new char[len + 2];
@@ -88,6 +88,14 @@ public final class ZLTextTeXHyphenationPattern {
 		return myLength;
 	}
 
+	char[] symbols() {
+		return mySymbols;
+	}
+
+	byte[] values() {
+		return myValues;
+	}
+
 	public boolean equals(Object o) {
 		ZLTextTeXHyphenationPattern pattern = (ZLTextTeXHyphenationPattern)o;
 		int len = myLength;
@@ -19,24 +19,24 @@
 
 package org.geometerplus.zlibrary.text.hyphenation;
 
+import java.io.File;
 import java.util.*;
 
 import org.geometerplus.zlibrary.core.language.Language;
 import org.geometerplus.zlibrary.core.language.ZLLanguageUtil;
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
 import org.geometerplus.zlibrary.core.filesystem.ZLResourceFile;
+import org.geometerplus.zlibrary.core.library.ZLibrary;
 
 final class ZLTextTeXHyphenator extends ZLTextHyphenator {
-	private final HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern> myPatternTable =
-		new HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern>();
-	private int myMaxPatternLength;
+	private ZLTextHyphenationTrie myTrie;
+	private ZLTextHyphenationTrie.Builder myBuilder;
 	private String myLanguage;
 
+	private byte[] myValues = new byte[32];
+
 	void addPattern(ZLTextTeXHyphenationPattern pattern) {
-		myPatternTable.put(pattern, pattern);
-		if (myMaxPatternLength < pattern.length()) {
-			myMaxPatternLength = pattern.length();
-		}
+		myBuilder.add(pattern.symbols(), pattern.values(), pattern.length());
 	}
 
 	private List<String> myLanguageCodes;
@@ -58,7 +58,7 @@ final class ZLTextTeXHyphenator extends ZLTextHyphenator {
 		return Collections.unmodifiableList(myLanguageCodes);
 	}
 
-	public void load(String language) {
+	public synchronized void load(String language) {
 		if (language == null || Language.OTHER_CODE.equals(language)) {
 			language = ZLLanguageUtil.defaultLanguageCode();
 		}
@@ -68,43 +68,56 @@ final class ZLTextTeXHyphenator extends ZLTextHyphenator {
 		myLanguage = language;
 		unload();
 
-		if (language != null) {
-			new ZLTextHyphenationReader(this).readQuietly(ZLResourceFile.createResourceFile(
-				"hyphenationPatterns/" + language + ".pattern"
-			));
+		final File file = compiledFile(language);
+		final String tag = ZLibrary.Instance().getVersionName();
+		if (file != null) {
+			myTrie = ZLTextHyphenationTrie.read(file, tag);
+			if (myTrie != null) {
+				return;
+			}
 		}
+
+		myBuilder = new ZLTextHyphenationTrie.Builder();
+		try {
+			final boolean success = new ZLTextHyphenationReader(this).readQuietly(
+				ZLResourceFile.createResourceFile("hyphenationPatterns/" + language + ".pattern")
+			);
+			if (success) {
+				myTrie = myBuilder.build();
+				if (file != null) {
+					myTrie.write(file, tag);
+				}
+			}
+		} finally {
+			myBuilder = null;
+		}
+	}
+
+	private File compiledFile(String language) {
+		final String directory = getCacheDirectory();
+		return directory != null ? new File(directory, language + ".trie") : null;
 	}
 
-	public void unload() {
-		myPatternTable.clear();
-		myMaxPatternLength = 0;
+	public synchronized void unload() {
+		myTrie = null;
+		clearInfoCache();
 	}
 
-	public void hyphenate(char[] stringToHyphenate, boolean[] mask, int length) {
-		if (myPatternTable.isEmpty()) {
+	public synchronized void hyphenate(char[] stringToHyphenate, boolean[] mask, int length) {
+		final ZLTextHyphenationTrie trie = myTrie;
+		if (trie == null) {
 			for (int i = 0; i < length - 1; i++) {
 				mask[i] = false;
 			}
 			return;
 		}
 
-		byte[] values = new byte[length + 1];
-
-		final HashMap<ZLTextTeXHyphenationPattern,ZLTextTeXHyphenationPattern> table = myPatternTable;
-		ZLTextTeXHyphenationPattern pattern =
-			new ZLTextTeXHyphenationPattern(stringToHyphenate, 0, length, false);
-		for (int offset = 0; offset < length - 1; offset++) {
-			int len = Math.min(length - offset, myMaxPatternLength) + 1;
-			pattern.update(stringToHyphenate, offset, len - 1);
-			while (--len > 0) {
-				pattern.reset(len);
-				ZLTextTeXHyphenationPattern toApply =
-					(ZLTextTeXHyphenationPattern)table.get(pattern);
-				if (toApply != null) {
-					toApply.apply(values, offset);
-				}
-			}
+		if (myValues.length < length + 1) {
+			myValues = new byte[Math.max(length + 1, 2 * myValues.length)];
 		}
+		final byte[] values = myValues;
+		Arrays.fill(values, 0, length + 1, (byte)0);
+		trie.apply(stringToHyphenate, length, values);
 
 		for (int i = 0; i < length - 1; i++) {
 			mask[i] = (values[i + 1] % 2) == 1;
@@ -20,6 +20,16 @@
 package org.geometerplus.zlibrary.text.model;
 
 public interface CharStorage {
+	// storage selection for the model constructors
+	public static enum Kind {
+		// a UTF-16 file per block, blocks are weakly cached
+		CACHED,
+		// blocks are read through memory mapping, last used ones are strongly cached
+		MAPPED,
+		// as MAPPED, and every block is deflated on disk; for writable models only
+		MAPPED_COMPRESSED
+	}
+
 	int size();
 	char[] block(int index);
 	char[] createNewBlock(int minimumLength);
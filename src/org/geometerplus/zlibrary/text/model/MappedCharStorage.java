@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.model;
+
+import java.lang.ref.WeakReference;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.zip.*;
+
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+
+/**
+ * Writable storage that appends all the frozen blocks to a single file
+ * and keeps the block index (offset and size of every block) in memory.
+ * Blocks are read back through a memory-mapped view of that file;
+ * optionally, every block is deflated before writing.
+ * close() finishes writing; the blocks stay readable after that.
+ */
+public final class MappedCharStorage extends MappedCharStorageBase implements Closeable {
+	private final int myBlockSize;
+	private final String myFileName;
+	private final boolean myCompress;
+
+	private RandomAccessFile myFile;
+	private MappedByteBuffer myMappedBuffer;
+	private int myMappedSize;
+
+	private int myFrozenBlocksNumber;
+	private int[] myBlockOffsets = new int[16];
+	private int[] myBlockByteSizes = new int[16];
+	private int[] myBlockCharSizes = new int[16];
+	private int myFileSize;
+
+	public MappedCharStorage(int blockSize, String directoryName, String fileExtension, boolean compress, int strongCacheSize) {
+		super(strongCacheSize);
+		myBlockSize = blockSize;
+		myFileName = directoryName + "/blocks." + fileExtension;
+		myCompress = compress;
+		new File(directoryName).mkdirs();
+		try {
+			myFile = new RandomAccessFile(myFileName, "rw");
+			myFile.setLength(0);
+		} catch (IOException e) {
+			throw new CachedCharStorageException("Cannot create " + myFileName);
+		}
+	}
+
+	public synchronized char[] createNewBlock(int minimumLength) {
+		if (myFile == null) {
+			throw new CachedCharStorageException(myFileName + " is closed");
+		}
+		int blockSize = myBlockSize;
+		if (minimumLength > blockSize) {
+			blockSize = minimumLength;
+		}
+		char[] block = new char[blockSize];
+		myArray.add(new WeakReference<char[]>(block));
+		return block;
+	}
+
+	public synchronized void freezeLastBlock() {
+		final int index = myArray.size() - 1;
+		if (index < myFrozenBlocksNumber) {
+			return;
+		}
+		final char[] block = myArray.get(index).get();
+		if (block == null) {
+			throw new CachedCharStorageException("Block reference in null during freeze");
+		}
+		if (myFile == null) {
+			throw new CachedCharStorageException(myFileName + " is closed");
+		}
+
+		final ByteBuffer raw = ByteBuffer.allocate(block.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+		raw.asCharBuffer().put(block);
+		byte[] data = raw.array();
+		int dataLength = data.length;
+		if (myCompress) {
+			final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] compressed = new byte[dataLength / 2 + 64];
+			int compressedLength = 0;
+			while (!deflater.finished()) {
+				if (compressedLength == compressed.length) {
+					compressed = ZLArrayUtils.createCopy(compressed, compressedLength, compressedLength * 2);
+				}
+				compressedLength +=
+					deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+			}
+			deflater.end();
+			data = compressed;
+			dataLength = compressedLength;
+		}
+
+		try {
+			myFile.seek(myFileSize);
+			myFile.write(data, 0, dataLength);
+		} catch (IOException e) {
+			throw new CachedCharStorageException("Error during writing " + myFileName);
+		}
+
+		if (index >= myBlockOffsets.length) {
+			final int length = myBlockOffsets.length;
+			myBlockOffsets = ZLArrayUtils.createCopy(myBlockOffsets, length, length << 1);
+			myBlockByteSizes = ZLArrayUtils.createCopy(myBlockByteSizes, length, length << 1);
+			myBlockCharSizes = ZLArrayUtils.createCopy(myBlockCharSizes, length, length << 1);
+		}
+		myBlockOffsets[index] = myFileSize;
+		myBlockByteSizes[index] = dataLength;
+		myBlockCharSizes[index] = block.length;
+		myFileSize += dataLength;
+		myFrozenBlocksNumber = index + 1;
+	}
+
+	public synchronized void close() {
+		if (myFile == null) {
+			return;
+		}
+		try {
+			mapFile();
+		} finally {
+			try {
+				myFile.close();
+			} catch (IOException e) {
+			}
+			myFile = null;
+		}
+	}
+
+	// called under lock
+	private void mapFile() {
+		if (myMappedBuffer != null && myMappedSize >= myFileSize) {
+			return;
+		}
+		try {
+			myMappedBuffer = myFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, myFileSize);
+			myMappedSize = myFileSize;
+		} catch (IOException e) {
+			throw new CachedCharStorageException("Error during reading " + myFileName);
+		}
+	}
+
+	@Override
+	protected char[] readBlock(int index) {
+		if (index >= myFrozenBlocksNumber) {
+			throw new CachedCharStorageException("Block " + index + " is not written to " + myFileName);
+		}
+		mapFile();
+
+		final ByteBuffer buffer = myMappedBuffer.duplicate();
+		buffer.position(myBlockOffsets[index]);
+		buffer.limit(myBlockOffsets[index] + myBlockByteSizes[index]);
+
+		final char[] block = new char[myBlockCharSizes[index]];
+		if (myCompress) {
+			final byte[] compressed = new byte[myBlockByteSizes[index]];
+			buffer.get(compressed);
+			final byte[] data = new byte[block.length * 2];
+			final Inflater inflater = new Inflater(true);
+			inflater.setInput(compressed);
+			try {
+				int length = 0;
+				while (length < data.length && !inflater.finished()) {
+					final int count = inflater.inflate(data, length, data.length - length);
+					if (count == 0 && inflater.needsInput()) {
+						break;
+					}
+					length += count;
+				}
+				if (length != data.length) {
+					throw new CachedCharStorageException("Error during reading " + myFileName);
+				}
+			} catch (DataFormatException e) {
+				throw new CachedCharStorageException("Error during reading " + myFileName);
+			} finally {
+				inflater.end();
+			}
+			ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asCharBuffer().get(block);
+		} else {
+			buffer.order(ByteOrder.LITTLE_ENDIAN).asCharBuffer().get(block);
+		}
+		return block;
+	}
+}
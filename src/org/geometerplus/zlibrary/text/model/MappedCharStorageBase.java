@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.model;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+abstract class MappedCharStorageBase implements CharStorage {
+	// number of blocks kept in memory regardless of garbage collection
+	static final int DEFAULT_STRONG_CACHE_SIZE = 4;
+
+	protected final ArrayList<WeakReference<char[]>> myArray =
+		new ArrayList<WeakReference<char[]>>();
+
+	private final int myStrongCacheSize;
+	private final LinkedHashMap<Integer,char[]> myStrongCache;
+
+	MappedCharStorageBase(int strongCacheSize) {
+		myStrongCacheSize = Math.max(strongCacheSize, 0);
+		myStrongCache = new LinkedHashMap<Integer,char[]>(myStrongCacheSize + 1, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer,char[]> eldest) {
+				return size() > myStrongCacheSize;
+			}
+		};
+	}
+
+	protected abstract char[] readBlock(int index);
+
+	public synchronized int size() {
+		return myArray.size();
+	}
+
+	public synchronized char[] block(int index) {
+		if (index < 0 || index >= myArray.size()) {
+			return null;
+		}
+		char[] block = myStrongCache.get(index);
+		if (block != null) {
+			return block;
+		}
+		block = myArray.get(index).get();
+		if (block == null) {
+			block = readBlock(index);
+			myArray.set(index, new WeakReference<char[]>(block));
+		}
+		if (myStrongCacheSize > 0) {
+			myStrongCache.put(index, block);
+		}
+		return block;
+	}
+
+	protected synchronized void clearStrongCache() {
+		myStrongCache.clear();
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.model;
+
+import java.lang.ref.WeakReference;
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+
+/**
+ * Read-only storage for the block files produced by native code.
+ * Unlike CachedCharStorageRO, blocks are decoded straight from a mapped file
+ * (no charset decoder involved), and the last recently used blocks are kept
+ * strongly reachable, so they survive garbage collection.
+ */
+public final class MappedCharStorageRO extends MappedCharStorageBase {
+	private final String myDirectoryName;
+	private final String myFileExtension;
+	// every block file is mapped at most once; mappings take no heap space
+	private final MappedByteBuffer[] myBuffers;
+
+	public MappedCharStorageRO(String directoryName, String fileExtension, int blocksNumber, int strongCacheSize) {
+		super(strongCacheSize);
+		myDirectoryName = directoryName + '/';
+		myFileExtension = '.' + fileExtension;
+		myArray.addAll(Collections.nCopies(blocksNumber, new WeakReference<char[]>(null)));
+		myBuffers = new MappedByteBuffer[blocksNumber];
+	}
+
+	private String fileName(int index) {
+		return myDirectoryName + index + myFileExtension;
+	}
+
+	@Override
+	protected char[] readBlock(int index) {
+		MappedByteBuffer buffer = myBuffers[index];
+		if (buffer == null) {
+			buffer = map(index);
+			myBuffers[index] = buffer;
+		}
+		final char[] block = new char[buffer.capacity() / 2];
+		buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).asCharBuffer().get(block);
+		return block;
+	}
+
+	private MappedByteBuffer map(int index) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(fileName(index), "r");
+			final FileChannel channel = file.getChannel();
+			final long size = channel.size();
+			if (size < 0 || size > Integer.MAX_VALUE) {
+				throw new CachedCharStorageException("Error during reading " + fileName(index));
+			}
+			// the mapping stays valid after the file is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} catch (IOException e) {
+			throw new CachedCharStorageException("Error during reading " + fileName(index));
+		} finally {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	public char[] createNewBlock(int minimumLength) {
+		throw new UnsupportedOperationException("MappedCharStorageRO is a read-only storage.");
+	}
+
+	public void freezeLastBlock() {
+	}
+}
@@ -41,4 +41,15 @@ public interface ZLTextModel {
 	int findParagraphByTextLength(int length);
 
 	int search(final String text, int startIndex, int endIndex, boolean ignoreCase);
+
+	interface SearchListener {
+		// called from a search thread when new marks are added to the model
+		void onMarksFound(List<ZLTextMark> marks);
+		// called once, from a search thread, unless the search is cancelled
+		void onSearchFinished(int count);
+	}
+
+	// scans paragraph ranges in parallel, starting from the range containing nearIndex;
+	// a new search or removeAllMarks() call cancels the running one
+	void search(final String text, int startIndex, int endIndex, int nearIndex, boolean ignoreCase, SearchListener listener);
 }
@@ -33,14 +33,68 @@ public class ZLTextNativeModel extends ZLTextPlainModel {
 		String directoryName, String fileExtension, int blocksNumber,
 		Map<String,ZLImage> imageMap,
 		FontManager fontManager
+	) {
+		this(
+			id, language, paragraphsNumber,
+			entryIndices, entryOffsets, paragraphLengths, textSizes, paragraphKinds,
+			directoryName, fileExtension, blocksNumber,
+			CharStorage.Kind.CACHED,
+			imageMap,
+			fontManager
+		);
+	}
+
+	public ZLTextNativeModel(
+		String id, String language, int paragraphsNumber,
+		int[] entryIndices, int[] entryOffsets,
+		int[] paragraphLengths, int[] textSizes,
+		byte[] paragraphKinds,
+		String directoryName, String fileExtension, int blocksNumber,
+		CharStorage.Kind storageKind,
+		Map<String,ZLImage> imageMap,
+		FontManager fontManager
+	) {
+		this(
+			id, language, paragraphsNumber,
+			entryIndices, entryOffsets, paragraphLengths, textSizes, paragraphKinds,
+			createStorage(directoryName, fileExtension, blocksNumber, storageKind),
+			imageMap,
+			fontManager
+		);
+	}
+
+	public ZLTextNativeModel(
+		String id, String language, int paragraphsNumber,
+		int[] entryIndices, int[] entryOffsets,
+		int[] paragraphLengths, int[] textSizes,
+		byte[] paragraphKinds,
+		CharStorage storage,
+		Map<String,ZLImage> imageMap,
+		FontManager fontManager
 	) {
 		super(
 			id, language,
 			entryIndices, entryOffsets, paragraphLengths, textSizes, paragraphKinds,
-			new CachedCharStorageRO(directoryName, fileExtension, blocksNumber),
+			storage,
 			imageMap,
 			fontManager
 		);
 		myParagraphsNumber = paragraphsNumber;
 	}
+
+	private static CharStorage createStorage(String directoryName, String fileExtension, int blocksNumber, CharStorage.Kind kind) {
+		switch (kind) {
+			default:
+			case CACHED:
+				return new CachedCharStorageRO(directoryName, fileExtension, blocksNumber);
+			case MAPPED:
+				return new MappedCharStorageRO(
+					directoryName, fileExtension, blocksNumber,
+					MappedCharStorageBase.DEFAULT_STRONG_CACHE_SIZE
+				);
+			case MAPPED_COMPRESSED:
+				// block files are written by native code, uncompressed
+				throw new IllegalArgumentException("Native models cannot use compressed storage");
+		}
+	}
 }
@@ -20,6 +20,8 @@
 package org.geometerplus.zlibrary.text.model;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.geometerplus.zlibrary.core.fonts.FontManager;
 import org.geometerplus.zlibrary.core.image.ZLImage;
@@ -40,10 +42,15 @@ public class ZLTextPlainModel implements ZLTextModel, ZLTextStyleEntry.Feature {
 	protected final CharStorage myStorage;
 	protected final Map<String,ZLImage> myImageMap;
 
-	private ArrayList<ZLTextMark> myMarks;
+	private volatile List<ZLTextMark> myMarks;
+	private final AtomicInteger mySearchGeneration = new AtomicInteger();
 
 	private final FontManager myFontManager;
 
+	private volatile String mySearchIndexFileName;
+	private volatile ZLTextSearchIndex mySearchIndex;
+	private boolean mySearchIndexRequested;
+
 	final class EntryIteratorImpl implements ZLTextParagraph.EntryIterator {
 		private int myCounter;
 		private int myLength;
@@ -331,20 +338,23 @@ public class ZLTextPlainModel implements ZLTextModel, ZLTextStyleEntry.Feature {
 	}
 
 	public final ZLTextMark getFirstMark() {
-		return (myMarks == null || myMarks.isEmpty()) ? null : myMarks.get(0);
+		final List<ZLTextMark> marks = myMarks;
+		return (marks == null || marks.isEmpty()) ? null : marks.get(0);
 	}
 
 	public final ZLTextMark getLastMark() {
-		return (myMarks == null || myMarks.isEmpty()) ? null : myMarks.get(myMarks.size() - 1);
+		final List<ZLTextMark> marks = myMarks;
+		return (marks == null || marks.isEmpty()) ? null : marks.get(marks.size() - 1);
 	}
 
 	public final ZLTextMark getNextMark(ZLTextMark position) {
-		if (position == null || myMarks == null) {
+		final List<ZLTextMark> marks = myMarks;
+		if (position == null || marks == null) {
 			return null;
 		}
 
 		ZLTextMark mark = null;
-		for (ZLTextMark current : myMarks) {
+		for (ZLTextMark current : marks) {
 			if (current.compareTo(position) >= 0) {
 				if ((mark == null) || (mark.compareTo(current) > 0)) {
 					mark = current;
@@ -355,12 +365,13 @@ public class ZLTextPlainModel implements ZLTextModel, ZLTextStyleEntry.Feature {
 	}
 
 	public final ZLTextMark getPreviousMark(ZLTextMark position) {
-		if ((position == null) || (myMarks == null)) {
+		final List<ZLTextMark> marks = myMarks;
+		if ((position == null) || (marks == null)) {
 			return null;
 		}
 
 		ZLTextMark mark = null;
-		for (ZLTextMark current : myMarks) {
+		for (ZLTextMark current : marks) {
 			if (current.compareTo(position) < 0) {
 				if ((mark == null) || (mark.compareTo(current) < 0)) {
 					mark = current;
@@ -371,45 +382,292 @@ public class ZLTextPlainModel implements ZLTextModel, ZLTextStyleEntry.Feature {
 	}
 
 	public final int search(final String text, int startIndex, int endIndex, boolean ignoreCase) {
-		int count = 0;
-		ZLSearchPattern pattern = new ZLSearchPattern(text, ignoreCase);
-		myMarks = new ArrayList<ZLTextMark>();
+		final int generation = mySearchGeneration.incrementAndGet();
+		final ZLSearchPattern pattern = new ZLSearchPattern(text, ignoreCase);
 		if (startIndex > myParagraphsNumber) {
 			startIndex = myParagraphsNumber;
 		}
 		if (endIndex > myParagraphsNumber) {
 			endIndex = myParagraphsNumber;
 		}
-		int index = startIndex;
-		final EntryIteratorImpl it = new EntryIteratorImpl(index);
-		while (true) {
-			int offset = 0;
-			while (it.next()) {
-				if (it.getType() == ZLTextParagraph.Entry.TEXT) {
-					char[] textData = it.getTextData();
-					int textOffset = it.getTextOffset();
-					int textLength = it.getTextLength();
-					for (ZLSearchUtil.Result res = ZLSearchUtil.find(textData, textOffset, textLength, pattern); res != null;
-						res = ZLSearchUtil.find(textData, textOffset, textLength, pattern, res.Start + 1)) {
-						myMarks.add(new ZLTextMark(index, offset + res.Start, res.Length));
-						++count;
+		final ZLTextSearchIndex index = searchIndex();
+		final int[] chunks = index != null ? index.findChunks(text) : null;
+		final ArrayList<ZLTextMark> marks = new ArrayList<ZLTextMark>();
+		final int count = searchInRange(
+			new EntryIteratorImpl(startIndex), pattern, chunks, startIndex, endIndex, marks
+		);
+		synchronized (this) {
+			if (generation == mySearchGeneration.get()) {
+				myMarks = marks;
+			}
+		}
+		return count;
+	}
+
+	private static final int SEARCH_RANGE_SIZE = 128;
+
+	private static class SearchThreadFactory implements ThreadFactory {
+		private final ThreadFactory myDefaultThreadFactory = Executors.defaultThreadFactory();
+
+		public Thread newThread(Runnable r) {
+			final Thread th = myDefaultThreadFactory.newThread(r);
+			th.setDaemon(true);
+			return th;
+		}
+	}
+
+	private static volatile ExecutorService ourSearchPool;
+
+	private static ExecutorService searchPool() {
+		if (ourSearchPool == null) {
+			synchronized (ZLTextPlainModel.class) {
+				if (ourSearchPool == null) {
+					ourSearchPool = Executors.newFixedThreadPool(
+						Math.max(Runtime.getRuntime().availableProcessors(), 1),
+						new SearchThreadFactory()
+					);
+				}
+			}
+		}
+		return ourSearchPool;
+	}
+
+	public final void search(final String text, int startIndex, int endIndex, int nearIndex, boolean ignoreCase, final SearchListener listener) {
+		final int generation;
+		synchronized (this) {
+			generation = mySearchGeneration.incrementAndGet();
+			myMarks = new ArrayList<ZLTextMark>();
+		}
+		final ZLSearchPattern pattern = new ZLSearchPattern(text, ignoreCase);
+		if (startIndex > myParagraphsNumber) {
+			startIndex = myParagraphsNumber;
+		}
+		if (endIndex > myParagraphsNumber) {
+			endIndex = myParagraphsNumber;
+		}
+		nearIndex = Math.max(startIndex, Math.min(nearIndex, endIndex - 1));
+
+		final ZLTextSearchIndex index = searchIndex();
+		final int[] chunks = index != null ? index.findChunks(text) : null;
+
+		// ranges are scanned (and merged into the mark list) starting from
+		// the one containing nearIndex up to the end, then from the start
+		final ArrayList<int[]> ranges = new ArrayList<int[]>();
+		final int nearStart = nearIndex - (nearIndex - startIndex) % SEARCH_RANGE_SIZE;
+		for (int start = nearStart; start < endIndex; start += SEARCH_RANGE_SIZE) {
+			ranges.add(new int[] { start, Math.min(start + SEARCH_RANGE_SIZE, endIndex) });
+		}
+		for (int start = startIndex; start < nearStart; start += SEARCH_RANGE_SIZE) {
+			ranges.add(new int[] { start, Math.min(start + SEARCH_RANGE_SIZE, nearStart) });
+		}
+		if (ranges.isEmpty()) {
+			listener.onSearchFinished(0);
+			return;
+		}
+
+		final SearchMerger merger = new SearchMerger(generation, ranges.size(), ranges.get(0)[0]);
+		for (int i = 0; i < ranges.size(); ++i) {
+			final int number = i;
+			final int[] range = ranges.get(i);
+			searchPool().execute(new Runnable() {
+				public void run() {
+					List<ZLTextMark> found = Collections.emptyList();
+					if (generation == mySearchGeneration.get()) {
+						final ArrayList<ZLTextMark> marks = new ArrayList<ZLTextMark>();
+						searchInRange(
+							new EntryIteratorImpl(range[0]), pattern, chunks, range[0], range[1], marks
+						);
+						found = marks;
+					}
+					final List<ZLTextMark> merged = merger.add(number, found);
+					if (merged != null) {
+						listener.onMarksFound(merged);
+					}
+					if (merger.takeFinished()) {
+						listener.onSearchFinished(merger.count());
 					}
-					offset += textLength;
 				}
+			});
+		}
+	}
+
+	private final class SearchMerger {
+		private final int myGeneration;
+		private final ArrayList<List<ZLTextMark>> myResults;
+		private final int myWrapIndex;
+		private int myNextToMerge;
+		private int myDone;
+		private boolean myFinishReported;
+		private int myCount;
+
+		SearchMerger(int generation, int rangesNumber, int wrapParagraph) {
+			myGeneration = generation;
+			myResults = new ArrayList<List<ZLTextMark>>(Collections.<List<ZLTextMark>>nCopies(rangesNumber, null));
+			myWrapIndex = wrapParagraph;
+		}
+
+		// returns marks that became visible in the model, or null if there are no such marks
+		List<ZLTextMark> add(int number, List<ZLTextMark> marks) {
+			synchronized (ZLTextPlainModel.this) {
+				++myDone;
+				myResults.set(number, marks);
+				if (myGeneration != mySearchGeneration.get()) {
+					return null;
+				}
+				final ArrayList<ZLTextMark> merged = new ArrayList<ZLTextMark>();
+				for (; myNextToMerge < myResults.size() && myResults.get(myNextToMerge) != null; ++myNextToMerge) {
+					merged.addAll(myResults.get(myNextToMerge));
+					myResults.set(myNextToMerge, null);
+				}
+				if (merged.isEmpty()) {
+					return null;
+				}
+				myCount += merged.size();
+
+				final List<ZLTextMark> old = myMarks;
+				if (old == null) {
+					return null;
+				}
+				// both lists consist of the marks after the wrap point followed by
+				// the marks before it; the model list must be sorted by position
+				int oldSplit = 0;
+				while (oldSplit < old.size() && old.get(oldSplit).ParagraphIndex < myWrapIndex) {
+					++oldSplit;
+				}
+				int mergedSplit = 0;
+				while (mergedSplit < merged.size() && merged.get(mergedSplit).ParagraphIndex >= myWrapIndex) {
+					++mergedSplit;
+				}
+				final ArrayList<ZLTextMark> all =
+					new ArrayList<ZLTextMark>(old.size() + merged.size());
+				all.addAll(old.subList(0, oldSplit));
+				all.addAll(merged.subList(mergedSplit, merged.size()));
+				all.addAll(old.subList(oldSplit, old.size()));
+				all.addAll(merged.subList(0, mergedSplit));
+				myMarks = all;
+				return merged;
 			}
-			if (++index >= endIndex) {
+		}
+
+		// returns true exactly once, when all the ranges are scanned
+		boolean takeFinished() {
+			synchronized (ZLTextPlainModel.this) {
+				if (myFinishReported || myDone < myResults.size()) {
+					return false;
+				}
+				myFinishReported = true;
+				return myGeneration == mySearchGeneration.get();
+			}
+		}
+
+		int count() {
+			synchronized (ZLTextPlainModel.this) {
+				return myCount;
+			}
+		}
+	}
+
+	private int searchInRange(EntryIteratorImpl it, ZLSearchPattern pattern, int[] chunks, int startIndex, int endIndex, List<ZLTextMark> marks) {
+		final MarkCollector collector = new MarkCollector(marks);
+		int count = 0;
+		if (chunks == null) {
+			for (int i = startIndex; i < endIndex; ++i) {
+				count += searchInParagraph(it, i, pattern, collector);
+			}
+			return count;
+		}
+
+		int first = Arrays.binarySearch(chunks, startIndex / ZLTextSearchIndex.CHUNK_SIZE);
+		if (first < 0) {
+			first = -first - 1;
+		}
+		for (int c = first; c < chunks.length; ++c) {
+			final int chunkStart = chunks[c] * ZLTextSearchIndex.CHUNK_SIZE;
+			if (chunkStart >= endIndex) {
 				break;
 			}
-			it.reset(index);
+			final int start = Math.max(startIndex, chunkStart);
+			final int end = Math.min(endIndex, chunkStart + ZLTextSearchIndex.CHUNK_SIZE);
+			for (int i = start; i < end; ++i) {
+				count += searchInParagraph(it, i, pattern, collector);
+			}
+		}
+		return count;
+	}
+
+	private static final class MarkCollector implements ZLSearchUtil.Listener {
+		private final List<ZLTextMark> myMarks;
+		int ParagraphIndex;
+		int Offset;
+
+		MarkCollector(List<ZLTextMark> marks) {
+			myMarks = marks;
+		}
+
+		public boolean onMatch(int start, int length) {
+			myMarks.add(new ZLTextMark(ParagraphIndex, Offset + start, length));
+			return true;
+		}
+	}
+
+	private int searchInParagraph(EntryIteratorImpl it, int index, ZLSearchPattern pattern, MarkCollector collector) {
+		int count = 0;
+		collector.ParagraphIndex = index;
+		collector.Offset = 0;
+		it.reset(index);
+		while (it.next()) {
+			if (it.getType() == ZLTextParagraph.Entry.TEXT) {
+				final int textLength = it.getTextLength();
+				count += ZLSearchUtil.findAll(it.getTextData(), it.getTextOffset(), textLength, pattern, collector);
+				collector.Offset += textLength;
+			}
 		}
 		return count;
 	}
 
+	/**
+	 * Enables the trigram search index for this model.  The index is loaded
+	 * from (or, if it is missing or outdated, built and saved to) the given file
+	 * in a background thread, when the model is searched for the first time;
+	 * until then search() falls back to the linear scan.
+	 */
+	public final void enableSearchIndex(String fileName) {
+		mySearchIndexFileName = fileName;
+	}
+
+	private ZLTextSearchIndex searchIndex() {
+		final ZLTextSearchIndex index = mySearchIndex;
+		if (index != null || mySearchIndexFileName == null) {
+			return index;
+		}
+		synchronized (this) {
+			if (!mySearchIndexRequested) {
+				mySearchIndexRequested = true;
+				final String fileName = mySearchIndexFileName;
+				final Thread builder = new Thread("ZLTextSearchIndex") {
+					public void run() {
+						ZLTextSearchIndex index = ZLTextSearchIndex.load(fileName, ZLTextPlainModel.this);
+						if (index == null) {
+							index = ZLTextSearchIndex.build(ZLTextPlainModel.this);
+							index.save(fileName);
+						}
+						mySearchIndex = index;
+					}
+				};
+				builder.setPriority(Thread.MIN_PRIORITY);
+				builder.start();
+			}
+		}
+		return null;
+	}
+
 	public final List<ZLTextMark> getMarks() {
-		return myMarks != null ? myMarks : Collections.<ZLTextMark>emptyList();
+		final List<ZLTextMark> marks = myMarks;
+		return marks != null ? marks : Collections.<ZLTextMark>emptyList();
 	}
 
-	public final void removeAllMarks() {
+	public final synchronized void removeAllMarks() {
+		mySearchGeneration.incrementAndGet();
 		myMarks = null;
 	}
 
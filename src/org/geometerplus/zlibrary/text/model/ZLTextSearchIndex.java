@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.model;
+
+import java.io.*;
+import java.util.Arrays;
+
+import org.geometerplus.zlibrary.core.util.ZLArrayUtils;
+
+/**
+ * Inverted trigram index over the text entries of a plain model.
+ * For every (case folded) trigram it keeps a list of paragraph chunks
+ * containing it; a search pattern is answered by intersecting the lists
+ * of all its trigrams, and the candidate chunks are then verified by
+ * an ordinary scan.  Lists are stored as varint-encoded deltas.
+ */
+final class ZLTextSearchIndex {
+	private static final int VERSION = 1;
+
+	static final int GRAM_LENGTH = 3;
+	static final int CHUNK_SIZE = 8;
+
+	private final int myParagraphsNumber;
+	private final int myTextLength;
+
+	private long[] myKeys;
+	// 0 means empty slot, otherwise index of posting list + 1
+	private int[] mySlots;
+	private int myGramsNumber;
+
+	private byte[][] myPostings = new byte[1024][];
+	private int[] myPostingLengths = new int[1024];
+	private int[] myPostingCounts = new int[1024];
+	private int[] myLastChunks = new int[1024];
+
+	private ZLTextSearchIndex(int paragraphsNumber, int textLength, int capacity) {
+		myParagraphsNumber = paragraphsNumber;
+		myTextLength = textLength;
+		int size = 1024;
+		while (size < capacity * 2) {
+			size <<= 1;
+		}
+		myKeys = new long[size];
+		mySlots = new int[size];
+	}
+
+	static char fold(char ch) {
+		return Character.toLowerCase(Character.toUpperCase(ch));
+	}
+
+	private static int hash(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int)(key ^ (key >>> 32));
+	}
+
+	private int find(long key) {
+		final int mask = mySlots.length - 1;
+		for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+			final int slot = mySlots[i];
+			if (slot == 0) {
+				return -i - 1;
+			}
+			if (myKeys[i] == key) {
+				return slot - 1;
+			}
+		}
+	}
+
+	private void rehash() {
+		final long[] oldKeys = myKeys;
+		final int[] oldSlots = mySlots;
+		myKeys = new long[oldKeys.length * 2];
+		mySlots = new int[oldSlots.length * 2];
+		for (int i = 0; i < oldSlots.length; ++i) {
+			if (oldSlots[i] != 0) {
+				final int pos = -find(oldKeys[i]) - 1;
+				myKeys[pos] = oldKeys[i];
+				mySlots[pos] = oldSlots[i];
+			}
+		}
+	}
+
+	private int createPosting(long key, int pos) {
+		final int index = myGramsNumber++;
+		if (index == myPostings.length) {
+			final int length = myPostings.length;
+			final byte[][] postings = new byte[length << 1][];
+			System.arraycopy(myPostings, 0, postings, 0, length);
+			myPostings = postings;
+			myPostingLengths = ZLArrayUtils.createCopy(myPostingLengths, length, length << 1);
+			myPostingCounts = ZLArrayUtils.createCopy(myPostingCounts, length, length << 1);
+			myLastChunks = ZLArrayUtils.createCopy(myLastChunks, length, length << 1);
+		}
+		myPostings[index] = new byte[8];
+		myLastChunks[index] = -1;
+		myKeys[pos] = key;
+		mySlots[pos] = index + 1;
+		if (myGramsNumber * 2 > mySlots.length) {
+			rehash();
+		}
+		return index;
+	}
+
+	private void appendVarInt(int index, int value) {
+		byte[] data = myPostings[index];
+		int length = myPostingLengths[index];
+		if (length + 5 > data.length) {
+			data = ZLArrayUtils.createCopy(data, length, data.length << 1);
+			myPostings[index] = data;
+		}
+		while ((value & ~0x7F) != 0) {
+			data[length++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data[length++] = (byte)value;
+		myPostingLengths[index] = length;
+	}
+
+	private void addGram(long key, int chunk) {
+		int index = find(key);
+		if (index < 0) {
+			index = createPosting(key, -index - 1);
+		}
+		final int last = myLastChunks[index];
+		if (last != chunk) {
+			appendVarInt(index, last == -1 ? chunk : chunk - last);
+			myLastChunks[index] = chunk;
+			++myPostingCounts[index];
+		}
+	}
+
+	private int[] decode(int index) {
+		final byte[] data = myPostings[index];
+		final int length = myPostingLengths[index];
+		final int[] chunks = new int[myPostingCounts[index]];
+		int count = 0;
+		int value = 0;
+		for (int i = 0; i < length; ) {
+			int delta = 0;
+			for (int shift = 0; ; shift += 7) {
+				final byte b = data[i++];
+				delta |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+			}
+			value = count == 0 ? delta : value + delta;
+			chunks[count++] = value;
+		}
+		return chunks;
+	}
+
+	boolean isValidFor(ZLTextPlainModel model) {
+		final int paragraphsNumber = model.getParagraphsNumber();
+		return
+			paragraphsNumber == myParagraphsNumber &&
+			model.getTextLength(paragraphsNumber - 1) == myTextLength;
+	}
+
+	/**
+	 * @return sorted indices of the chunks that may contain the pattern,
+	 *         or null if the index cannot help (pattern is too short)
+	 */
+	int[] findChunks(String pattern) {
+		pattern = pattern.replace("\u200b", "");
+		if (pattern.length() < GRAM_LENGTH ||
+			pattern.toUpperCase().length() != pattern.length() ||
+			pattern.toLowerCase().length() != pattern.length()) {
+			return null;
+		}
+
+		final int gramsNumber = pattern.length() - GRAM_LENGTH + 1;
+		final int[] postings = new int[gramsNumber];
+		for (int i = 0; i < gramsNumber; ++i) {
+			final long key =
+				((long)fold(pattern.charAt(i)) << 32) |
+				((long)fold(pattern.charAt(i + 1)) << 16) |
+				(long)fold(pattern.charAt(i + 2));
+			final int index = find(key);
+			if (index < 0) {
+				return new int[0];
+			}
+			postings[i] = index;
+		}
+
+		int shortest = 0;
+		for (int i = 1; i < gramsNumber; ++i) {
+			if (myPostingCounts[postings[i]] < myPostingCounts[postings[shortest]]) {
+				shortest = i;
+			}
+		}
+		int[] result = decode(postings[shortest]);
+		int resultLength = result.length;
+		for (int i = 0; i < gramsNumber && resultLength > 0; ++i) {
+			if (i == shortest) {
+				continue;
+			}
+			final int[] other = decode(postings[i]);
+			int count = 0;
+			for (int j = 0; j < resultLength; ++j) {
+				if (Arrays.binarySearch(other, result[j]) >= 0) {
+					result[count++] = result[j];
+				}
+			}
+			resultLength = count;
+		}
+		return ZLArrayUtils.createCopy(result, resultLength, resultLength);
+	}
+
+	static ZLTextSearchIndex build(ZLTextPlainModel model) {
+		final int paragraphsNumber = model.getParagraphsNumber();
+		final ZLTextSearchIndex index = new ZLTextSearchIndex(
+			paragraphsNumber,
+			paragraphsNumber > 0 ? model.getTextLength(paragraphsNumber - 1) : 0,
+			4096
+		);
+		if (paragraphsNumber == 0) {
+			return index;
+		}
+
+		final ZLTextPlainModel.EntryIteratorImpl it = model.new EntryIteratorImpl(0);
+		for (int p = 0; p < paragraphsNumber; ++p) {
+			final int chunk = p / CHUNK_SIZE;
+			it.reset(p);
+			while (it.next()) {
+				if (it.getType() != ZLTextParagraph.Entry.TEXT) {
+					continue;
+				}
+				final char[] data = it.getTextData();
+				final int end = it.getTextOffset() + it.getTextLength();
+				long key = 0;
+				int collected = 0;
+				for (int i = it.getTextOffset(); i < end; ++i) {
+					final char ch = data[i];
+					if (ch == '\u200b') {
+						continue;
+					}
+					key = ((key << 16) | fold(ch)) & 0xFFFFFFFFFFFFL;
+					if (++collected >= GRAM_LENGTH) {
+						index.addGram(key, chunk);
+					}
+				}
+			}
+		}
+		return index;
+	}
+
+	void save(String fileName) {
+		final File file = new File(fileName);
+		final File tmp = new File(fileName + ".tmp");
+		DataOutputStream stream = null;
+		try {
+			stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			stream.writeInt(VERSION);
+			stream.writeInt(GRAM_LENGTH);
+			stream.writeInt(CHUNK_SIZE);
+			stream.writeInt(myParagraphsNumber);
+			stream.writeInt(myTextLength);
+			stream.writeInt(myGramsNumber);
+			for (int i = 0; i < mySlots.length; ++i) {
+				final int slot = mySlots[i];
+				if (slot == 0) {
+					continue;
+				}
+				stream.writeLong(myKeys[i]);
+				stream.writeInt(myPostingCounts[slot - 1]);
+				stream.writeInt(myPostingLengths[slot - 1]);
+				stream.write(myPostings[slot - 1], 0, myPostingLengths[slot - 1]);
+			}
+			stream.close();
+			stream = null;
+			if (!tmp.renameTo(file)) {
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			tmp.delete();
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	static ZLTextSearchIndex load(String fileName, ZLTextPlainModel model) {
+		final File file = new File(fileName);
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream stream = null;
+		try {
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (stream.readInt() != VERSION ||
+				stream.readInt() != GRAM_LENGTH ||
+				stream.readInt() != CHUNK_SIZE) {
+				return null;
+			}
+			final int paragraphsNumber = stream.readInt();
+			final int textLength = stream.readInt();
+			final int gramsNumber = stream.readInt();
+			final ZLTextSearchIndex index =
+				new ZLTextSearchIndex(paragraphsNumber, textLength, gramsNumber);
+			if (!index.isValidFor(model)) {
+				return null;
+			}
+			for (int i = 0; i < gramsNumber; ++i) {
+				final long key = stream.readLong();
+				final int count = stream.readInt();
+				final int length = stream.readInt();
+				final int posting = index.createPosting(key, -index.find(key) - 1);
+				final byte[] data = new byte[length];
+				stream.readFully(data);
+				index.myPostings[posting] = data;
+				index.myPostingLengths[posting] = length;
+				index.myPostingCounts[posting] = count;
+			}
+			return index;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+}
@@ -76,6 +76,20 @@ public abstract class ZLTextStyleEntry {
 			Unit = unit;
 		}
 
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Length)) {
+				return false;
+			}
+			final Length l = (Length)o;
+			return Size == l.Size && Unit == l.Unit;
+		}
+
+		@Override
+		public int hashCode() {
+			return Size * 8 + Unit;
+		}
+
 		@Override
 		public String toString() {
 			return Size + "." + Unit;
@@ -200,6 +214,47 @@ public abstract class ZLTextStyleEntry {
 		return myVerticalAlignCode;
 	}
 
+	// entries are compared by value, so equal entries decoded from different
+	// paragraphs can share text styles; an entry must not be changed after
+	// it has been used as a style key
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (o == null || o.getClass() != getClass()) {
+			return false;
+		}
+		final ZLTextStyleEntry entry = (ZLTextStyleEntry)o;
+		if (Depth != entry.Depth || myFeatureMask != entry.myFeatureMask) {
+			return false;
+		}
+		for (int i = 0; i < Feature.NUMBER_OF_LENGTHS; ++i) {
+			if (isFeatureSupported(i) && !myLengths[i].equals(entry.myLengths[i])) {
+				return false;
+			}
+		}
+		return
+			myAlignmentType == entry.myAlignmentType &&
+			mySupportedFontModifiers == entry.mySupportedFontModifiers &&
+			myFontModifiers == entry.myFontModifiers &&
+			myVerticalAlignCode == entry.myVerticalAlignCode &&
+			(myFontEntries == null
+				? entry.myFontEntries == null
+				: myFontEntries.equals(entry.myFontEntries));
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = Depth * 31 + myFeatureMask;
+		for (int i = 0; i < Feature.NUMBER_OF_LENGTHS; ++i) {
+			if (isFeatureSupported(i)) {
+				hash = hash * 31 + myLengths[i].hashCode();
+			}
+		}
+		return hash * 31 + myFontModifiers + 7 * myAlignmentType;
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder buffer = new StringBuilder("StyleEntry[");
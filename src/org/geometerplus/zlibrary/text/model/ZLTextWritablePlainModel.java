@@ -19,6 +19,8 @@
 
 package org.geometerplus.zlibrary.text.model;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Map;
 
 import org.geometerplus.zlibrary.core.fonts.FontManager;
@@ -30,17 +32,47 @@ public final class ZLTextWritablePlainModel extends ZLTextPlainModel implements
 	private int myBlockOffset;
 
 	public ZLTextWritablePlainModel(String id, String language, int arraySize, int dataBlockSize, String directoryName, String extension, Map<String,ZLImage> imageMap, FontManager fontManager) {
+		this(
+			id, language, arraySize, dataBlockSize, directoryName, extension,
+			CharStorage.Kind.CACHED, imageMap, fontManager
+		);
+	}
+
+	public ZLTextWritablePlainModel(String id, String language, int arraySize, int dataBlockSize, String directoryName, String extension, CharStorage.Kind storageKind, Map<String,ZLImage> imageMap, FontManager fontManager) {
+		this(
+			id, language, arraySize,
+			createStorage(dataBlockSize, directoryName, extension, storageKind),
+			imageMap, fontManager
+		);
+	}
+
+	public ZLTextWritablePlainModel(String id, String language, int arraySize, CharStorage storage, Map<String,ZLImage> imageMap, FontManager fontManager) {
 		super(
 			id, language,
 			new int[arraySize], new int[arraySize],
 			new int[arraySize], new int[arraySize],
 			new byte[arraySize],
-			new CachedCharStorage(dataBlockSize, directoryName, extension),
+			storage,
 			imageMap,
 			fontManager
 		);
 	}
 
+	private static CharStorage createStorage(int dataBlockSize, String directoryName, String extension, CharStorage.Kind kind) {
+		switch (kind) {
+			default:
+			case CACHED:
+				return new CachedCharStorage(dataBlockSize, directoryName, extension);
+			case MAPPED:
+			case MAPPED_COMPRESSED:
+				return new MappedCharStorage(
+					dataBlockSize, directoryName, extension,
+					kind == CharStorage.Kind.MAPPED_COMPRESSED,
+					MappedCharStorageBase.DEFAULT_STRONG_CACHE_SIZE
+				);
+		}
+	}
+
 	private void extend() {
 		final int size = myStartEntryIndices.length;
 		myStartEntryIndices = ZLArrayUtils.createCopy(myStartEntryIndices, size, size << 1);
@@ -170,6 +202,15 @@ public final class ZLTextWritablePlainModel extends ZLTextPlainModel implements
 	}
 
 	public void stopReading() {
+		if (myStorage instanceof Closeable) {
+			if (myCurrentDataBlock != null) {
+				myStorage.freezeLastBlock();
+			}
+			try {
+				((Closeable)myStorage).close();
+			} catch (IOException e) {
+			}
+		}
 		/*
 		if (myCurrentDataBlock != null) {
 			myStorage.freezeLastBlock();
@@ -40,6 +40,8 @@ final class ZLTextLineInfo {
 	boolean PreviousInfoUsed;
 	int SpaceCounter;
 	ZLTextStyle StartStyle;
+	// the style before the style change elements the first line starts with
+	final ZLTextStyle InitialStyle;
 
 	ZLTextLineInfo(ZLTextParagraphCursor paragraphCursor, int elementIndex, int charIndex, ZLTextStyle style) {
 		ParagraphCursor = paragraphCursor;
@@ -53,17 +55,47 @@ final class ZLTextLineInfo {
 		EndCharIndex = charIndex;
 
 		StartStyle = style;
+		InitialStyle = style;
+	}
+
+	private ZLTextLineInfo(ZLTextLineInfo info) {
+		ParagraphCursor = info.ParagraphCursor;
+		ParagraphCursorLength = info.ParagraphCursorLength;
+
+		StartElementIndex = info.StartElementIndex;
+		StartCharIndex = info.StartCharIndex;
+		RealStartElementIndex = info.RealStartElementIndex;
+		RealStartCharIndex = info.RealStartCharIndex;
+		EndElementIndex = info.EndElementIndex;
+		EndCharIndex = info.EndCharIndex;
+
+		IsVisible = info.IsVisible;
+		LeftIndent = info.LeftIndent;
+		Width = info.Width;
+		Height = info.Height;
+		Descent = info.Descent;
+		VSpaceBefore = info.VSpaceBefore;
+		VSpaceAfter = info.VSpaceAfter;
+		PreviousInfoUsed = info.PreviousInfoUsed;
+		SpaceCounter = info.SpaceCounter;
+		StartStyle = info.StartStyle;
+		InitialStyle = info.InitialStyle;
 	}
 
 	boolean isEndOfParagraph() {
 		return EndElementIndex == ParagraphCursorLength;
 	}
 
-	void adjust(ZLTextLineInfo previous) {
-		if (!PreviousInfoUsed && previous != null) {
-			Height -= Math.min(previous.VSpaceAfter, VSpaceBefore);
-			PreviousInfoUsed = true;
+	// returns the line adjusted to the previous one; a line can be shared
+	// by the line cache and several pages, so it is never changed in place
+	ZLTextLineInfo adjust(ZLTextLineInfo previous) {
+		if (PreviousInfoUsed || previous == null) {
+			return this;
 		}
+		final ZLTextLineInfo info = new ZLTextLineInfo(this);
+		info.Height -= Math.min(previous.VSpaceAfter, VSpaceBefore);
+		info.PreviousInfoUsed = true;
+		return info;
 	}
 
 	@Override
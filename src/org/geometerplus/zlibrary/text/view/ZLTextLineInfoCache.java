@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.util.*;
+
+import org.geometerplus.zlibrary.text.model.ZLTextMetrics;
+import org.geometerplus.zlibrary.text.model.ZLTextModel;
+
+/**
+ * Bounded cache of laid out text lines. Lines are keyed by their start position,
+ * by the text style the line starts with and by the layout parameters (text width
+ * and metrics). Every line keeps its paragraph cursor, so the memory bound counts
+ * the elements of each distinct cursor the cached lines hold. When the cache is full,
+ * lines that are far from the current page are evicted first.
+ * Cached lines are shared with the pages, so they are never changed after
+ * the layout; ZLTextLineInfo.adjust() makes a copy.
+ */
+final class ZLTextLineInfoCache {
+	// rough size of a line info with its key and map entry, in bytes
+	private static final int ENTRY_SIZE = 200;
+	// rough size of a paragraph cursor and of each of its elements, in bytes
+	private static final int CURSOR_SIZE = 100;
+	private static final int ELEMENT_SIZE = 48;
+	private static final int MAX_MEMORY = 512 * 1024;
+
+	private static final class Key {
+		final ZLTextModel Model;
+		final int ParagraphIndex;
+		final int ElementIndex;
+		final int CharIndex;
+		final ZLTextStyle Style;
+		final int Width;
+		final ZLTextMetrics Metrics;
+
+		Key(ZLTextParagraphCursor cursor, int elementIndex, int charIndex, ZLTextStyle style, int width, ZLTextMetrics metrics) {
+			Model = cursor.Model;
+			ParagraphIndex = cursor.Index;
+			ElementIndex = elementIndex;
+			CharIndex = charIndex;
+			Style = style;
+			Width = width;
+			Metrics = metrics;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			final Key k = (Key)o;
+			return
+				Model == k.Model &&
+				ParagraphIndex == k.ParagraphIndex &&
+				ElementIndex == k.ElementIndex &&
+				CharIndex == k.CharIndex &&
+				// styles come from the view's style cache, so equal styles are the same object
+				Style == k.Style &&
+				Width == k.Width &&
+				Metrics.equals(k.Metrics);
+		}
+
+		@Override
+		public int hashCode() {
+			return ParagraphIndex + 31 * (ElementIndex + 239 * CharIndex) + 17 * Width;
+		}
+	}
+
+	private final HashMap<Key,ZLTextLineInfo> myInfos = new HashMap<Key,ZLTextLineInfo>();
+	// number of cached lines holding each paragraph cursor
+	private final IdentityHashMap<ZLTextParagraphCursor,Integer> myCursors =
+		new IdentityHashMap<ZLTextParagraphCursor,Integer>();
+	private int myMemory;
+
+	private ZLTextModel myCurrentModel;
+	private int myCurrentParagraph;
+	private int myCurrentWidth;
+	private ZLTextMetrics myCurrentMetrics;
+
+	private int myHits;
+	private int myMisses;
+	private int myEvictions;
+
+	synchronized ZLTextLineInfo get(ZLTextParagraphCursor cursor, int elementIndex, int charIndex, ZLTextStyle style, int width, ZLTextMetrics metrics) {
+		final ZLTextLineInfo info = myInfos.get(new Key(cursor, elementIndex, charIndex, style, width, metrics));
+		if (info != null) {
+			++myHits;
+		} else {
+			++myMisses;
+		}
+		return info;
+	}
+
+	synchronized void put(ZLTextLineInfo info, int width, ZLTextMetrics metrics) {
+		final ZLTextLineInfo old = myInfos.put(new Key(
+			info.ParagraphCursor, info.StartElementIndex, info.StartCharIndex, info.InitialStyle, width, metrics
+		), info);
+		if (old != null) {
+			release(old.ParagraphCursor);
+		}
+		retain(info.ParagraphCursor);
+		myCurrentWidth = width;
+		myCurrentMetrics = metrics;
+		if (myMemory > MAX_MEMORY) {
+			evict();
+		}
+	}
+
+	// the position eviction distances are counted from
+	synchronized void setCurrentPosition(ZLTextModel model, int paragraphIndex) {
+		myCurrentModel = model;
+		myCurrentParagraph = paragraphIndex;
+	}
+
+	synchronized void clear() {
+		myInfos.clear();
+		myCursors.clear();
+		myMemory = 0;
+	}
+
+	private void retain(ZLTextParagraphCursor cursor) {
+		final Integer count = myCursors.get(cursor);
+		if (count == null) {
+			myCursors.put(cursor, 1);
+			myMemory += CURSOR_SIZE + ELEMENT_SIZE * cursor.getParagraphLength();
+		} else {
+			myCursors.put(cursor, count + 1);
+		}
+		myMemory += ENTRY_SIZE;
+	}
+
+	private void release(ZLTextParagraphCursor cursor) {
+		final Integer count = myCursors.get(cursor);
+		if (count == 1) {
+			myCursors.remove(cursor);
+			myMemory -= CURSOR_SIZE + ELEMENT_SIZE * cursor.getParagraphLength();
+		} else {
+			myCursors.put(cursor, count - 1);
+		}
+		myMemory -= ENTRY_SIZE;
+	}
+
+	// removes the most distant entries until a quarter of memory is free;
+	// lines of the current paragraph are kept, the view holds their cursor anyway
+	private void evict() {
+		final ArrayList<Map.Entry<Key,ZLTextLineInfo>> entries =
+			new ArrayList<Map.Entry<Key,ZLTextLineInfo>>(myInfos.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<Key,ZLTextLineInfo>>() {
+			public int compare(Map.Entry<Key,ZLTextLineInfo> e0, Map.Entry<Key,ZLTextLineInfo> e1) {
+				final long d0 = distance(e0.getKey());
+				final long d1 = distance(e1.getKey());
+				return d0 < d1 ? 1 : (d0 == d1 ? 0 : -1);
+			}
+		});
+		for (Map.Entry<Key,ZLTextLineInfo> e : entries) {
+			if (myMemory <= MAX_MEMORY * 3 / 4 || distance(e.getKey()) == 0) {
+				break;
+			}
+			myInfos.remove(e.getKey());
+			release(e.getValue().ParagraphCursor);
+			++myEvictions;
+		}
+	}
+
+	// lines laid out for other model or other parameters go first
+	private long distance(Key key) {
+		if (key.Model != myCurrentModel ||
+			key.Width != myCurrentWidth ||
+			!key.Metrics.equals(myCurrentMetrics)) {
+			return Long.MAX_VALUE;
+		}
+		return Math.abs(key.ParagraphIndex - myCurrentParagraph);
+	}
+
+	synchronized int size() {
+		return myInfos.size();
+	}
+
+	// lines and the paragraph cursors they hold
+	synchronized int approximateMemory() {
+		return myMemory;
+	}
+
+	synchronized int paragraphs() {
+		return myCursors.size();
+	}
+
+	synchronized int hits() {
+		return myHits;
+	}
+
+	synchronized int misses() {
+		return myMisses;
+	}
+
+	synchronized int evictions() {
+		return myEvictions;
+	}
+}
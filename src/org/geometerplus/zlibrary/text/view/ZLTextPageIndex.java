@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.io.*;
+
+/**
+ * Start positions of all pages of a text laid out for a given configuration
+ * (see ZLTextView.paginationKey()). Positions are kept in parallel int arrays
+ * in text order, so both page-by-position and position-by-page are simple
+ * lookups. An index may be incomplete while the pagination is in progress.
+ */
+public final class ZLTextPageIndex {
+	private static final int VERSION = 1;
+
+	public final String Key;
+
+	private int[] myParagraphs = new int[256];
+	private int[] myElements = new int[256];
+	private int[] myChars = new int[256];
+	private int mySize;
+	private volatile boolean myIsComplete;
+
+	ZLTextPageIndex(String key) {
+		Key = key;
+	}
+
+	synchronized void add(ZLTextPosition position) {
+		if (mySize == myParagraphs.length) {
+			final int newLength = mySize * 2;
+			myParagraphs = copyOf(myParagraphs, newLength);
+			myElements = copyOf(myElements, newLength);
+			myChars = copyOf(myChars, newLength);
+		}
+		myParagraphs[mySize] = position.getParagraphIndex();
+		myElements[mySize] = position.getElementIndex();
+		myChars[mySize] = position.getCharIndex();
+		++mySize;
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		final int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	void setComplete() {
+		myIsComplete = true;
+	}
+
+	public boolean isComplete() {
+		return myIsComplete;
+	}
+
+	public synchronized int size() {
+		return mySize;
+	}
+
+	synchronized ZLTextFixedPosition last() {
+		return mySize > 0 ? getPageStart(mySize) : null;
+	}
+
+	/**
+	 * @return start of the page with the given number (1-based, clamped to the index bounds),
+	 *         or null for an empty index
+	 */
+	public synchronized ZLTextFixedPosition getPageStart(int pageNumber) {
+		if (mySize == 0) {
+			return null;
+		}
+		final int i = Math.max(0, Math.min(pageNumber, mySize) - 1);
+		return new ZLTextFixedPosition(myParagraphs[i], myElements[i], myChars[i]);
+	}
+
+	/**
+	 * @return number (1-based) of the page that contains the given position
+	 */
+	public synchronized int getPageNumber(ZLTextPosition position) {
+		final int paragraph = position.getParagraphIndex();
+		final int element = position.getElementIndex();
+		final int ch = position.getCharIndex();
+
+		// looking for the last page start that is not after the position
+		int low = 0;
+		int high = mySize - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			int diff = myParagraphs[middle] - paragraph;
+			if (diff == 0) {
+				diff = myElements[middle] - element;
+				if (diff == 0) {
+					diff = myChars[middle] - ch;
+				}
+			}
+			if (diff <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return Math.max(low, 1);
+	}
+
+	synchronized byte[] toByteArray() {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 * mySize + 16);
+		final DataOutputStream stream = new DataOutputStream(bytes);
+		try {
+			stream.writeInt(VERSION);
+			stream.writeUTF(Key);
+			stream.writeBoolean(myIsComplete);
+			stream.writeInt(mySize);
+			for (int i = 0; i < mySize; ++i) {
+				stream.writeInt(myParagraphs[i]);
+				stream.writeInt(myElements[i]);
+				stream.writeInt(myChars[i]);
+			}
+			stream.flush();
+		} catch (IOException e) {
+			// never happens for a byte array stream
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return index stored by toByteArray(), or null if the data are corrupted,
+	 *         or were computed for another configuration
+	 */
+	static ZLTextPageIndex fromByteArray(String key, byte[] data) {
+		if (data == null) {
+			return null;
+		}
+		final DataInputStream stream = new DataInputStream(new ByteArrayInputStream(data));
+		try {
+			if (stream.readInt() != VERSION || !key.equals(stream.readUTF())) {
+				return null;
+			}
+			final ZLTextPageIndex index = new ZLTextPageIndex(key);
+			final boolean isComplete = stream.readBoolean();
+			final int size = stream.readInt();
+			for (int i = 0; i < size; ++i) {
+				index.add(new ZLTextFixedPosition(stream.readInt(), stream.readInt(), stream.readInt()));
+			}
+			if (isComplete) {
+				index.setComplete();
+			}
+			return index;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
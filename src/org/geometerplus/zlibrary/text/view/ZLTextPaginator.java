@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.view;
+
+import org.geometerplus.zlibrary.text.model.ZLTextModel;
+
+/**
+ * Lays out the whole text page by page in background and records page starts
+ * into a ZLTextPageIndex. The view lock is taken for one page at a time and the
+ * thread sleeps at least as long as the page layout took, so the pagination
+ * never takes more than a half of a core from the foreground rendering.
+ * The index is loaded from (and periodically saved to) the view's storage,
+ * so an interrupted pagination resumes from the last known page.
+ */
+final class ZLTextPaginator extends Thread {
+	private static final int SAVE_PERIOD = 200;
+	private static final long MIN_PAUSE = 2;
+
+	private final ZLTextView myView;
+	private final ZLTextModel myModel;
+	private final String myKey;
+	private volatile ZLTextPageIndex myIndex;
+	private volatile boolean myIsCancelled;
+
+	ZLTextPaginator(ZLTextView view, ZLTextModel model, String key) {
+		myView = view;
+		myModel = model;
+		myKey = key;
+		setName("Text.paginator");
+		setPriority(MIN_PRIORITY);
+		setDaemon(true);
+	}
+
+	void cancel() {
+		myIsCancelled = true;
+		interrupt();
+	}
+
+	/**
+	 * @return the page index if the pagination is finished, null otherwise
+	 */
+	ZLTextPageIndex getCompleteIndex() {
+		final ZLTextPageIndex index = myIndex;
+		return index != null && index.isComplete() ? index : null;
+	}
+
+	@Override
+	public void run() {
+		ZLTextPageIndex index = ZLTextPageIndex.fromByteArray(myKey, myView.loadPageIndex(myModel, myKey));
+		if (index == null) {
+			index = new ZLTextPageIndex(myKey);
+		}
+		myIndex = index;
+		if (index.isComplete()) {
+			return;
+		}
+
+		final ZLTextPage page = new ZLTextPage();
+		final ZLTextFixedPosition resumePosition = index.last();
+		int unsaved = 0;
+		for (boolean first = true; !myIsCancelled; first = false) {
+			final long start = System.currentTimeMillis();
+			final ZLTextFixedPosition pageStart =
+				myView.layoutIndexPage(this, myModel, page, resumePosition);
+			if (pageStart == null) {
+				break;
+			}
+			final ZLTextFixedPosition last = index.last();
+			if (last == null || last.compareTo(pageStart) < 0) {
+				index.add(pageStart);
+				if (++unsaved == SAVE_PERIOD) {
+					myView.savePageIndex(myModel, myKey, index.toByteArray());
+					unsaved = 0;
+				}
+			} else if (!first) {
+				// no progress, the layout is broken somewhere
+				break;
+			}
+			if (page.EndCursor.isEndOfText()) {
+				index.setComplete();
+				break;
+			}
+			try {
+				sleep(Math.max(MIN_PAUSE, System.currentTimeMillis() - start));
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		if (unsaved > 0 || index.isComplete()) {
+			myView.savePageIndex(myModel, myKey, index.toByteArray());
+		}
+	}
+}
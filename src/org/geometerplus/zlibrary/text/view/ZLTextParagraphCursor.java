@@ -125,16 +125,23 @@ public final class ZLTextParagraphCursor {
 			}
 		}
 
-		private static byte[] ourBreaks = new byte[1024];
+		// paragraphs are also built by the read-ahead thread, so the buffer is per thread
+		private static final ThreadLocal<byte[]> ourBreaks = new ThreadLocal<byte[]>() {
+			@Override
+			protected byte[] initialValue() {
+				return new byte[1024];
+			}
+		};
 		private static final int NO_SPACE = 0;
 		private static final int SPACE = 1;
 		//private static final int NON_BREAKABLE_SPACE = 2;
 		private void processTextEntry(final char[] data, final int offset, final int length, ZLTextHyperlink hyperlink) {
 			if (length != 0) {
-				if (ourBreaks.length < length) {
-					ourBreaks = new byte[length];
+				byte[] breaks = ourBreaks.get();
+				if (breaks.length < length) {
+					breaks = new byte[length];
+					ourBreaks.set(breaks);
 				}
-				final byte[] breaks = ourBreaks;
 				myLineBreaker.setLineBreaks(data, offset, length, breaks);
 
 				final ZLTextElement hSpace = ZLTextElement.HSpace;
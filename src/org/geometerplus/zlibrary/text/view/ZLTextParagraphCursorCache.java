@@ -19,43 +19,122 @@
 
 package org.geometerplus.zlibrary.text.view;
 
-import java.lang.ref.WeakReference;
-import java.util.*;
+import java.util.concurrent.*;
 
 import org.geometerplus.zlibrary.text.model.ZLTextModel;
 
+/**
+ * Keeps paragraph cursors around the current position strongly reachable.
+ * Paragraph i is stored in the slot i % CAPACITY, so any window of CAPACITY
+ * consecutive paragraphs fits without collisions and a lookup allocates nothing.
+ * Paragraphs that follow the current page are built in background,
+ * under the view lock like every other cursor.
+ */
 class ZLTextParagraphCursorCache {
-	private final static class Key {
-		private final ZLTextModel myModel;
-		private final int myIndex;
+	private static final int CAPACITY = 128;
+	private static final int READ_AHEAD = 16;
 
-		public Key(ZLTextModel model, int index) {
-			myModel = model;
-			myIndex = index;
-		}
+	private static ExecutorService ourReadAheadExecutor;
 
-		public boolean equals(Object o) {
-			Key k = (Key)o;
-			return (myModel == k.myModel) && (myIndex == k.myIndex);
+	private static synchronized ExecutorService readAheadExecutor() {
+		if (ourReadAheadExecutor == null) {
+			ourReadAheadExecutor = Executors.newSingleThreadExecutor(new ReadAheadThreadFactory());
 		}
+		return ourReadAheadExecutor;
+	}
 
-		public int hashCode() {
-			return myModel.hashCode() + myIndex;
+	private static class ReadAheadThreadFactory implements ThreadFactory {
+		private final ThreadFactory myDefaultThreadFactory = Executors.defaultThreadFactory();
+
+		public Thread newThread(Runnable r) {
+			final Thread th = myDefaultThreadFactory.newThread(r);
+			th.setName("Text.readAhead");
+			th.setPriority(Thread.MIN_PRIORITY);
+			th.setDaemon(true);
+			return th;
 		}
 	}
 
-	private final HashMap<Key,WeakReference<ZLTextParagraphCursor>> myMap = new HashMap<Key,WeakReference<ZLTextParagraphCursor>>();
+	private final ZLTextParagraphCursor[] myCursors = new ZLTextParagraphCursor[CAPACITY];
+	private final int[] myIndexes = new int[CAPACITY];
+	private ZLTextModel myModel;
+	// incremented on clear(); read-ahead results of older generations are dropped
+	private volatile int myGeneration;
+	private int myReadAheadLimit = -1;
 
-	void put(ZLTextModel model, int index, ZLTextParagraphCursor cursor) {
-		myMap.put(new Key(model, index), new WeakReference<ZLTextParagraphCursor>(cursor));
+	synchronized void put(ZLTextModel model, int index, ZLTextParagraphCursor cursor) {
+		if (model != myModel) {
+			clear();
+			myModel = model;
+		}
+		final int slot = index % CAPACITY;
+		myCursors[slot] = cursor;
+		myIndexes[slot] = index;
 	}
 
-	ZLTextParagraphCursor get(ZLTextModel model, int index) {
-		WeakReference<ZLTextParagraphCursor> ref = myMap.get(new Key(model, index));
-		return ref != null ? ref.get() : null;
+	synchronized ZLTextParagraphCursor get(ZLTextModel model, int index) {
+		if (model != myModel) {
+			return null;
+		}
+		final int slot = index % CAPACITY;
+		return myIndexes[slot] == index ? myCursors[slot] : null;
+	}
+
+	synchronized void clear() {
+		++myGeneration;
+		myModel = null;
+		myReadAheadLimit = -1;
+		for (int i = 0; i < CAPACITY; ++i) {
+			myCursors[i] = null;
+		}
 	}
 
-	void clear() {
-		myMap.clear();
+	/**
+	 * Schedules building of paragraphs that follow the given page.
+	 * Paragraphs more than CAPACITY / 2 ahead of the page start are not built,
+	 * so the read-ahead never pushes out paragraphs of the neighbouring pages.
+	 */
+	void readAhead(final ZLTextView view, final ZLTextModel model, int startIndex, int endIndex) {
+		final int from;
+		final int to;
+		final int generation;
+		synchronized (this) {
+			if (model != myModel) {
+				return;
+			}
+			// paragraphs before myReadAheadLimit are already scheduled
+			from = myReadAheadLimit > endIndex + 1 && myReadAheadLimit <= endIndex + READ_AHEAD
+				? myReadAheadLimit : endIndex + 1;
+			to = Math.min(
+				Math.min(endIndex + READ_AHEAD, startIndex + CAPACITY / 2),
+				model.getParagraphsNumber()
+			);
+			if (from >= to) {
+				return;
+			}
+			myReadAheadLimit = to;
+			generation = myGeneration;
+		}
+
+		readAheadExecutor().execute(new Runnable() {
+			public void run() {
+				for (int index = from; index < to; ++index) {
+					if (generation != myGeneration) {
+						return;
+					}
+					// a cursor reads the model, its marks and the view's managers;
+					// they are changed only under the view lock, so it is built under
+					// the same lock, one paragraph at a time to keep the lock short
+					synchronized (view) {
+						if (generation != myGeneration) {
+							return;
+						}
+						if (get(model, index) == null) {
+							put(model, index, new ZLTextParagraphCursor(view, model, index));
+						}
+					}
+				}
+			}
+		});
 	}
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.util.*;
+
+import org.geometerplus.zlibrary.text.model.ZLTextStyleEntry;
+import org.geometerplus.zlibrary.text.view.style.*;
+
+/**
+ * Interned decorated styles. A style is defined by its parent, its decoration
+ * (a style description, compared by identity, or a style entry, compared by value)
+ * and its hyperlink; parents are interned too, so equal style chains share
+ * the same objects together with their computed font and metrics caches.
+ * Styles cache option values, so the cache must be cleared on option changes.
+ */
+final class ZLTextStyleCache {
+	private static final int MAX_SIZE = 1024;
+
+	private static final class Key {
+		ZLTextStyle Parent;
+		Object Decoration;
+		ZLTextHyperlink Hyperlink;
+
+		Key(ZLTextStyle parent, Object decoration, ZLTextHyperlink hyperlink) {
+			Parent = parent;
+			Decoration = decoration;
+			Hyperlink = hyperlink;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			final Key key = (Key)o;
+			return
+				Parent == key.Parent &&
+				Hyperlink == key.Hyperlink &&
+				Decoration.equals(key.Decoration);
+		}
+
+		@Override
+		public int hashCode() {
+			return
+				System.identityHashCode(Parent) * 31 +
+				Decoration.hashCode() +
+				System.identityHashCode(Hyperlink);
+		}
+	}
+
+	private final LinkedHashMap<Key,ZLTextStyle> myStyles =
+		new LinkedHashMap<Key,ZLTextStyle>(MAX_SIZE, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,ZLTextStyle> eldest) {
+				return size() > MAX_SIZE;
+			}
+		};
+	private final Key myProbe = new Key(null, null, null);
+
+	synchronized ZLTextStyle getNGStyle(ZLTextStyle parent, ZLTextNGStyleDescription description, ZLTextHyperlink hyperlink) {
+		ZLTextStyle style = lookup(parent, description, hyperlink);
+		if (style == null) {
+			style = new ZLTextNGStyle(parent, description, hyperlink);
+			myStyles.put(new Key(parent, description, hyperlink), style);
+		}
+		return style;
+	}
+
+	synchronized ZLTextStyle getExplicitlyDecoratedStyle(ZLTextStyle parent, ZLTextStyleEntry entry) {
+		ZLTextStyle style = lookup(parent, entry, null);
+		if (style == null) {
+			style = new ZLTextExplicitlyDecoratedStyle(parent, entry);
+			myStyles.put(new Key(parent, entry, null), style);
+		}
+		return style;
+	}
+
+	private ZLTextStyle lookup(ZLTextStyle parent, Object decoration, ZLTextHyperlink hyperlink) {
+		myProbe.Parent = parent;
+		myProbe.Decoration = decoration;
+		myProbe.Hyperlink = hyperlink;
+		final ZLTextStyle style = myStyles.get(myProbe);
+		myProbe.Parent = null;
+		myProbe.Decoration = null;
+		myProbe.Hyperlink = null;
+		return style;
+	}
+
+	synchronized void clear() {
+		myStyles.clear();
+	}
+}
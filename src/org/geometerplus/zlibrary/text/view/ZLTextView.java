@@ -31,7 +31,7 @@ import org.geometerplus.zlibrary.core.view.ZLPaintContext;
 
 import org.geometerplus.zlibrary.text.model.*;
 import org.geometerplus.zlibrary.text.hyphenation.*;
-import org.geometerplus.zlibrary.text.view.style.ZLTextStyleCollection;
+import org.geometerplus.zlibrary.text.view.style.*;
 
 public abstract class ZLTextView extends ZLTextViewBase {
 	public static final int MAX_SELECTION_DISTANCE = 10;
@@ -57,7 +57,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	private ZLTextPage myCurrentPage = new ZLTextPage();
 	private ZLTextPage myNextPage = new ZLTextPage();
 
-	private final HashMap<ZLTextLineInfo,ZLTextLineInfo> myLineInfoCache = new HashMap<ZLTextLineInfo,ZLTextLineInfo>();
+	private final ZLTextLineInfoCache myLineInfoCache = new ZLTextLineInfoCache();
 
 	private ZLTextRegion.Soul mySelectedRegionSoul;
 	private boolean myHighlightSelectedRegion = true;
@@ -68,12 +68,21 @@ public abstract class ZLTextView extends ZLTextViewBase {
 
 	private final ZLTextParagraphCursorCache myCursorCache = new ZLTextParagraphCursorCache();
 
+	private ZLTextPaginator myPaginator;
+	private int myPaginationWidth;
+	private int myPaginationHeight;
+	private boolean myPaginationTwoColumns;
+	// set while the paginator lays out a page; such pages are not cached
+	private boolean myIsPaginating;
+
 	public ZLTextView(ZLApplication application) {
 		super(application);
 	}
 
 	public synchronized void setModel(ZLTextModel model) {
+		stopPagination();
 		myCursorCache.clear();
+		myLineInfoCache.clear();
 
 		mySelection.clear();
 		myHighlightings.clear();
@@ -95,6 +104,11 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		return myModel;
 	}
 
+	// for the benchmarks
+	ZLTextLineInfoCache getLineInfoCache() {
+		return myLineInfoCache;
+	}
+
 	public ZLTextWordCursor getStartCursor() {
 		if (myCurrentPage.StartCursor.isNull()) {
 			preparePaintInfo(myCurrentPage);
@@ -186,7 +200,11 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		int startIndex = 0;
 		int endIndex = myModel.getParagraphsNumber();
 		if (thisSectionOnly) {
-			// TODO: implement
+			final int[] range = currentSectionRange();
+			if (range != null) {
+				startIndex = range[0];
+				endIndex = range[1];
+			}
 		}
 		int count = myModel.search(text, startIndex, endIndex, ignoreCase);
 		myPreviousPage.reset();
@@ -205,6 +223,91 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		return count;
 	}
 
+	/**
+	 * Non-blocking version of search(): paragraphs are scanned in parallel,
+	 * starting from the current page, and the marks are shown as soon
+	 * as they are found.  In forward direction the view jumps to the first mark
+	 * after the current position as soon as it is known; otherwise it moves
+	 * when the search is finished.  The listener is called from search threads.
+	 */
+	public void search(final String text, boolean ignoreCase, final boolean wholeText, final boolean backward, boolean thisSectionOnly, final ZLTextModel.SearchListener listener) {
+		final ZLTextModel model;
+		final int startIndex;
+		final int endIndex;
+		final int nearIndex;
+		synchronized (this) {
+			model = myModel;
+			if (model == null || text.length() == 0) {
+				listener.onSearchFinished(0);
+				return;
+			}
+			final int[] range = thisSectionOnly ? currentSectionRange() : null;
+			startIndex = range != null ? range[0] : 0;
+			endIndex = range != null ? range[1] : model.getParagraphsNumber();
+			nearIndex = myCurrentPage.StartCursor.isNull()
+				? startIndex : myCurrentPage.StartCursor.getParagraphIndex();
+		}
+
+		model.search(text, startIndex, endIndex, nearIndex, ignoreCase, new ZLTextModel.SearchListener() {
+			private boolean myPositioned = wholeText || backward;
+
+			public void onMarksFound(List<ZLTextMark> marks) {
+				synchronized (ZLTextView.this) {
+					if (model != myModel) {
+						return;
+					}
+					myPreviousPage.reset();
+					myNextPage.reset();
+					if (!myCurrentPage.StartCursor.isNull()) {
+						rebuildPaintInfo();
+						if (!myPositioned) {
+							final ZLTextMark next = model.getNextMark(myCurrentPage.StartCursor.getMark());
+							if (next != null) {
+								myPositioned = true;
+								gotoMark(next);
+							}
+						}
+						Application.getViewWidget().reset();
+						Application.getViewWidget().repaint();
+					}
+				}
+				listener.onMarksFound(marks);
+			}
+
+			public void onSearchFinished(int count) {
+				synchronized (ZLTextView.this) {
+					if (model == myModel && count > 0 && !myCurrentPage.StartCursor.isNull()) {
+						final ZLTextMark mark = myCurrentPage.StartCursor.getMark();
+						if (wholeText) {
+							gotoMark(backward ? model.getLastMark() : model.getFirstMark());
+						} else if (backward) {
+							gotoMark(model.getPreviousMark(mark));
+						}
+					}
+				}
+				listener.onSearchFinished(count);
+			}
+		});
+	}
+
+	private int[] currentSectionRange() {
+		if (myCurrentPage.StartCursor.isNull()) {
+			preparePaintInfo(myCurrentPage);
+		}
+		if (myCurrentPage.StartCursor.isNull()) {
+			return null;
+		}
+		return getSectionRange(myCurrentPage.StartCursor.getParagraphIndex());
+	}
+
+	/**
+	 * @return paragraph range [start, end) of the section that contains
+	 *         the given paragraph, or null if the view knows nothing about sections
+	 */
+	protected int[] getSectionRange(int paragraphIndex) {
+		return null;
+	}
+
 	public boolean canFindNext() {
 		final ZLTextWordCursor end = myCurrentPage.EndCursor;
 		return !end.isNull() && (myModel != null) && (myModel.getNextMark(end.getMark()) != null);
@@ -500,8 +603,9 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		int y = getTopMargin();
 		int index = 0;
 		ZLTextLineInfo previousInfo = null;
-		for (ZLTextLineInfo info : lineInfos) {
-			info.adjust(previousInfo);
+		for (int i = 0; i < lineInfos.size(); ++i) {
+			final ZLTextLineInfo info = lineInfos.get(i).adjust(previousInfo);
+			lineInfos.set(i, info);
 			prepareTextLine(page, info, x, y);
 			y += info.Height + info.Descent + info.VSpaceAfter;
 			labels[++index] = page.TextElementMap.size();
@@ -601,18 +705,37 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		}
 	}
 
+	// exact number of the page, can be called only when the page index is complete
+	private int getPageNumber(PageIndex pageIndex, ZLTextPageIndex index) {
+		final ZLTextPage page = getPage(pageIndex);
+		preparePaintInfo(page);
+		if (page.StartCursor.isNull()) {
+			return 1;
+		}
+		return page.EndCursor.isEndOfText() ? index.size() : index.getPageNumber(page.StartCursor);
+	}
+
 	@Override
 	public final synchronized int getScrollbarFullSize() {
-		return sizeOfFullText();
+		final ZLTextPageIndex index = completePageIndex();
+		return index != null ? index.size() : sizeOfFullText();
 	}
 
 	@Override
 	public final synchronized int getScrollbarThumbPosition(PageIndex pageIndex) {
-		return scrollbarType() == SCROLLBAR_SHOW_AS_PROGRESS ? 0 : getCurrentCharNumber(pageIndex, true);
+		if (scrollbarType() == SCROLLBAR_SHOW_AS_PROGRESS) {
+			return 0;
+		}
+		final ZLTextPageIndex index = completePageIndex();
+		return index != null ? getPageNumber(pageIndex, index) - 1 : getCurrentCharNumber(pageIndex, true);
 	}
 
 	@Override
 	public final synchronized int getScrollbarThumbLength(PageIndex pageIndex) {
+		final ZLTextPageIndex index = completePageIndex();
+		if (index != null) {
+			return scrollbarType() == SCROLLBAR_SHOW_AS_PROGRESS ? getPageNumber(pageIndex, index) : 1;
+		}
 		int start = scrollbarType() == SCROLLBAR_SHOW_AS_PROGRESS
 			? 0 : getCurrentCharNumber(pageIndex, true);
 		int end = getCurrentCharNumber(pageIndex, false);
@@ -719,7 +842,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	}
 
 	private final float computeCharWidth(char[] pattern, int length) {
-		return getContext().getStringWidth(pattern, 0, length) / ((float)length);
+		return getStringWidth(pattern, 0, length) / ((float)length);
 	}
 
 	public static class PagePosition {
@@ -733,6 +856,11 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	}
 
 	public final synchronized PagePosition pagePosition() {
+		final ZLTextPageIndex index = completePageIndex();
+		if (index != null) {
+			return new PagePosition(getPageNumber(PageIndex.current, index), index.size());
+		}
+
 		int current = computeTextPageNumber(getCurrentCharNumber(PageIndex.current, false));
 		int total = computeTextPageNumber(sizeOfFullText());
 
@@ -788,6 +916,13 @@ public abstract class ZLTextView extends ZLTextViewBase {
 			return;
 		}
 
+		final ZLTextPageIndex index = completePageIndex();
+		if (index != null) {
+			final ZLTextFixedPosition position = index.getPageStart(page);
+			gotoPosition(position.ParagraphIndex, position.ElementIndex, position.CharIndex);
+			return;
+		}
+
 		final float factor = computeCharsPerPage();
 		final float textSize = page * factor;
 
@@ -1047,16 +1182,6 @@ public abstract class ZLTextView extends ZLTextViewBase {
 			&& getTextStyle().allowHyphenations();
 	}
 
-	private volatile ZLTextWord myCachedWord;
-	private volatile ZLTextHyphenationInfo myCachedInfo;
-	private final synchronized ZLTextHyphenationInfo getHyphenationInfo(ZLTextWord word) {
-		if (myCachedWord != word) {
-			myCachedWord = word;
-			myCachedInfo = ZLTextHyphenator.Instance().getInfo(word);
-		}
-		return myCachedInfo;
-	}
-
 	private ZLTextLineInfo processTextLine(
 		ZLTextPage page,
 		ZLTextParagraphCursor paragraphCursor,
@@ -1086,11 +1211,13 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	) {
 		final ZLPaintContext context = getContext();
 		final ZLTextLineInfo info = new ZLTextLineInfo(paragraphCursor, startIndex, startCharIndex, getTextStyle());
-		final ZLTextLineInfo cachedInfo = myLineInfoCache.get(info);
-		if (cachedInfo != null) {
-			cachedInfo.adjust(previousInfo);
+		final ZLTextLineInfo cachedInfo = myLineInfoCache.get(
+			paragraphCursor, startIndex, startCharIndex, info.InitialStyle, page.getTextWidth(), metrics()
+		);
+		// height of a line adjusted to the previous one cannot be used for the first line of a page
+		if (cachedInfo != null && (previousInfo != null || !cachedInfo.PreviousInfoUsed)) {
 			applyStyleChanges(paragraphCursor, startIndex, cachedInfo.EndElementIndex);
-			return cachedInfo;
+			return cachedInfo.adjust(previousInfo);
 		}
 
 		int currentElementIndex = startIndex;
@@ -1209,7 +1336,7 @@ public abstract class ZLTextView extends ZLTextViewBase {
 				int spaceLeft = maxWidth - newWidth;
 				if ((word.Length > 3 && spaceLeft > 2 * context.getSpaceWidth())
 					|| info.EndElementIndex == startIndex) {
-					ZLTextHyphenationInfo hyphenationInfo = getHyphenationInfo(word);
+					ZLTextHyphenationInfo hyphenationInfo = ZLTextHyphenator.Instance().getInfo(word);
 					int hyphenationPosition = currentCharIndex;
 					int subwordWidth = 0;
 					for (int right = word.Length - 1, left = currentCharIndex; right > left; ) {
@@ -1297,8 +1424,8 @@ public abstract class ZLTextView extends ZLTextViewBase {
 			info.VSpaceAfter = getTextStyle().getSpaceAfter(metrics());
 		}
 
-		if (info.EndElementIndex != endIndex || endIndex == info.ParagraphCursorLength) {
-			myLineInfoCache.put(info, info);
+		if (!myIsPaginating && (info.EndElementIndex != endIndex || endIndex == info.ParagraphCursorLength)) {
+			myLineInfoCache.put(info, page.getTextWidth(), metrics());
 		}
 
 		return info;
@@ -1468,9 +1595,14 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		}
 		final int oldState = page.PaintState;
 
-		final HashMap<ZLTextLineInfo,ZLTextLineInfo> cache = myLineInfoCache;
+		final ZLTextLineInfoCache cache = myLineInfoCache;
 		for (ZLTextLineInfo info : page.LineInfos) {
-			cache.put(info, info);
+			cache.put(info, page.getTextWidth(), metrics());
+		}
+		if (!page.StartCursor.isNull()) {
+			cache.setCurrentPosition(myModel, page.StartCursor.getParagraphIndex());
+		} else if (!page.EndCursor.isNull()) {
+			cache.setCurrentPosition(myModel, page.EndCursor.getParagraphIndex());
 		}
 
 		switch (page.PaintState) {
@@ -1566,10 +1698,16 @@ public abstract class ZLTextView extends ZLTextViewBase {
 				break;
 		}
 		page.PaintState = PaintStateEnum.READY;
-		// TODO: cache?
-		myLineInfoCache.clear();
 
 		if (page == myCurrentPage) {
+			if (!page.StartCursor.isNull() && !page.EndCursor.isNull()) {
+				myCursorCache.readAhead(
+					this, myModel,
+					page.StartCursor.getParagraphIndex(),
+					page.EndCursor.getParagraphIndex()
+				);
+			}
+			updatePagination();
 			if (oldState != PaintStateEnum.START_IS_KNOWN) {
 				myPreviousPage.reset();
 			}
@@ -1580,6 +1718,9 @@ public abstract class ZLTextView extends ZLTextViewBase {
 	}
 
 	public void clearCaches() {
+		stopPagination();
+		ZLTextWidthCache.Instance().clear();
+		clearStyleCache();
 		resetMetrics();
 		rebuildPaintInfo();
 		Application.getViewWidget().reset();
@@ -1855,10 +1996,153 @@ public abstract class ZLTextView extends ZLTextViewBase {
 		ZLTextParagraphCursor result = myCursorCache.get(myModel, index);
 		if (result == null) {
 			result = new ZLTextParagraphCursor(this, myModel, index);
-			myCursorCache.put(myModel, index, result);
+			if (!myIsPaginating) {
+				myCursorCache.put(myModel, index, result);
+			}
 		}
 		return result;
 	}
 
+	/**
+	 * Exact pagination is off by default; when it is on, the whole text is laid out
+	 * in background and page numbers are taken from the resulting page index.
+	 */
+	protected boolean isPaginationEnabled() {
+		return false;
+	}
+
+	/**
+	 * @return data saved by savePageIndex() for the model and the key, or null
+	 */
+	protected byte[] loadPageIndex(ZLTextModel model, String key) {
+		return null;
+	}
+
+	protected void savePageIndex(ZLTextModel model, String key, byte[] data) {
+	}
+
+	/**
+	 * Identifies everything the layout depends on: the page size, the metrics
+	 * and the style options. Page indices are valid only for the same key.
+	 */
+	protected String paginationKey() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append(getTextColumnWidth()).append(',');
+		builder.append(getTextAreaHeight()).append(',');
+		builder.append(twoColumnView()).append(',');
+		final ZLTextMetrics metrics = metrics();
+		builder.append(metrics.DPI).append(',');
+		builder.append(metrics.FullWidth).append(',');
+		builder.append(metrics.FullHeight).append(',');
+		builder.append(metrics.FontSize).append(',');
+
+		final ZLTextStyleCollection collection = getTextStyleCollection();
+		final ZLTextBaseStyle base = collection.getBaseStyle();
+		builder.append(base.UseCSSTextAlignmentOption.getValue()).append(',');
+		builder.append(base.UseCSSMarginsOption.getValue()).append(',');
+		builder.append(base.UseCSSFontSizeOption.getValue()).append(',');
+		builder.append(base.UseCSSFontFamilyOption.getValue()).append(',');
+		builder.append(base.AutoHyphenationOption.getValue()).append(',');
+		builder.append(base.BoldOption.getValue()).append(',');
+		builder.append(base.ItalicOption.getValue()).append(',');
+		builder.append(base.UnderlineOption.getValue()).append(',');
+		builder.append(base.StrikeThroughOption.getValue()).append(',');
+		builder.append(base.AlignmentOption.getValue()).append(',');
+		builder.append(base.LineSpaceOption.getValue()).append(',');
+		builder.append(base.FontFamilyOption.getValue()).append(',');
+		builder.append(base.FontSizeOption.getValue());
+		for (ZLTextNGStyleDescription description : collection.getDescriptionList()) {
+			builder.append(';').append(description.Name);
+			builder.append(',').append(description.FontFamilyOption.getValue());
+			builder.append(',').append(description.FontSizeOption.getValue());
+			builder.append(',').append(description.FontWeightOption.getValue());
+			builder.append(',').append(description.FontStyleOption.getValue());
+			builder.append(',').append(description.TextDecorationOption.getValue());
+			builder.append(',').append(description.HyphenationOption.getValue());
+			builder.append(',').append(description.MarginTopOption.getValue());
+			builder.append(',').append(description.MarginBottomOption.getValue());
+			builder.append(',').append(description.MarginLeftOption.getValue());
+			builder.append(',').append(description.MarginRightOption.getValue());
+			builder.append(',').append(description.TextIndentOption.getValue());
+			builder.append(',').append(description.AlignmentOption.getValue());
+			builder.append(',').append(description.VerticalAlignOption.getValue());
+			builder.append(',').append(description.LineHeightOption.getValue());
+		}
+
+		// 64-bit FNV-1a
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < builder.length(); ++i) {
+			hash ^= builder.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return Long.toHexString(hash);
+	}
+
+	private ZLTextPageIndex completePageIndex() {
+		final ZLTextPaginator paginator = myPaginator;
+		return paginator != null ? paginator.getCompleteIndex() : null;
+	}
+
+	// (re)starts the pagination if the layout parameters have been changed
+	private void updatePagination() {
+		if (!isPaginationEnabled() || myModel == null || myModel.getParagraphsNumber() == 0) {
+			stopPagination();
+			return;
+		}
+		final int width = getTextColumnWidth();
+		final int height = getTextAreaHeight();
+		final boolean twoColumns = twoColumnView();
+		if (myPaginator != null &&
+			myPaginationWidth == width &&
+			myPaginationHeight == height &&
+			myPaginationTwoColumns == twoColumns) {
+			return;
+		}
+		stopPagination();
+		myPaginationWidth = width;
+		myPaginationHeight = height;
+		myPaginationTwoColumns = twoColumns;
+		myPaginator = new ZLTextPaginator(this, myModel, paginationKey());
+		myPaginator.start();
+	}
+
+	private synchronized void stopPagination() {
+		if (myPaginator != null) {
+			myPaginator.cancel();
+			myPaginator = null;
+		}
+	}
+
+	/**
+	 * Lays out a page for the paginator: the page that follows the given one,
+	 * or the page that starts at resumePosition if the given one is not laid out yet.
+	 * @return start of the laid out page, or null if the paginator has been cancelled
+	 */
+	synchronized ZLTextFixedPosition layoutIndexPage(ZLTextPaginator paginator, ZLTextModel model, ZLTextPage page, ZLTextPosition resumePosition) {
+		if (paginator != myPaginator || model != myModel) {
+			return null;
+		}
+		page.setSize(myPaginationWidth, myPaginationHeight, myPaginationTwoColumns, false);
+		final ZLTextWordCursor start;
+		if (!page.EndCursor.isNull()) {
+			start = new ZLTextWordCursor(page.EndCursor);
+		} else if (resumePosition != null) {
+			start = new ZLTextWordCursor(cursor(resumePosition.getParagraphIndex()));
+			start.moveTo(resumePosition.getElementIndex(), resumePosition.getCharIndex());
+		} else {
+			start = new ZLTextWordCursor(cursor(0));
+		}
+
+		myIsPaginating = true;
+		try {
+			page.StartCursor.setCursor(start);
+			buildInfos(page, page.StartCursor, page.EndCursor);
+		} finally {
+			myIsPaginating = false;
+		}
+		page.LineInfos.clear();
+		return new ZLTextFixedPosition(page.StartCursor);
+	}
+
 	protected abstract ExtensionElementManager getExtensionManager();
 }
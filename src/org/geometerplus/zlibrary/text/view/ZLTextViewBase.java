@@ -19,8 +19,11 @@
 
 package org.geometerplus.zlibrary.text.view;
 
+import java.util.List;
+
 import org.geometerplus.zlibrary.core.application.ZLApplication;
 import org.geometerplus.zlibrary.core.filesystem.ZLFile;
+import org.geometerplus.zlibrary.core.fonts.FontEntry;
 import org.geometerplus.zlibrary.core.library.ZLibrary;
 import org.geometerplus.zlibrary.core.util.ZLColor;
 import org.geometerplus.zlibrary.core.view.ZLView;
@@ -39,6 +42,16 @@ abstract class ZLTextViewBase extends ZLView {
 	private int myWordHeight = -1;
 	private ZLTextMetrics myMetrics;
 
+	// font of the current text style, as a key for the width cache
+	private List<FontEntry> myFontEntries;
+	private int myFontSize;
+	private boolean myFontIsBold;
+	private boolean myFontIsItalic;
+	private String myFontMeasuringKey;
+	private int myFontId = -1;
+
+	private final ZLTextStyleCache myStyleCache = new ZLTextStyleCache();
+
 	ZLTextViewBase(ZLApplication application) {
 		super(application);
 	}
@@ -47,6 +60,11 @@ abstract class ZLTextViewBase extends ZLView {
 		myMetrics = null;
 	}
 
+	// styles cache option values, so they are recreated after option changes
+	final void clearStyleCache() {
+		myStyleCache.clear();
+	}
+
 	protected ZLTextMetrics metrics() {
 		// this local variable is used to guarantee null will not
 		// be returned from this method enen in multi-thread environment
@@ -120,7 +138,38 @@ abstract class ZLTextViewBase extends ZLView {
 			myTextStyle = style;
 			myWordHeight = -1;
 		}
-		getContext().setFont(style.getFontEntries(), style.getFontSize(metrics()), style.isBold(), style.isItalic(), style.isUnderline(), style.isStrikeThrough());
+		final List<FontEntry> entries = style.getFontEntries();
+		final int size = style.getFontSize(metrics());
+		final boolean bold = style.isBold();
+		final boolean italic = style.isItalic();
+		getContext().setFont(entries, size, bold, italic, style.isUnderline(), style.isStrikeThrough());
+		if (myFontId == -1 ||
+			entries != myFontEntries ||
+			size != myFontSize ||
+			bold != myFontIsBold ||
+			italic != myFontIsItalic) {
+			myFontEntries = entries;
+			myFontSize = size;
+			myFontIsBold = bold;
+			myFontIsItalic = italic;
+			myFontMeasuringKey = getContext().getMeasuringKey();
+			myFontId = ZLTextWidthCache.fontId(myFontMeasuringKey, entries, size, bold, italic);
+		}
+	}
+
+	// measures a string in the current text style font
+	final int getStringWidth(char[] data, int offset, int length) {
+		if (myFontId == -1) {
+			resetTextStyle();
+		}
+		final ZLPaintContext context = getContext();
+		final String measuringKey = context.getMeasuringKey();
+		// the context can be replaced after the style has been set
+		if (measuringKey != myFontMeasuringKey && !measuringKey.equals(myFontMeasuringKey)) {
+			myFontMeasuringKey = measuringKey;
+			myFontId = ZLTextWidthCache.fontId(measuringKey, myFontEntries, myFontSize, myFontIsBold, myFontIsItalic);
+		}
+		return ZLTextWidthCache.Instance().getStringWidth(context, myFontId, data, offset, length);
 	}
 
 	final void resetTextStyle() {
@@ -157,7 +206,7 @@ abstract class ZLTextViewBase extends ZLView {
 			final ZLTextNGStyleDescription description =
 				getTextStyleCollection().getDescription(control.Kind);
 			if (description != null) {
-				setTextStyle(new ZLTextNGStyle(myTextStyle, description, hyperlink));
+				setTextStyle(myStyleCache.getNGStyle(myTextStyle, description, hyperlink));
 			}
 		} else {
 			setTextStyle(myTextStyle.Parent);
@@ -165,7 +214,7 @@ abstract class ZLTextViewBase extends ZLView {
 	}
 
 	private void applyStyle(ZLTextStyleElement element) {
-		setTextStyle(new ZLTextExplicitlyDecoratedStyle(myTextStyle, element.Entry));
+		setTextStyle(myStyleCache.getExplicitlyDecoratedStyle(myTextStyle, element.Entry));
 	}
 
 	private void applyStyleClose() {
@@ -237,12 +286,12 @@ abstract class ZLTextViewBase extends ZLView {
 	final int getWordWidth(ZLTextWord word, int start) {
 		return
 			start == 0 ?
-				word.getWidth(getContext()) :
-				getContext().getStringWidth(word.Data, word.Offset + start, word.Length - start);
+				word.getWidth(this) :
+				getStringWidth(word.Data, word.Offset + start, word.Length - start);
 	}
 
 	final int getWordWidth(ZLTextWord word, int start, int length) {
-		return getContext().getStringWidth(word.Data, word.Offset + start, length);
+		return getStringWidth(word.Data, word.Offset + start, length);
 	}
 
 	private char[] myWordPartArray = new char[20];
@@ -250,12 +299,12 @@ abstract class ZLTextViewBase extends ZLView {
 	final int getWordWidth(ZLTextWord word, int start, int length, boolean addHyphenationSign) {
 		if (length == -1) {
 			if (start == 0) {
-				return word.getWidth(getContext());
+				return word.getWidth(this);
 			}
 			length = word.Length - start;
 		}
 		if (!addHyphenationSign) {
-			return getContext().getStringWidth(word.Data, word.Offset + start, length);
+			return getStringWidth(word.Data, word.Offset + start, length);
 		}
 		char[] part = myWordPartArray;
 		if (length + 1 > part.length) {
@@ -264,7 +313,7 @@ abstract class ZLTextViewBase extends ZLView {
 		}
 		System.arraycopy(word.Data, word.Offset + start, part, 0, length);
 		part[length] = '-';
-		return getContext().getStringWidth(part, 0, length + 1);
+		return getStringWidth(part, 0, length + 1);
 	}
 
 	int getAreaLength(ZLTextParagraphCursor paragraph, ZLTextElementArea area, int toCharIndex) {
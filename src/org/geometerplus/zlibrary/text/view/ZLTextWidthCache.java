@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.text.view;
+
+import java.util.*;
+
+import org.geometerplus.zlibrary.core.fonts.FontEntry;
+import org.geometerplus.zlibrary.core.view.ZLPaintContext;
+
+/**
+ * Widths of measured strings, shared by all text views. A width is stored
+ * for a font (the measuring key of the paint context, font entries, size,
+ * bold and italic flags, see fontId()) and a char sequence; least recently
+ * used strings are dropped when the cache exceeds its memory budget.
+ * Lookups use a reusable probe key, so only a miss allocates memory.
+ */
+public final class ZLTextWidthCache {
+	// rough memory budget, in bytes
+	private static final int MAX_MEMORY = 1024 * 1024;
+	// rough size of an entry without characters
+	private static final int ENTRY_OVERHEAD = 80;
+	// number of fonts remembered by fontId()
+	private static final int MAX_FONTS = 128;
+
+	private static final class FontKey {
+		private final String myMeasuringKey;
+		private final List<FontEntry> myEntries;
+		private final int mySize;
+		private final boolean myBold;
+		private final boolean myItalic;
+
+		FontKey(String measuringKey, List<FontEntry> entries, int size, boolean bold, boolean italic) {
+			myMeasuringKey = measuringKey;
+			myEntries = entries;
+			mySize = size;
+			myBold = bold;
+			myItalic = italic;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof FontKey)) {
+				return false;
+			}
+			final FontKey key = (FontKey)o;
+			return
+				mySize == key.mySize &&
+				myBold == key.myBold &&
+				myItalic == key.myItalic &&
+				myMeasuringKey.equals(key.myMeasuringKey) &&
+				(myEntries == null ? key.myEntries == null : myEntries.equals(key.myEntries));
+		}
+
+		@Override
+		public int hashCode() {
+			return
+				myMeasuringKey.hashCode() + 17 * (myEntries != null ? myEntries.hashCode() : 0) +
+				31 * mySize + (myBold ? 2 : 0) + (myItalic ? 1 : 0);
+		}
+	}
+
+	private static final class Key {
+		int Font;
+		char[] Data;
+		int Offset;
+		int Length;
+		int Hash;
+
+		void set(int font, char[] data, int offset, int length) {
+			Font = font;
+			Data = data;
+			Offset = offset;
+			Length = length;
+			int hash = font;
+			for (int i = offset; i < offset + length; ++i) {
+				hash = 31 * hash + data[i];
+			}
+			Hash = hash;
+		}
+
+		Key copy() {
+			final Key key = new Key();
+			key.Font = Font;
+			key.Data = new char[Length];
+			System.arraycopy(Data, Offset, key.Data, 0, Length);
+			key.Offset = 0;
+			key.Length = Length;
+			key.Hash = Hash;
+			return key;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			final Key key = (Key)o;
+			if (Hash != key.Hash || Font != key.Font || Length != key.Length) {
+				return false;
+			}
+			for (int i = 0; i < Length; ++i) {
+				if (Data[Offset + i] != key.Data[key.Offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return Hash;
+		}
+	}
+
+	// least recently used fonts are forgotten; ids are never reused, so a forgotten
+	// font gets a new id and its old widths are evicted from the cache in due course
+	private static final LinkedHashMap<FontKey,Integer> ourFontIds =
+		new LinkedHashMap<FontKey,Integer>(MAX_FONTS, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<FontKey,Integer> eldest) {
+				return size() > MAX_FONTS;
+			}
+		};
+	private static int ourNextFontId;
+	private static final ZLTextWidthCache ourInstance = new ZLTextWidthCache();
+
+	public static ZLTextWidthCache Instance() {
+		return ourInstance;
+	}
+
+	/**
+	 * @param measuringKey see ZLPaintContext.getMeasuringKey(); contexts that
+	 * measure strings differently never share widths
+	 */
+	static synchronized int fontId(String measuringKey, List<FontEntry> entries, int size, boolean bold, boolean italic) {
+		final FontKey key = new FontKey(measuringKey, entries, size, bold, italic);
+		Integer id = ourFontIds.get(key);
+		if (id == null) {
+			id = ourNextFontId++;
+			ourFontIds.put(key, id);
+		}
+		return id;
+	}
+
+	private final LinkedHashMap<Key,Integer> myWidths = new LinkedHashMap<Key,Integer>(1024, 0.75f, true);
+	private final Key myProbe = new Key();
+	private int myMemory;
+
+	private int myHits;
+	private int myMisses;
+	private int myEvictions;
+
+	private ZLTextWidthCache() {
+	}
+
+	int getStringWidth(ZLPaintContext context, int font, char[] data, int offset, int length) {
+		synchronized (this) {
+			myProbe.set(font, data, offset, length);
+			final Integer width = myWidths.get(myProbe);
+			myProbe.Data = null;
+			if (width != null) {
+				++myHits;
+				return width;
+			}
+			++myMisses;
+		}
+
+		final int width = context.getStringWidth(data, offset, length);
+
+		synchronized (this) {
+			myProbe.set(font, data, offset, length);
+			final Key key = myProbe.copy();
+			myProbe.Data = null;
+			if (myWidths.put(key, width) == null) {
+				myMemory += ENTRY_OVERHEAD + 2 * length;
+				if (myMemory > MAX_MEMORY) {
+					final Iterator<Map.Entry<Key,Integer>> it = myWidths.entrySet().iterator();
+					while (myMemory > MAX_MEMORY * 3 / 4 && it.hasNext()) {
+						myMemory -= ENTRY_OVERHEAD + 2 * it.next().getKey().Length;
+						it.remove();
+						++myEvictions;
+					}
+				}
+			}
+		}
+		return width;
+	}
+
+	public synchronized void clear() {
+		myWidths.clear();
+		myMemory = 0;
+	}
+
+	public synchronized int size() {
+		return myWidths.size();
+	}
+
+	public synchronized int approximateMemory() {
+		return myMemory;
+	}
+
+	/**
+	 * @return number of measurements served from the cache, i.e. saved calls of ZLPaintContext.getStringWidth
+	 */
+	public synchronized int hits() {
+		return myHits;
+	}
+
+	public synchronized int misses() {
+		return myMisses;
+	}
+
+	public synchronized int evictions() {
+		return myEvictions;
+	}
+}
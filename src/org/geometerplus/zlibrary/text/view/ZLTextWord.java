@@ -19,8 +19,6 @@
 
 package org.geometerplus.zlibrary.text.view;
 
-import org.geometerplus.zlibrary.core.view.ZLPaintContext;
-
 public final class ZLTextWord extends ZLTextElement {
 	public final char[] Data;
 	public final int Offset;
@@ -92,10 +90,10 @@ public final class ZLTextWord extends ZLTextElement {
 		}
 	}
 
-	public int getWidth(ZLPaintContext context) {
+	int getWidth(ZLTextViewBase view) {
 		int width = myWidth;
 		if (width <= 1) {
-			width = context.getStringWidth(Data, Offset, Length);
+			width = view.getStringWidth(Data, Offset, Length);
 			myWidth = width;
 		}
 		return width;
@@ -33,6 +33,11 @@ final class InputStreamImageData extends ZLAndroidImageData {
 		myImage = image;
 	}
 
+	@Override
+	protected String getId() {
+		return myImage.getURI();
+	}
+
 	protected Bitmap decodeWithOptions(BitmapFactory.Options options) {
 		final InputStream stream = myImage.inputStream();
 		if (stream == null) {
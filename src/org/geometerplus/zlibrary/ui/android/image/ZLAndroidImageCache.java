@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.ui.android.image;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import org.geometerplus.zlibrary.core.view.ZLPaintContext;
+
+/**
+ * Decoded images shared by all image data objects. Bitmaps are kept
+ * for (image URI, requested size, scaling type) in a memory-bounded LRU;
+ * optionally, downscaled bitmaps are also stored as PNG files, so they
+ * can be reloaded without decoding the original image again. Real sizes
+ * of decoded images are remembered separately.
+ *
+ * Evicted bitmaps are not recycled, since they may still be drawn
+ * by their last requester.
+ */
+final class ZLAndroidImageCache {
+	private static final int MAX_BOUNDS = 1024;
+	private static final int MAX_DISK_FILES = 256;
+
+	private static final ZLAndroidImageCache ourInstance = new ZLAndroidImageCache();
+
+	static ZLAndroidImageCache Instance() {
+		return ourInstance;
+	}
+
+	private static final class Key {
+		final String Id;
+		final int Width;
+		final int Height;
+		final ZLPaintContext.ScalingType Scaling;
+
+		Key(String id, ZLPaintContext.Size size, ZLPaintContext.ScalingType scaling) {
+			Id = id;
+			Width = size.Width;
+			Height = size.Height;
+			Scaling = scaling;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			final Key key = (Key)o;
+			return
+				Width == key.Width &&
+				Height == key.Height &&
+				Scaling == key.Scaling &&
+				Id.equals(key.Id);
+		}
+
+		@Override
+		public int hashCode() {
+			return Id.hashCode() + 31 * (Width + 31 * Height) + Scaling.ordinal();
+		}
+
+		String fileName() {
+			long hash = 0xcbf29ce484222325L;
+			final String data = Id + '\000' + Width + '\000' + Height + '\000' + Scaling;
+			for (int i = 0; i < data.length(); ++i) {
+				hash ^= data.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+			return Long.toHexString(hash) + ".png";
+		}
+	}
+
+	private final int myMaxMemory = (int)Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+	private int myMemory;
+	private final LinkedHashMap<Key,Bitmap> myBitmaps = new LinkedHashMap<Key,Bitmap>(32, 0.75f, true);
+	private final LinkedHashMap<String,int[]> myBounds =
+		new LinkedHashMap<String,int[]>(64, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,int[]> eldest) {
+				return size() > MAX_BOUNDS;
+			}
+		};
+
+	private volatile File myDiskDirectory;
+	private ExecutorService myDiskWriter;
+
+	private int myDecodingsCount;
+	private long myDecodingTime;
+	private int myMemoryHitsCount;
+	private int myDiskHitsCount;
+
+	private ZLAndroidImageCache() {
+	}
+
+	void setDiskDirectory(String directory) {
+		myDiskDirectory = directory != null ? new File(directory) : null;
+	}
+
+	private static int size(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	Bitmap get(String id, ZLPaintContext.Size size, ZLPaintContext.ScalingType scaling) {
+		final Key key = new Key(id, size, scaling);
+		synchronized (this) {
+			final Bitmap bitmap = myBitmaps.get(key);
+			if (bitmap != null) {
+				++myMemoryHitsCount;
+				return bitmap;
+			}
+		}
+
+		final File directory = myDiskDirectory;
+		if (directory != null && scaling != ZLPaintContext.ScalingType.OriginalSize) {
+			final File file = new File(directory, key.fileName());
+			if (file.exists()) {
+				Bitmap bitmap = null;
+				try {
+					bitmap = BitmapFactory.decodeFile(file.getPath());
+				} catch (OutOfMemoryError e) {
+				}
+				if (bitmap != null) {
+					file.setLastModified(System.currentTimeMillis());
+					synchronized (this) {
+						++myDiskHitsCount;
+						putInMemory(key, bitmap);
+					}
+					return bitmap;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param downscaled true if the bitmap is noticeably smaller than the original image,
+	 *  i.e. reading it from disk is cheaper than decoding the original
+	 */
+	void put(String id, ZLPaintContext.Size size, ZLPaintContext.ScalingType scaling, final Bitmap bitmap, boolean downscaled) {
+		final Key key = new Key(id, size, scaling);
+		synchronized (this) {
+			putInMemory(key, bitmap);
+		}
+
+		final File directory = myDiskDirectory;
+		if (directory == null || !downscaled || scaling == ZLPaintContext.ScalingType.OriginalSize) {
+			return;
+		}
+		synchronized (this) {
+			if (myDiskWriter == null) {
+				myDiskWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					private final ThreadFactory myDefaultFactory = Executors.defaultThreadFactory();
+
+					public Thread newThread(Runnable r) {
+						final Thread thread = myDefaultFactory.newThread(r);
+						thread.setName("Image.diskCache");
+						thread.setPriority(Thread.MIN_PRIORITY);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			myDiskWriter.execute(new Runnable() {
+				public void run() {
+					writeFile(directory, key.fileName(), bitmap);
+				}
+			});
+		}
+	}
+
+	private void putInMemory(Key key, Bitmap bitmap) {
+		final int bitmapSize = size(bitmap);
+		if (bitmapSize > myMaxMemory / 4) {
+			return;
+		}
+		final Bitmap old = myBitmaps.put(key, bitmap);
+		if (old != null) {
+			myMemory -= size(old);
+		}
+		myMemory += bitmapSize;
+		final Iterator<Bitmap> it = myBitmaps.values().iterator();
+		while (myMemory > myMaxMemory && it.hasNext()) {
+			myMemory -= size(it.next());
+			it.remove();
+		}
+	}
+
+	private static void writeFile(File directory, String name, Bitmap bitmap) {
+		if (bitmap.isRecycled()) {
+			return;
+		}
+		directory.mkdirs();
+		final File file = new File(directory, name);
+		if (file.exists()) {
+			return;
+		}
+		final File temp = new File(directory, name + ".tmp");
+		OutputStream stream = null;
+		try {
+			stream = new BufferedOutputStream(new FileOutputStream(temp));
+			final boolean success = bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+			stream.close();
+			stream = null;
+			if (!success || !temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			temp.delete();
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+				}
+				temp.delete();
+			}
+		}
+
+		final File[] files = directory.listFiles();
+		if (files != null && files.length > MAX_DISK_FILES) {
+			Arrays.sort(files, new Comparator<File>() {
+				public int compare(File f0, File f1) {
+					final long m0 = f0.lastModified();
+					final long m1 = f1.lastModified();
+					return m0 < m1 ? -1 : (m0 > m1 ? 1 : 0);
+				}
+			});
+			for (int i = 0; i < files.length - MAX_DISK_FILES * 3 / 4; ++i) {
+				files[i].delete();
+			}
+		}
+	}
+
+	synchronized int[] getBounds(String id) {
+		return myBounds.get(id);
+	}
+
+	synchronized void putBounds(String id, int width, int height) {
+		myBounds.put(id, new int[] { width, height });
+	}
+
+	synchronized void onDecoded(long time) {
+		++myDecodingsCount;
+		myDecodingTime += time;
+	}
+
+	synchronized void clear() {
+		myBitmaps.clear();
+		myMemory = 0;
+	}
+
+	synchronized int decodingsCount() {
+		return myDecodingsCount;
+	}
+
+	synchronized long averageDecodingTime() {
+		return myDecodingsCount > 0 ? myDecodingTime / myDecodingsCount : 0;
+	}
+
+	synchronized int memoryHitsCount() {
+		return myMemoryHitsCount;
+	}
+
+	synchronized int diskHitsCount() {
+		return myDiskHitsCount;
+	}
+}
@@ -37,6 +37,11 @@ public abstract class ZLAndroidImageData implements ZLImageData {
 
 	protected abstract Bitmap decodeWithOptions(BitmapFactory.Options options);
 
+	// identifies the image in ZLAndroidImageCache; null means the image is not cached
+	protected String getId() {
+		return null;
+	}
+
 	public Bitmap getFullSizeBitmap() {
 		return getBitmap(null, ZLPaintContext.ScalingType.OriginalSize);
 	}
@@ -58,84 +63,119 @@ public abstract class ZLAndroidImageData implements ZLImageData {
 			myLastRequestedSize = maxSize;
 			myLastRequestedScaling = scaling;
 
-			if (myBitmap != null) {
-				myBitmap.recycle();
-				myBitmap = null;
+			// the previous bitmap is not recycled: it can be shared through the cache
+			final ZLAndroidImageCache cache = ZLAndroidImageCache.Instance();
+			final String id = getId();
+			myBitmap = id != null ? cache.get(id, maxSize, scaling) : null;
+			if (myBitmap == null) {
+				final long start = System.currentTimeMillis();
+				myBitmap = decode(id, maxSize, scaling);
+				if (myBitmap != null) {
+					cache.onDecoded(System.currentTimeMillis() - start);
+					if (id != null) {
+						final boolean downscaled = myRealWidth > 0 && myRealHeight > 0 &&
+							myBitmap.getWidth() * myBitmap.getHeight() * 2 <= myRealWidth * myRealHeight;
+						cache.put(id, maxSize, scaling, myBitmap, downscaled);
+					}
+				}
 			}
-			try {
-				final BitmapFactory.Options options = new BitmapFactory.Options();
+		}
+		return myBitmap;
+	}
+
+	private Bitmap decode(String id, ZLPaintContext.Size maxSize, ZLPaintContext.ScalingType scaling) {
+		try {
+			final BitmapFactory.Options options = new BitmapFactory.Options();
+			int coefficient = 1;
+			if (scaling == ZLPaintContext.ScalingType.IntegerCoefficient) {
+				// real size is needed to compute the coefficient before decoding
 				if (myRealWidth <= 0) {
-					options.inJustDecodeBounds = true;
-					decodeWithOptions(options);
-					myRealWidth = options.outWidth;
-					myRealHeight = options.outHeight;
+					final int[] bounds = id != null ? ZLAndroidImageCache.Instance().getBounds(id) : null;
+					if (bounds != null) {
+						myRealWidth = bounds[0];
+						myRealHeight = bounds[1];
+					} else {
+						options.inJustDecodeBounds = true;
+						decodeWithOptions(options);
+						options.inJustDecodeBounds = false;
+						setRealSize(id, options.outWidth, options.outHeight);
+					}
+				}
+				if (myRealHeight > maxSize.Height || myRealWidth > maxSize.Width) {
+					coefficient = 1 + Math.max(
+						(myRealHeight - 1) / maxSize.Height,
+						(myRealWidth - 1) / maxSize.Width
+					);
 				}
-				options.inJustDecodeBounds = false;
-				int coefficient = 1;
-				if (scaling == ZLPaintContext.ScalingType.IntegerCoefficient) {
-					if (myRealHeight > maxSize.Height || myRealWidth > maxSize.Width) {
-						coefficient = 1 + Math.max(
-							(myRealHeight - 1) / maxSize.Height,
-							(myRealWidth - 1) / maxSize.Width
-						);
+			}
+			options.inSampleSize = coefficient;
+			Bitmap bitmap = decodeWithOptions(options);
+			if (bitmap == null) {
+				return null;
+			}
+			if (coefficient == 1 && myRealWidth <= 0) {
+				setRealSize(id, bitmap.getWidth(), bitmap.getHeight());
+			}
+			switch (scaling) {
+				case OriginalSize:
+					break;
+				case FitMaximum:
+				{
+					final int bWidth = bitmap.getWidth();
+					final int bHeight = bitmap.getHeight();
+					if (bWidth > 0 && bHeight > 0 &&
+						bWidth != maxSize.Width && bHeight != maxSize.Height) {
+						final int w, h;
+						if (bWidth * maxSize.Height > bHeight * maxSize.Width) {
+							w = maxSize.Width;
+							h = Math.max(1, bHeight * w / bWidth);
+						} else {
+							h = maxSize.Height;
+							w = Math.max(1, bWidth * h / bHeight);
+						}
+						final Bitmap scaled =
+							Bitmap.createScaledBitmap(bitmap, w, h, false);
+						if (scaled != null) {
+							bitmap = scaled;
+						}
 					}
+					break;
 				}
-				options.inSampleSize = coefficient;
-				myBitmap = decodeWithOptions(options);
-				if (myBitmap != null) {
-					switch (scaling) {
-						case OriginalSize:
-							break;
-						case FitMaximum:
-						{
-							final int bWidth = myBitmap.getWidth();
-							final int bHeight = myBitmap.getHeight();
-							if (bWidth > 0 && bHeight > 0 &&
-								bWidth != maxSize.Width && bHeight != maxSize.Height) {
-								final int w, h;
-								if (bWidth * maxSize.Height > bHeight * maxSize.Width) {
-									w = maxSize.Width;
-									h = Math.max(1, bHeight * w / bWidth);
-								} else {
-									h = maxSize.Height;
-									w = Math.max(1, bWidth * h / bHeight);
-								}
-								final Bitmap scaled =
-									Bitmap.createScaledBitmap(myBitmap, w, h, false);
-								if (scaled != null) {
-									myBitmap = scaled;
-								}
-							}
-							break;
+				case IntegerCoefficient:
+				{
+					final int bWidth = bitmap.getWidth();
+					final int bHeight = bitmap.getHeight();
+					if (bWidth > 0 && bHeight > 0 &&
+						(bWidth > maxSize.Width || bHeight > maxSize.Height)) {
+						final int w, h;
+						if (bWidth * maxSize.Height > bHeight * maxSize.Width) {
+							w = maxSize.Width;
+							h = Math.max(1, bHeight * w / bWidth);
+						} else {
+							h = maxSize.Height;
+							w = Math.max(1, bWidth * h / bHeight);
 						}
-						case IntegerCoefficient:
-						{
-							final int bWidth = myBitmap.getWidth();
-							final int bHeight = myBitmap.getHeight();
-							if (bWidth > 0 && bHeight > 0 &&
-								(bWidth > maxSize.Width || bHeight > maxSize.Height)) {
-								final int w, h;
-								if (bWidth * maxSize.Height > bHeight * maxSize.Width) {
-									w = maxSize.Width;
-									h = Math.max(1, bHeight * w / bWidth);
-								} else {
-									h = maxSize.Height;
-									w = Math.max(1, bWidth * h / bHeight);
-								}
-								final Bitmap scaled =
-									Bitmap.createScaledBitmap(myBitmap, w, h, false);
-								if (scaled != null) {
-									myBitmap = scaled;
-								}
-							}
-							break;
+						final Bitmap scaled =
+							Bitmap.createScaledBitmap(bitmap, w, h, false);
+						if (scaled != null) {
+							bitmap = scaled;
 						}
 					}
+					break;
 				}
-			} catch (OutOfMemoryError e) {
-				e.printStackTrace();
 			}
+			return bitmap;
+		} catch (OutOfMemoryError e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private void setRealSize(String id, int width, int height) {
+		myRealWidth = width;
+		myRealHeight = height;
+		if (id != null && width > 0 && height > 0) {
+			ZLAndroidImageCache.Instance().putBounds(id, width, height);
 		}
-		return myBitmap;
 	}
 }
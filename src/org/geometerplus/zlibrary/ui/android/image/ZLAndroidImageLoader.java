@@ -19,81 +19,217 @@
 
 package org.geometerplus.zlibrary.ui.android.image;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.*;
 
 import android.os.Handler;
 import android.os.Message;
+import android.util.Log;
 
 import org.geometerplus.zlibrary.core.image.ZLImageProxy;
 
+/**
+ * Loads (synchronizes) image proxies on background threads.
+ *
+ * There is one loading per image id: requests for an image that is already
+ * queued or loading only add their post actions (and raise the priority of
+ * a queued loading). Queued loadings are started in priority order, FIFO
+ * within a priority; a loading is dropped if all its requesters cancel it
+ * before it starts. A request without a post action cannot be cancelled
+ * (nothing identifies it), so it keeps the loading until it is done. File and network/service images are loaded by separate
+ * lanes of threads; a lane starts threads as its queue grows (up to its
+ * limit), and idle threads exit after a while.
+ */
 class ZLAndroidImageLoader {
-	void startImageLoading(final ZLImageProxy.Synchronizer synchronizer, final ZLImageProxy image, Runnable postAction) {
-		synchronized (myOnImageSyncRunnables) {
-			LinkedList<Runnable> runnables = myOnImageSyncRunnables.get(image.getId());
-			if (runnables != null) {
-				if (postAction != null && !runnables.contains(postAction)) {
-					runnables.add(postAction);
-				}
-				return;
-			}
+	private static final long KEEP_ALIVE = 5000;
+	// queued loadings per thread before a lane starts another thread
+	private static final int LOADINGS_PER_THREAD = 2;
+
+	private final class Loading implements Comparable<Loading> {
+		final ZLImageProxy Image;
+		final ZLImageProxy.Synchronizer Synchronizer;
+		final Lane Lane;
+		final LinkedList<Runnable> PostActions = new LinkedList<Runnable>();
+		ZLImageProxy.LoadingPriority Priority;
+		long Number;
+		long QueuedAt;
+		boolean Started;
+		// requested at least once without a post action
+		boolean Pinned;
 
-			runnables = new LinkedList<Runnable>();
-			if (postAction != null) {
-				runnables.add(postAction);
+		Loading(ZLImageProxy image, ZLImageProxy.Synchronizer synchronizer, Lane lane) {
+			Image = image;
+			Synchronizer = synchronizer;
+			Lane = lane;
+		}
+
+		public int compareTo(Loading other) {
+			final int diff = Priority.ordinal() - other.Priority.ordinal();
+			if (diff != 0) {
+				return diff;
 			}
-			myOnImageSyncRunnables.put(image.getId(), runnables);
+			return Number < other.Number ? -1 : (Number > other.Number ? 1 : 0);
 		}
+	}
 
-		final ExecutorService pool =
-			image.sourceType() == ZLImageProxy.SourceType.FILE
-				? mySinglePool : myPool;
-		pool.execute(new Runnable() {
-			public void run() {
-				synchronizer.synchronize(image, new Runnable() {
+	private final class Lane {
+		final String Name;
+		final int MaxThreads;
+		final PriorityQueue<Loading> Queue = new PriorityQueue<Loading>();
+		int Threads;
+		int IdleThreads;
+
+		Lane(String name, int maxThreads) {
+			Name = name;
+			MaxThreads = maxThreads;
+		}
+
+		// called under ZLAndroidImageLoader.this lock
+		void add(Loading loading) {
+			Queue.add(loading);
+			if (IdleThreads > 0) {
+				ZLAndroidImageLoader.this.notifyAll();
+			} else if (Threads < Math.min(MaxThreads, 1 + Queue.size() / LOADINGS_PER_THREAD)) {
+				++Threads;
+				final Thread thread = new Thread(Name) {
 					public void run() {
-						myImageSynchronizedHandler.fireMessage(image.getId());
+						work(Lane.this);
 					}
-				});
+				};
+				thread.setPriority(Thread.MIN_PRIORITY);
+				thread.setDaemon(true);
+				thread.start();
 			}
-		});
+		}
 	}
 
-	private static class MinPriorityThreadFactory implements ThreadFactory {
-		private final ThreadFactory myDefaultThreadFactory = Executors.defaultThreadFactory();
+	// local files are read sequentially, network requests mostly wait
+	private final Lane myFileLane = new Lane("Image.fileLoader", 1);
+	private final Lane myNetworkLane = new Lane(
+		"Image.networkLoader", Math.max(2, Math.min(6, 2 * Runtime.getRuntime().availableProcessors()))
+	);
+
+	private final HashMap<String,Loading> myLoadings = new HashMap<String,Loading>();
+	private long myLoadingsNumber;
+
+	private final int[] myQueueDepths = new int[ZLImageProxy.LoadingPriority.values().length];
+	private final int[] myStartedCounts = new int[ZLImageProxy.LoadingPriority.values().length];
+	private final long[] myWaitTimes = new long[ZLImageProxy.LoadingPriority.values().length];
+
+	synchronized void startImageLoading(ZLImageProxy.Synchronizer synchronizer, ZLImageProxy image, ZLImageProxy.LoadingPriority priority, Runnable postAction) {
+		Loading loading = myLoadings.get(image.getId());
+		if (loading != null) {
+			if (postAction == null) {
+				loading.Pinned = true;
+			} else if (!loading.PostActions.contains(postAction)) {
+				loading.PostActions.add(postAction);
+			}
+			if (!loading.Started && priority.compareTo(loading.Priority) < 0) {
+				loading.Lane.Queue.remove(loading);
+				--myQueueDepths[loading.Priority.ordinal()];
+				loading.Priority = priority;
+				++myQueueDepths[priority.ordinal()];
+				loading.Lane.Queue.add(loading);
+			}
+			return;
+		}
 
-		public Thread newThread(Runnable r) {
-			final Thread th = myDefaultThreadFactory.newThread(r);
-			th.setPriority(Thread.MIN_PRIORITY);
-			return th;
+		loading = new Loading(
+			image,
+			synchronizer,
+			image.sourceType() == ZLImageProxy.SourceType.FILE ? myFileLane : myNetworkLane
+		);
+		if (postAction == null) {
+			loading.Pinned = true;
+		} else {
+			loading.PostActions.add(postAction);
 		}
+		loading.Priority = priority;
+		loading.Number = myLoadingsNumber++;
+		loading.QueuedAt = System.currentTimeMillis();
+		myLoadings.put(image.getId(), loading);
+		++myQueueDepths[priority.ordinal()];
+		loading.Lane.add(loading);
 	}
 
-	private static final int IMAGE_LOADING_THREADS_NUMBER = 3; // TODO: how many threads ???
+	synchronized void cancelImageLoading(ZLImageProxy image, Runnable postAction) {
+		final Loading loading = myLoadings.get(image.getId());
+		if (loading == null) {
+			return;
+		}
+		loading.PostActions.remove(postAction);
+		if (loading.PostActions.isEmpty() && !loading.Pinned && !loading.Started) {
+			loading.Lane.Queue.remove(loading);
+			--myQueueDepths[loading.Priority.ordinal()];
+			myLoadings.remove(image.getId());
+		}
+	}
+
+	private void work(Lane lane) {
+		while (true) {
+			final Loading loading;
+			synchronized (this) {
+				final long idleSince = System.currentTimeMillis();
+				while (lane.Queue.isEmpty()) {
+					final long timeout = idleSince + KEEP_ALIVE - System.currentTimeMillis();
+					if (timeout <= 0) {
+						--lane.Threads;
+						return;
+					}
+					++lane.IdleThreads;
+					try {
+						wait(timeout);
+					} catch (InterruptedException e) {
+					}
+					--lane.IdleThreads;
+				}
+				loading = lane.Queue.poll();
+				loading.Started = true;
+				final int index = loading.Priority.ordinal();
+				--myQueueDepths[index];
+				++myStartedCounts[index];
+				myWaitTimes[index] += System.currentTimeMillis() - loading.QueuedAt;
+			}
+
+			try {
+				loading.Synchronizer.synchronize(loading.Image, new Runnable() {
+					public void run() {
+						myImageSynchronizedHandler.fireMessage(loading.Image.getId());
+					}
+				});
+			} catch (RuntimeException e) {
+				// a broken image must not stop the lane; requesters are still notified
+				Log.e("FBReader", "Image loading failed: " + loading.Image.getId(), e);
+				myImageSynchronizedHandler.fireMessage(loading.Image.getId());
+			}
+		}
+	}
 
-	private final ExecutorService myPool = Executors.newFixedThreadPool(IMAGE_LOADING_THREADS_NUMBER, new MinPriorityThreadFactory());
-	private final ExecutorService mySinglePool = Executors.newFixedThreadPool(1, new MinPriorityThreadFactory());
+	synchronized int queueDepth(ZLImageProxy.LoadingPriority priority) {
+		return myQueueDepths[priority.ordinal()];
+	}
 
-	private final HashMap<String,LinkedList<Runnable>> myOnImageSyncRunnables = new HashMap<String,LinkedList<Runnable>>();
+	synchronized long averageWaitTime(ZLImageProxy.LoadingPriority priority) {
+		final int index = priority.ordinal();
+		return myStartedCounts[index] > 0 ? myWaitTimes[index] / myStartedCounts[index] : 0;
+	}
 
 	private class ImageSynchronizedHandler extends Handler {
 		@Override
 		public void handleMessage(Message message) {
-			final String imageUrl = (String)message.obj;
-			final LinkedList<Runnable> runables;
-			synchronized (myOnImageSyncRunnables) {
-				runables = myOnImageSyncRunnables.remove(imageUrl);
+			final String imageId = (String)message.obj;
+			final Loading loading;
+			synchronized (ZLAndroidImageLoader.this) {
+				loading = myLoadings.remove(imageId);
 			}
-			for (Runnable runnable : runables) {
-				runnable.run();
+			if (loading != null) {
+				for (Runnable runnable : loading.PostActions) {
+					runnable.run();
+				}
 			}
 		}
 
-		public void fireMessage(String imageUrl) {
-			sendMessage(obtainMessage(0, imageUrl));
+		public void fireMessage(String imageId) {
+			sendMessage(obtainMessage(0, imageId));
 		}
 	};
 
@@ -36,12 +36,63 @@ public final class ZLAndroidImageManager extends ZLImageManager {
 		}
 	}
 
-	private ZLAndroidImageLoader myLoader;
+	// enables the disk tier of the decoded image cache
+	public void setImageCacheDirectory(String directory) {
+		ZLAndroidImageCache.Instance().setDiskDirectory(directory);
+	}
+
+	public void clearImageCache() {
+		ZLAndroidImageCache.Instance().clear();
+	}
+
+	@Override
+	public int decodingsCount() {
+		return ZLAndroidImageCache.Instance().decodingsCount();
+	}
+
+	@Override
+	public long averageDecodingTime() {
+		return ZLAndroidImageCache.Instance().averageDecodingTime();
+	}
+
+	@Override
+	public int memoryCacheHitsCount() {
+		return ZLAndroidImageCache.Instance().memoryHitsCount();
+	}
 
-	public void startImageLoading(ZLImageProxy.Synchronizer syncronizer, ZLImageProxy image, Runnable postLoadingRunnable) {
-		if (myLoader == null) {
-			myLoader = new ZLAndroidImageLoader();
+	@Override
+	public int diskCacheHitsCount() {
+		return ZLAndroidImageCache.Instance().diskHitsCount();
+	}
+
+	// created on the first loading request, since it needs a looper thread
+	private volatile ZLAndroidImageLoader myLoader;
+
+	public void startImageLoading(ZLImageProxy.Synchronizer syncronizer, ZLImageProxy image, ZLImageProxy.LoadingPriority priority, Runnable postLoadingRunnable) {
+		synchronized (this) {
+			if (myLoader == null) {
+				myLoader = new ZLAndroidImageLoader();
+			}
 		}
-		myLoader.startImageLoading(syncronizer, image, postLoadingRunnable);
+		myLoader.startImageLoading(syncronizer, image, priority, postLoadingRunnable);
+	}
+
+	public void cancelImageLoading(ZLImageProxy image, Runnable postLoadingRunnable) {
+		final ZLAndroidImageLoader loader = myLoader;
+		if (loader != null) {
+			loader.cancelImageLoading(image, postLoadingRunnable);
+		}
+	}
+
+	// number of loadings of given priority waiting for a thread
+	public int imageLoadingQueueDepth(ZLImageProxy.LoadingPriority priority) {
+		final ZLAndroidImageLoader loader = myLoader;
+		return loader != null ? loader.queueDepth(priority) : 0;
+	}
+
+	// average time (in milliseconds) loadings of given priority waited for a thread
+	public long averageImageLoadingWaitTime(ZLImageProxy.LoadingPriority priority) {
+		final ZLAndroidImageLoader loader = myLoader;
+		return loader != null ? loader.averageWaitTime(priority) : 0;
 	}
 }
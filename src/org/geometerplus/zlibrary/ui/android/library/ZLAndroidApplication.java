@@ -48,7 +48,7 @@ public abstract class ZLAndroidApplication extends Application {
 	public void onCreate() {
 		super.onCreate();
 		final ConfigShadow config = new ConfigShadow(this);
-		new ZLAndroidImageManager();
+		final ZLAndroidImageManager imageManager = new ZLAndroidImageManager();
 		new ZLAndroidLibrary(this);
 
 		config.runOnConnect(new Runnable() {
@@ -63,6 +63,7 @@ public abstract class ZLAndroidApplication extends Application {
 					}
 					Paths.TempDirectoryOption.setValue(dir);
 				}
+				imageManager.setImageCacheDirectory(Paths.tempDirectory() + "/images");
 			}
 		});
 	}
@@ -19,85 +19,264 @@
 
 package org.geometerplus.zlibrary.ui.android.view;
 
+import java.util.LinkedList;
+
 import android.graphics.Bitmap;
 
 import org.geometerplus.zlibrary.core.view.ZLView;
 
+/**
+ * Bitmaps of the current, previous and next pages. A page can be rendered
+ * in background by prerender(); getBitmap() waits for such a rendering instead
+ * of starting another one. Bitmaps are reused: after a size change the old
+ * bitmaps are kept as spares (up to the pool size), so switching the orientation
+ * back and forth does not allocate new ones.
+ */
 class BitmapManager {
-	private final int SIZE = 2;
-	private final Bitmap[] myBitmaps = new Bitmap[SIZE];
-	private final ZLView.PageIndex[] myIndexes = new ZLView.PageIndex[SIZE];
+	private static final int SLOTS_NUMBER = 3;
+
+	private final int myPoolSize;
+	private final Bitmap[] myBitmaps = new Bitmap[SLOTS_NUMBER];
+	private final ZLView.PageIndex[] myIndexes = new ZLView.PageIndex[SLOTS_NUMBER];
+	private final boolean[] myIsRendering = new boolean[SLOTS_NUMBER];
+	private final LinkedList<Bitmap> mySpareBitmaps = new LinkedList<Bitmap>();
+	// incremented when bitmaps stop matching page indices
+	private volatile int myGeneration;
 
 	private int myWidth;
 	private int myHeight;
 
+	private int myHits;
+	private int myMisses;
+	private int myRenderedPages;
+	private long myRenderingTime;
+
 	private final ZLAndroidWidget myWidget;
 
-	BitmapManager(ZLAndroidWidget widget) {
+	/**
+	 * @param poolSize maximal number of bitmaps kept, including spare bitmaps of other sizes
+	 */
+	BitmapManager(ZLAndroidWidget widget, int poolSize) {
 		myWidget = widget;
+		myPoolSize = Math.max(poolSize, SLOTS_NUMBER);
 	}
 
-	void setSize(int w, int h) {
+	synchronized void setSize(int w, int h) {
 		if (myWidth != w || myHeight != h) {
 			myWidth = w;
 			myHeight = h;
-			for (int i = 0; i < SIZE; ++i) {
-				myBitmaps[i] = null;
-				myIndexes[i] = null;
-			}
-			System.gc();
-			System.gc();
-			System.gc();
+			invalidate();
 		}
 	}
 
 	Bitmap getBitmap(ZLView.PageIndex index) {
-		for (int i = 0; i < SIZE; ++i) {
-			if (index == myIndexes[i]) {
-				return myBitmaps[i];
+		final int slot;
+		final Bitmap bitmap;
+		final int generation;
+		synchronized (this) {
+			while (true) {
+				final int existing = findSlot(index);
+				if (existing != -1 && !myIsRendering[existing]) {
+					++myHits;
+					return myBitmaps[existing];
+				}
+				if (existing == -1 && getInternalIndex(index) != -1) {
+					break;
+				}
+				// the page is being rendered in background, or all the slots are busy
+				try {
+					wait();
+				} catch (InterruptedException e) {
+				}
 			}
+			++myMisses;
+			slot = getInternalIndex(index);
+			bitmap = startRendering(slot, index);
+			generation = myGeneration;
 		}
-		final int iIndex = getInternalIndex(index);
-		myIndexes[iIndex] = index;
-		if (myBitmaps[iIndex] == null) {
-			try {
-				myBitmaps[iIndex] = Bitmap.createBitmap(myWidth, myHeight, Bitmap.Config.RGB_565);
-			} catch (OutOfMemoryError e) {
-				System.gc();
-				System.gc();
-				myBitmaps[iIndex] = Bitmap.createBitmap(myWidth, myHeight, Bitmap.Config.RGB_565);
+
+		render(bitmap, index);
+
+		synchronized (this) {
+			finishRendering(slot, generation);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Renders the page in the calling (background) thread, if it is not rendered yet.
+	 */
+	void prerender(ZLView view, ZLView.PageIndex index) {
+		final int slot;
+		final Bitmap bitmap;
+		final int generation;
+		synchronized (this) {
+			if (myWidth <= 0 || myHeight <= 0 || findSlot(index) != -1) {
+				return;
+			}
+			slot = getInternalIndex(index);
+			if (slot == -1) {
+				return;
+			}
+			bitmap = startRendering(slot, index);
+			generation = myGeneration;
+		}
+
+		// page shifts are made under the view lock, so the view cannot
+		// move to another page between the check and the rendering.
+		// The view lays pages out through its own style and paint state, so
+		// neither step can run outside the lock; the lock is released between
+		// the layout and the painting, and the UI thread waits for one of them
+		// at most, not for the whole page
+		synchronized (view) {
+			if (generation == myGeneration) {
+				myWidget.prepareOnBitmap(bitmap, index);
 			}
 		}
-		myWidget.drawOnBitmap(myBitmaps[iIndex], index);
-		return myBitmaps[iIndex];
+		synchronized (view) {
+			if (generation == myGeneration) {
+				render(bitmap, index);
+			}
+		}
+
+		synchronized (this) {
+			finishRendering(slot, generation);
+		}
+	}
+
+	private int findSlot(ZLView.PageIndex index) {
+		for (int i = 0; i < SLOTS_NUMBER; ++i) {
+			if (index == myIndexes[i]) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	private int getInternalIndex(ZLView.PageIndex index) {
-		for (int i = 0; i < SIZE; ++i) {
-			if (myIndexes[i] == null) {
+		for (int i = 0; i < SLOTS_NUMBER; ++i) {
+			if (myIndexes[i] == null && !myIsRendering[i]) {
 				return i;
 			}
 		}
-		for (int i = 0; i < SIZE; ++i) {
-			if (myIndexes[i] != ZLView.PageIndex.current) {
+		for (int i = 0; i < SLOTS_NUMBER; ++i) {
+			if (myIndexes[i] != ZLView.PageIndex.current && !myIsRendering[i]) {
 				return i;
 			}
 		}
-		throw new RuntimeException("That's impossible");
+		return -1;
+	}
+
+	private Bitmap startRendering(int slot, ZLView.PageIndex index) {
+		myIndexes[slot] = index;
+		myIsRendering[slot] = true;
+		Bitmap bitmap = myBitmaps[slot];
+		if (bitmap != null && (bitmap.getWidth() != myWidth || bitmap.getHeight() != myHeight)) {
+			myBitmaps[slot] = null;
+			addSpareBitmap(bitmap);
+			bitmap = null;
+		}
+		if (bitmap == null) {
+			bitmap = obtainBitmap();
+			myBitmaps[slot] = bitmap;
+		}
+		return bitmap;
+	}
+
+	private void finishRendering(int slot, int generation) {
+		myIsRendering[slot] = false;
+		if (generation != myGeneration) {
+			myIndexes[slot] = null;
+		}
+		notifyAll();
+	}
+
+	private void render(Bitmap bitmap, ZLView.PageIndex index) {
+		final long start = System.currentTimeMillis();
+		myWidget.drawOnBitmap(bitmap, index);
+		final long time = System.currentTimeMillis() - start;
+		synchronized (this) {
+			++myRenderedPages;
+			myRenderingTime += time;
+		}
+	}
+
+	private Bitmap obtainBitmap() {
+		for (Bitmap b : mySpareBitmaps) {
+			if (b.getWidth() == myWidth && b.getHeight() == myHeight) {
+				mySpareBitmaps.remove(b);
+				return b;
+			}
+		}
+		try {
+			return Bitmap.createBitmap(myWidth, myHeight, Bitmap.Config.RGB_565);
+		} catch (OutOfMemoryError e) {
+			for (Bitmap b : mySpareBitmaps) {
+				recycle(b);
+			}
+			mySpareBitmaps.clear();
+			return Bitmap.createBitmap(myWidth, myHeight, Bitmap.Config.RGB_565);
+		}
+	}
+
+	private void addSpareBitmap(Bitmap bitmap) {
+		mySpareBitmaps.addFirst(bitmap);
+		while (mySpareBitmaps.size() > myPoolSize - SLOTS_NUMBER) {
+			recycle(mySpareBitmaps.removeLast());
+		}
 	}
 
-	void reset() {
-		for (int i = 0; i < SIZE; ++i) {
+	// called under the lock, for a bitmap already removed from the spare list;
+	// a bitmap still kept in a slot can be drawn at the moment, it is left to the GC
+	private void recycle(Bitmap bitmap) {
+		for (Bitmap b : myBitmaps) {
+			if (b == bitmap) {
+				return;
+			}
+		}
+		bitmap.recycle();
+	}
+
+	private void invalidate() {
+		++myGeneration;
+		for (int i = 0; i < SLOTS_NUMBER; ++i) {
 			myIndexes[i] = null;
 		}
+		notifyAll();
 	}
 
-	void shift(boolean forward) {
-		for (int i = 0; i < SIZE; ++i) {
-			if (myIndexes[i] == null) {
+	synchronized void reset() {
+		invalidate();
+	}
+
+	synchronized void shift(boolean forward) {
+		// pages being rendered in background were laid out before the shift
+		++myGeneration;
+		for (int i = 0; i < SLOTS_NUMBER; ++i) {
+			if (myIndexes[i] == null || myIsRendering[i]) {
 				continue;
 			}
 			myIndexes[i] = forward ? myIndexes[i].getPrevious() : myIndexes[i].getNext();
 		}
+		notifyAll();
+	}
+
+	synchronized int hits() {
+		return myHits;
+	}
+
+	synchronized int misses() {
+		return myMisses;
+	}
+
+	synchronized int renderedPages() {
+		return myRenderedPages;
+	}
+
+	/**
+	 * @return average rendering time of a page, in milliseconds
+	 */
+	synchronized long averageRenderingTime() {
+		return myRenderedPages > 0 ? myRenderingTime / myRenderedPages : 0;
 	}
 }
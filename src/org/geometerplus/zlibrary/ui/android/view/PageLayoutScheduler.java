@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2007-2015 FBReader.ORG Limited <contact@fbreader.org>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301, USA.
+ */
+
+package org.geometerplus.zlibrary.ui.android.view;
+
+import java.util.concurrent.*;
+
+import org.geometerplus.zlibrary.core.application.ZLApplication;
+import org.geometerplus.zlibrary.core.view.ZLView;
+
+/**
+ * Lays out and renders the pages adjacent to the current one on a single
+ * long-lived worker thread. Requests are coalesced: while a job is queued,
+ * new requests only replace its view. cancel() drops the queued work, and
+ * a job that is already running stops before its next page.
+ * Layout and painting hold the view lock (see BitmapManager.prerender()),
+ * so a UI call that needs the view can still wait for one of these steps.
+ */
+class PageLayoutScheduler {
+	private static final ZLView.PageIndex[] ourPagesToPrepare = {
+		ZLView.PageIndex.next, ZLView.PageIndex.previous
+	};
+
+	private final ExecutorService myExecutor =
+		Executors.newSingleThreadExecutor(new LayoutThreadFactory());
+	private final BitmapManager myBitmapManager;
+
+	private ZLView myView;
+	private int myGeneration;
+	private boolean myJobIsQueued;
+
+	PageLayoutScheduler(BitmapManager bitmapManager) {
+		myBitmapManager = bitmapManager;
+	}
+
+	synchronized void schedule(ZLView view) {
+		myView = view;
+		if (!myJobIsQueued) {
+			myJobIsQueued = true;
+			myExecutor.execute(new Runnable() {
+				public void run() {
+					runJob();
+				}
+			});
+		}
+	}
+
+	synchronized void cancel() {
+		++myGeneration;
+		myView = null;
+	}
+
+	private synchronized boolean isActual(ZLView view, int generation) {
+		return generation == myGeneration && view == ZLApplication.Instance().getCurrentView();
+	}
+
+	private void runJob() {
+		final ZLView view;
+		final int generation;
+		synchronized (this) {
+			myJobIsQueued = false;
+			view = myView;
+			generation = myGeneration;
+			myView = null;
+		}
+		if (view == null) {
+			return;
+		}
+		for (ZLView.PageIndex index : ourPagesToPrepare) {
+			if (!isActual(view, generation)) {
+				return;
+			}
+			if (view.canScroll(index)) {
+				myBitmapManager.prerender(view, index);
+			}
+		}
+	}
+
+	private static class LayoutThreadFactory implements ThreadFactory {
+		private final ThreadFactory myDefaultThreadFactory = Executors.defaultThreadFactory();
+
+		public Thread newThread(Runnable r) {
+			final Thread th = myDefaultThreadFactory.newThread(r);
+			th.setName("View.layout");
+			th.setPriority(Thread.NORM_PRIORITY - 1);
+			th.setDaemon(true);
+			return th;
+		}
+	}
+}
@@ -61,6 +61,7 @@ public final class ZLAndroidPaintContext extends ZLPaintContext {
 
 	private final Geometry myGeometry;
 	private final int myScrollbarWidth;
+	private final String myMeasuringKey;
 
 	private ZLColor myBackgroundColor = new ZLColor(0, 0, 0);
 
@@ -78,6 +79,11 @@ public final class ZLAndroidPaintContext extends ZLPaintContext {
 		}
 		myTextPaint.setDither(DitheringOption.getValue());
 		myTextPaint.setSubpixelText(SubpixelOption.getValue());
+		// flags that change text measuring; interned, so equal keys are usually the same object
+		myMeasuringKey = (
+			super.getMeasuringKey() + ":" + AntiAliasOption.getValue() + "," +
+			DeviceKerningOption.getValue() + "," + SubpixelOption.getValue()
+		).intern();
 
 		myLinePaint.setStyle(Paint.Style.STROKE);
 
@@ -318,6 +324,11 @@ public final class ZLAndroidPaintContext extends ZLPaintContext {
 		}
 	}
 
+	@Override
+	public String getMeasuringKey() {
+		return myMeasuringKey;
+	}
+
 	public int getWidth() {
 		return myGeometry.AreaSize.Width - myScrollbarWidth;
 	}
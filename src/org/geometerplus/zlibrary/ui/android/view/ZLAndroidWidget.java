@@ -33,7 +33,9 @@ import org.geometerplus.android.fbreader.FBReader;
 
 public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongClickListener {
 	private final Paint myPaint = new Paint();
-	private final BitmapManager myBitmapManager = new BitmapManager(this);
+	// three page bitmaps and one spare bitmap reused after orientation changes
+	private final BitmapManager myBitmapManager = new BitmapManager(this, 4);
+	private final PageLayoutScheduler myLayoutScheduler = new PageLayoutScheduler(myBitmapManager);
 	private Bitmap myFooterBitmap;
 
 	public ZLAndroidWidget(Context context, AttributeSet attrs, int defStyle) {
@@ -138,8 +140,11 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 				case AnimatedScrollingForward:
 				{
 					final ZLView.PageIndex index = animator.getPageToScrollTo();
-					myBitmapManager.shift(index == ZLView.PageIndex.next);
-					view.onScrollingFinished(index);
+					// background rendering relies on the bitmaps and the view being shifted together
+					synchronized (view) {
+						myBitmapManager.shift(index == ZLView.PageIndex.next);
+						view.onScrollingFinished(index);
+					}
 					ZLApplication.Instance().onRepaintFinished();
 					break;
 				}
@@ -151,8 +156,28 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 		}
 	}
 
+	// number of page bitmaps taken ready from the bitmap manager
+	public int pageBitmapHitsCount() {
+		return myBitmapManager.hits();
+	}
+
+	// number of page bitmaps rendered on demand (not prerendered in background)
+	public int pageBitmapMissesCount() {
+		return myBitmapManager.misses();
+	}
+
+	public int renderedPagesCount() {
+		return myBitmapManager.renderedPages();
+	}
+
+	// average time (in milliseconds) of a page rendering
+	public long averagePageRenderingTime() {
+		return myBitmapManager.averageRenderingTime();
+	}
+
 	@Override
 	public void reset() {
+		myLayoutScheduler.cancel();
 		myBitmapManager.reset();
 	}
 
@@ -163,6 +188,7 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 
 	@Override
 	public void startManualScrolling(int x, int y, ZLView.Direction direction) {
+		myLayoutScheduler.cancel();
 		final AnimationProvider animator = getAnimationProvider();
 		animator.setup(direction, getWidth(), getMainAreaHeight());
 		animator.startManualScrolling(x, y);
@@ -184,6 +210,7 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 		if (pageIndex == ZLView.PageIndex.current || !view.canScroll(pageIndex)) {
 			return;
 		}
+		myLayoutScheduler.cancel();
 		final AnimationProvider animator = getAnimationProvider();
 		animator.setup(direction, getWidth(), getMainAreaHeight());
 		animator.startAnimatedScrolling(pageIndex, x, y, speed);
@@ -198,6 +225,7 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 		if (pageIndex == ZLView.PageIndex.current || !view.canScroll(pageIndex)) {
 			return;
 		}
+		myLayoutScheduler.cancel();
 		final AnimationProvider animator = getAnimationProvider();
 		animator.setup(direction, getWidth(), getMainAreaHeight());
 		animator.startAnimatedScrolling(pageIndex, null, null, speed);
@@ -223,8 +251,20 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 		if (view == null) {
 			return;
 		}
+		view.paint(createBitmapContext(view, bitmap), index);
+	}
 
-		final ZLAndroidPaintContext context = new ZLAndroidPaintContext(
+	// lays the page out without painting it
+	void prepareOnBitmap(Bitmap bitmap, ZLView.PageIndex index) {
+		final ZLView view = ZLApplication.Instance().getCurrentView();
+		if (view == null) {
+			return;
+		}
+		view.preparePage(createBitmapContext(view, bitmap), index);
+	}
+
+	private ZLAndroidPaintContext createBitmapContext(ZLView view, Bitmap bitmap) {
+		return new ZLAndroidPaintContext(
 			new Canvas(bitmap),
 			new ZLAndroidPaintContext.Geometry(
 				getWidth(),
@@ -236,7 +276,6 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 			),
 			view.isScrollbarShown() ? getVerticalScrollbarWidth() : 0
 		);
-		view.paint(context, index);
 	}
 
 	private void drawFooter(Canvas canvas, AnimationProvider animator) {
@@ -281,25 +320,7 @@ public class ZLAndroidWidget extends View implements ZLViewWidget, View.OnLongCl
 		myBitmapManager.setSize(getWidth(), getMainAreaHeight());
 		canvas.drawBitmap(myBitmapManager.getBitmap(ZLView.PageIndex.current), 0, 0, myPaint);
 		drawFooter(canvas, null);
-		new Thread() {
-			@Override
-			public void run() {
-				final ZLView view = ZLApplication.Instance().getCurrentView();
-				final ZLAndroidPaintContext context = new ZLAndroidPaintContext(
-					canvas,
-					new ZLAndroidPaintContext.Geometry(
-						getWidth(),
-						getHeight(),
-						getWidth(),
-						getMainAreaHeight(),
-						0,
-						0
-					),
-					view.isScrollbarShown() ? getVerticalScrollbarWidth() : 0
-				);
-				view.preparePage(context, ZLView.PageIndex.next);
-			}
-		}.start();
+		myLayoutScheduler.schedule(ZLApplication.Instance().getCurrentView());
 	}
 
 	@Override